@@ -0,0 +1,39 @@
+package org.isomorphism.limit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次预约的许可（或令牌）。预约时按估计的数量扣减，之后可以取消，或者按实际用量结算多退少补，
+ * 避免按估计值预约的请求被放弃或者实际用量偏小时白白浪费下游的容量。
+ * <p>
+ * {@link #cancel()}和{@link #settle(long)}只能生效一次。
+ *
+ * @see org.isomorphism.limit.ratelimiter.impl.AbstractRateLimiter#reserve(int)
+ * @see org.isomorphism.limit.tokenbuket.impl.LeakyTokenBucket#tryReserve(long)
+ */
+public interface Reservation {
+    /**
+     * 返回当前扣减的数量，结算后为实际用量，取消后为0
+     */
+    long getPermits();
+
+    /**
+     * 返回距离预约的许可可以使用还要等待的时间，已经可以使用时返回0
+     */
+    long getDelay(TimeUnit unit);
+
+    /**
+     * 放弃这次预约，把扣减的数量全部退回。
+     *
+     * @return 已经取消或者结算过时返回false
+     */
+    boolean cancel();
+
+    /**
+     * 按实际用量结算：比预约的少时退回差额，比预约的多时补扣差额，补扣的部分由之后的请求等待。
+     *
+     * @param actualPermits 实际用量，不能为负数
+     * @throws IllegalStateException 如果已经取消或者结算过
+     */
+    void settle(long actualPermits);
+}
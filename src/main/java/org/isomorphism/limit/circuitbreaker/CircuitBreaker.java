@@ -0,0 +1,300 @@
+package org.isomorphism.limit.circuitbreaker;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * 熔断器：连续失败次数或者最近一段调用的失败率超过阈值时打开，打开期间直接拒绝调用；
+ * 经过openDuration后进入半开状态，放行少量探测调用，全部成功则关闭，任何一个失败则重新打开。
+ * <p>
+ * 状态是一个不可变的{@link Phase}对象，状态切换是对它的一次CAS，没有锁。每个阶段有自己的滑动窗口，
+ * 调用的结果只计入获取许可时所在的阶段，切换之后才返回的旧结果会被忽略。
+ * 滑动窗口是一个按调用计数的环，记录最近windowSize个调用的成败，失败数和调用数随写入增量维护。
+ * <pre>{@code
+ *   CircuitBreaker breaker = CircuitBreaker.newBuilder()
+ *           .withFailureRateThreshold(50.0)
+ *           .withOpenDuration(5, TimeUnit.SECONDS)
+ *           .build();
+ *   TimeLimiter limiter = new CircuitBreakerTimeLimiter(SimpleTimeLimiter.create(), breaker);
+ * }</pre>
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 一次被放行的调用，每个Permit只需要回调一次，重复的回调被忽略。
+     */
+    public interface Permit {
+        void onSuccess();
+
+        /**
+         * 调用失败或者超时
+         */
+        void onFailure();
+
+        /**
+         * 结果与目标无关，例如调用者线程被中断
+         */
+        void onIgnore();
+    }
+
+    private static final int OUTCOME_NONE = 0;
+    private static final int OUTCOME_SUCCESS = 1;
+    private static final int OUTCOME_FAILURE = 2;
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final int consecutiveFailureThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenProbes;
+    private final Ticker ticker;
+
+    private final AtomicReference<Phase> phase;
+
+    private CircuitBreaker(Builder builder) {
+        this.windowSize = builder.windowSize;
+        this.minimumCalls = builder.minimumCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.consecutiveFailureThreshold = builder.consecutiveFailureThreshold;
+        this.openDurationNanos = builder.openDurationNanos;
+        this.halfOpenProbes = builder.halfOpenProbes;
+        this.ticker = builder.ticker;
+        this.phase = new AtomicReference<Phase>(new Phase(State.CLOSED, 0L));
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * 申请调用许可，熔断打开或者半开状态的探测名额用完时返回null。
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            Phase current = phase.get();
+            switch (current.state) {
+                case CLOSED:
+                    return new PhasePermit(current);
+                case HALF_OPEN:
+                    return current.takeProbe() ? new PhasePermit(current) : null;
+                default:
+                    long now = ticker.read();
+                    if (now - current.sinceNanos < openDurationNanos) {
+                        return null;
+                    }
+                    phase.compareAndSet(current, new Phase(State.HALF_OPEN, now));
+            }
+        }
+    }
+
+    public State getState() {
+        return phase.get().state;
+    }
+
+    /**
+     * 当前阶段滑动窗口内的失败率，0到100；窗口内的调用少于minimumCalls时返回-1
+     */
+    public double getFailureRate() {
+        Phase current = phase.get();
+        int calls = current.calls.get();
+        return calls < minimumCalls ? -1.0 : 100.0 * current.failures.get() / calls;
+    }
+
+    private void record(Phase recorded, boolean success) {
+        if (phase.get() != recorded) {
+            return;
+        }
+        switch (recorded.state) {
+            case CLOSED:
+                recorded.record(success ? OUTCOME_SUCCESS : OUTCOME_FAILURE);
+                if (!success && shouldOpen(recorded)) {
+                    phase.compareAndSet(recorded, new Phase(State.OPEN, ticker.read()));
+                }
+                break;
+            case HALF_OPEN:
+                if (!success) {
+                    phase.compareAndSet(recorded, new Phase(State.OPEN, ticker.read()));
+                } else if (recorded.probeSuccesses.incrementAndGet() >= halfOpenProbes) {
+                    phase.compareAndSet(recorded, new Phase(State.CLOSED, ticker.read()));
+                }
+                break;
+            default:
+        }
+    }
+
+    private boolean shouldOpen(Phase closed) {
+        if (consecutiveFailureThreshold > 0 && closed.consecutiveFailures.get() >= consecutiveFailureThreshold) {
+            return true;
+        }
+        int calls = closed.calls.get();
+        return calls >= minimumCalls && 100.0 * closed.failures.get() / calls >= failureRateThreshold;
+    }
+
+    /**
+     * 一个状态阶段，状态切换时整体替换
+     */
+    private final class Phase {
+        final State state;
+        final long sinceNanos;
+
+        // 半开状态剩余的探测名额和已经成功的探测数
+        final AtomicInteger probes = new AtomicInteger(halfOpenProbes);
+        final AtomicInteger probeSuccesses = new AtomicInteger();
+
+        // 关闭状态的滑动窗口
+        final AtomicIntegerArray outcomes;
+        final AtomicLong cursor = new AtomicLong();
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        Phase(State state, long sinceNanos) {
+            this.state = state;
+            this.sinceNanos = sinceNanos;
+            this.outcomes = new AtomicIntegerArray(state == State.CLOSED ? windowSize : 0);
+        }
+
+        boolean takeProbe() {
+            while (true) {
+                int left = probes.get();
+                if (left <= 0) {
+                    return false;
+                }
+                if (probes.compareAndSet(left, left - 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void record(int outcome) {
+            int slot = (int) (cursor.getAndIncrement() % windowSize);
+            int evicted = outcomes.getAndSet(slot, outcome);
+            if (evicted == OUTCOME_NONE) {
+                calls.incrementAndGet();
+            }
+            int delta = (outcome == OUTCOME_FAILURE ? 1 : 0) - (evicted == OUTCOME_FAILURE ? 1 : 0);
+            if (delta != 0) {
+                failures.addAndGet(delta);
+            }
+            if (outcome == OUTCOME_FAILURE) {
+                consecutiveFailures.incrementAndGet();
+            } else {
+                consecutiveFailures.set(0);
+            }
+        }
+    }
+
+    private final class PhasePermit implements Permit {
+        private final Phase phase;
+        private final AtomicInteger done = new AtomicInteger();
+
+        PhasePermit(Phase phase) {
+            this.phase = phase;
+        }
+
+        @Override
+        public void onSuccess() {
+            if (done.compareAndSet(0, 1)) {
+                record(phase, true);
+            }
+        }
+
+        @Override
+        public void onFailure() {
+            if (done.compareAndSet(0, 1)) {
+                record(phase, false);
+            }
+        }
+
+        @Override
+        public void onIgnore() {
+            if (done.compareAndSet(0, 1) && phase.state == State.HALF_OPEN) {
+                // 归还探测名额
+                phase.probes.incrementAndGet();
+            }
+        }
+    }
+
+    public static final class Builder {
+        private int windowSize = 100;
+        private int minimumCalls = 20;
+        private double failureRateThreshold = 50.0;
+        private int consecutiveFailureThreshold = 0;
+        private long openDurationNanos = SECONDS.toNanos(10L);
+        private int halfOpenProbes = 5;
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder() {
+        }
+
+        /**
+         * 滑动窗口记录最近windowSize个调用，窗口内至少有minimumCalls个调用时才按失败率判断，默认100和20
+         */
+        public Builder withSlidingWindow(int windowSize, int minimumCalls) {
+            checkArgument(windowSize > 0, "windowSize must be positive: %s", windowSize);
+            checkArgument(minimumCalls > 0 && minimumCalls <= windowSize, "minimumCalls must be in [1, %s]: %s", windowSize, minimumCalls);
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * 失败率（百分比）达到该值时打开，默认50
+         */
+        public Builder withFailureRateThreshold(double failureRateThreshold) {
+            checkArgument(failureRateThreshold > 0.0 && failureRateThreshold <= 100.0, "failureRateThreshold must be in (0, 100]: %s",
+                    failureRateThreshold);
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * 连续失败达到该次数时打开，不受minimumCalls限制，默认不启用
+         */
+        public Builder withConsecutiveFailureThreshold(int consecutiveFailureThreshold) {
+            checkArgument(consecutiveFailureThreshold > 0, "consecutiveFailureThreshold must be positive: %s", consecutiveFailureThreshold);
+            this.consecutiveFailureThreshold = consecutiveFailureThreshold;
+            return this;
+        }
+
+        /**
+         * 打开后经过多久进入半开状态，默认10秒
+         */
+        public Builder withOpenDuration(long duration, TimeUnit unit) {
+            checkArgument(duration > 0, "duration must be positive: %s", duration);
+            this.openDurationNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * 半开状态放行的探测调用数，全部成功才关闭，默认5
+         */
+        public Builder withHalfOpenProbes(int halfOpenProbes) {
+            checkArgument(halfOpenProbes > 0, "halfOpenProbes must be positive: %s", halfOpenProbes);
+            this.halfOpenProbes = halfOpenProbes;
+            return this;
+        }
+
+        public Builder withTicker(Ticker ticker) {
+            this.ticker = checkNotNull(ticker);
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
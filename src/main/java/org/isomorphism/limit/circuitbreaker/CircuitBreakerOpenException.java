@@ -0,0 +1,21 @@
+package org.isomorphism.limit.circuitbreaker;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 熔断器处于打开状态，调用被拒绝。
+ * <p>
+ * 熔断打开时每个调用都会被拒绝，所以这个异常不填充调用栈，构造它几乎没有开销。
+ */
+public class CircuitBreakerOpenException extends RejectedExecutionException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
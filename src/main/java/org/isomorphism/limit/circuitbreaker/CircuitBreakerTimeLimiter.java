@@ -0,0 +1,49 @@
+package org.isomorphism.limit.circuitbreaker;
+
+import org.isomorphism.limit.timelimiter.GuardedTimeLimiter;
+import org.isomorphism.limit.timelimiter.TimeLimiter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 给TimeLimiter加上熔断：熔断打开时直接抛出{@link CircuitBreakerOpenException}，不会提交给执行器；
+ * 超时和调用抛出的异常都按失败计入，调用者线程被中断的调用不计入。
+ * {@link #newProxy(Object, Class, long, java.util.concurrent.TimeUnit)}返回的代理同样受熔断保护。
+ */
+public class CircuitBreakerTimeLimiter extends GuardedTimeLimiter {
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakerTimeLimiter(TimeLimiter delegate, CircuitBreaker breaker) {
+        super(delegate);
+        this.breaker = checkNotNull(breaker);
+    }
+
+    @Override
+    protected CallGuard acquire() {
+        final CircuitBreaker.Permit permit = breaker.tryAcquire();
+        if (permit == null) {
+            throw new CircuitBreakerOpenException("Circuit breaker is " + breaker.getState());
+        }
+        return new CallGuard() {
+            @Override
+            public void onSuccess() {
+                permit.onSuccess();
+            }
+
+            @Override
+            public void onTimeout() {
+                permit.onFailure();
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                permit.onFailure();
+            }
+
+            @Override
+            public void onIgnore() {
+                permit.onIgnore();
+            }
+        };
+    }
+}
@@ -0,0 +1,63 @@
+package org.isomorphism.limit.concurrency;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * LimitAlgorithm的基础实现：负责把上限限制在[minLimit, maxLimit]内，并保证提交样本时不阻塞。
+ * <p>
+ * 同一时刻只有一个线程在更新上限；其他线程提交的普通样本会被直接丢弃，丢弃信号则被记下，由正在更新的线程随后补上，
+ * 这样过载信号不会因为竞争而丢失。
+ */
+public abstract class AbstractLimit implements LimitAlgorithm {
+    private final int minLimit;
+    private final int maxLimit;
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private final AtomicBoolean pendingDrop = new AtomicBoolean();
+    private volatile double limit;
+
+    protected AbstractLimit(int initialLimit, int minLimit, int maxLimit) {
+        checkArgument(minLimit > 0, "minLimit must be positive: %s", minLimit);
+        checkArgument(minLimit <= maxLimit, "minLimit (%s) must not exceed maxLimit (%s)", minLimit, maxLimit);
+        checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit,
+                "initialLimit (%s) must be within [%s, %s]", initialLimit, minLimit, maxLimit);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    @Override
+    public final int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public final void onSample(long rttNanos, int inFlight, boolean didDrop) {
+        if (!updateLock.tryLock()) {
+            if (didDrop) {
+                pendingDrop.set(true);
+            }
+            return;
+        }
+        try {
+            double current = clamp(update(limit, rttNanos, inFlight, didDrop));
+            if (pendingDrop.getAndSet(false)) {
+                current = clamp(update(current, rttNanos, inFlight, true));
+            }
+            limit = current;
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /**
+     * 计算新的上限，调用时持有更新锁。返回值会被截断到[minLimit, maxLimit]。
+     */
+    protected abstract double update(double limit, long rttNanos, int inFlight, boolean didDrop);
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
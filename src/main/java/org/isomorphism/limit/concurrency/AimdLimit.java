@@ -0,0 +1,30 @@
+package org.isomorphism.limit.concurrency;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * 加性增、乘性减（AIMD）：请求被丢弃或超时时把上限乘以backoffRatio，否则在上限被充分使用时加1。
+ * <p>
+ * 只依赖丢弃信号，不看RTT，适合下游会明确拒绝或者调用方有超时的场景。
+ */
+public class AimdLimit extends AbstractLimit {
+    private final double backoffRatio;
+
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        super(initialLimit, minLimit, maxLimit);
+        checkArgument(backoffRatio > 0.0 && backoffRatio < 1.0, "backoffRatio must be in (0, 1): %s", backoffRatio);
+        this.backoffRatio = backoffRatio;
+    }
+
+    @Override
+    protected double update(double limit, long rttNanos, int inFlight, boolean didDrop) {
+        if (didDrop) {
+            return Math.floor(limit * backoffRatio);
+        }
+        // 只有在上限被用到一半以上时才增加，避免空闲时上限无限膨胀
+        if (inFlight * 2 >= limit) {
+            return limit + 1;
+        }
+        return limit;
+    }
+}
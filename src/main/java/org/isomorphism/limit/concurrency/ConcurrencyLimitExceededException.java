@@ -0,0 +1,14 @@
+package org.isomorphism.limit.concurrency;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 在途请求数已经达到{@link ConcurrencyLimiter}的当前上限，调用被拒绝。
+ */
+public class ConcurrencyLimitExceededException extends RejectedExecutionException {
+    private static final long serialVersionUID = 1L;
+
+    public ConcurrencyLimitExceededException(String message) {
+        super(message);
+    }
+}
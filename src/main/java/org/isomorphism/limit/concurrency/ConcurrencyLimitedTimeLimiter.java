@@ -0,0 +1,48 @@
+package org.isomorphism.limit.concurrency;
+
+import org.isomorphism.limit.timelimiter.GuardedTimeLimiter;
+import org.isomorphism.limit.timelimiter.TimeLimiter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 给TimeLimiter加上自适应并发限制：超过上限的调用直接抛出{@link ConcurrencyLimitExceededException}，不会提交给执行器；
+ * 超时的调用按丢弃上报，从而降低上限；其他异常只释放许可。
+ */
+public class ConcurrencyLimitedTimeLimiter extends GuardedTimeLimiter {
+    private final ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitedTimeLimiter(TimeLimiter delegate, ConcurrencyLimiter limiter) {
+        super(delegate);
+        this.limiter = checkNotNull(limiter);
+    }
+
+    @Override
+    protected CallGuard acquire() {
+        final ConcurrencyLimiter.Listener listener = limiter.tryAcquire();
+        if (listener == null) {
+            throw new ConcurrencyLimitExceededException("Concurrency limit of " + limiter.getLimit() + " reached");
+        }
+        return new CallGuard() {
+            @Override
+            public void onSuccess() {
+                listener.onSuccess();
+            }
+
+            @Override
+            public void onTimeout() {
+                listener.onDropped();
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                listener.onIgnore();
+            }
+
+            @Override
+            public void onIgnore() {
+                listener.onIgnore();
+            }
+        };
+    }
+}
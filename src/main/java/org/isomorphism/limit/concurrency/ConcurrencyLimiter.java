@@ -0,0 +1,63 @@
+package org.isomorphism.limit.concurrency;
+
+/**
+ * 并发限制器限制同时在途（in-flight）的请求数，与按速率发放许可的{@link org.isomorphism.limit.ratelimiter.RateLimiter}互补。
+ * <p>
+ * 上限不是固定的，而是由{@link LimitAlgorithm}根据观测到的RTT和丢弃情况动态调整：下游变慢时收缩，恢复后放大。
+ * 获取和释放都不会阻塞，拿不到许可时立即返回{@code null}。
+ * <pre>   {@code
+ *  ConcurrencyLimiter.Listener listener = limiter.tryAcquire();
+ *  if (listener == null) {
+ *    return fallback();
+ *  }
+ *  try {
+ *    Result result = call();
+ *    listener.onSuccess();
+ *    return result;
+ *  } catch (TimeoutException e) {
+ *    listener.onDropped();
+ *    throw e;
+ *  } catch (Exception e) {
+ *    listener.onIgnore();
+ *    throw e;
+ *  }}</pre>
+ */
+public interface ConcurrencyLimiter {
+
+    /**
+     * 尝试获取一个在途许可。
+     *
+     * @return 用于释放许可并上报结果的Listener；超过当前上限时返回{@code null}
+     */
+    Listener tryAcquire();
+
+    /**
+     * 返回当前的并发上限
+     */
+    int getLimit();
+
+    /**
+     * 返回当前在途的请求数
+     */
+    int getInFlight();
+
+    /**
+     * 释放许可并上报本次请求的结果，三个方法只能调用其中一个，且只能调用一次。
+     */
+    interface Listener {
+        /**
+         * 请求成功，本次的RTT会作为样本参与上限调整
+         */
+        void onSuccess();
+
+        /**
+         * 请求被下游丢弃或者超时，这是过载信号，会降低上限
+         */
+        void onDropped();
+
+        /**
+         * 请求失败但与负载无关（例如参数错误），只释放许可，不参与上限调整
+         */
+        void onIgnore();
+    }
+}
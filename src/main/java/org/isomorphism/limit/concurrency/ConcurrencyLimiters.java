@@ -0,0 +1,57 @@
+package org.isomorphism.limit.concurrency;
+
+import com.google.common.base.Ticker;
+import org.isomorphism.limit.timelimiter.TimeLimiter;
+
+/**
+ * ConcurrencyLimiter的工厂方法。
+ */
+public class ConcurrencyLimiters {
+
+    /**
+     * 使用AIMD算法创建ConcurrencyLimiter，超时或丢弃时上限乘以0.9，否则每次成功加1。
+     *
+     * @param initialLimit 初始并发上限
+     * @param minLimit     并发上限的下界
+     * @param maxLimit     并发上限的上界
+     */
+    public static ConcurrencyLimiter aimd(int initialLimit, int minLimit, int maxLimit) {
+        return create(new AimdLimit(initialLimit, minLimit, maxLimit, 0.9));
+    }
+
+    /**
+     * 使用Vegas算法创建ConcurrencyLimiter，根据RTT相对于最小RTT的增长估算排队长度，每1000个样本重新测量一次最小RTT。
+     *
+     * @param initialLimit 初始并发上限
+     * @param minLimit     并发上限的下界
+     * @param maxLimit     并发上限的上界
+     */
+    public static ConcurrencyLimiter vegas(int initialLimit, int minLimit, int maxLimit) {
+        return create(new VegasLimit(initialLimit, minLimit, maxLimit, 1000));
+    }
+
+    /**
+     * 使用梯度算法创建ConcurrencyLimiter，容忍RTT上升到长期平均值的1.5倍，长期RTT取最近约600个样本的平均。
+     *
+     * @param initialLimit 初始并发上限
+     * @param minLimit     并发上限的下界
+     * @param maxLimit     并发上限的上界
+     */
+    public static ConcurrencyLimiter gradient(int initialLimit, int minLimit, int maxLimit) {
+        return create(new GradientLimit(initialLimit, minLimit, maxLimit, 1.5, 0.2, 600));
+    }
+
+    /**
+     * 使用给定的算法创建ConcurrencyLimiter
+     */
+    public static ConcurrencyLimiter create(LimitAlgorithm algorithm) {
+        return new SimpleConcurrencyLimiter(algorithm, Ticker.systemTicker());
+    }
+
+    /**
+     * 返回受limiter限制的TimeLimiter，超时的调用会降低并发上限。
+     */
+    public static TimeLimiter limit(TimeLimiter timeLimiter, ConcurrencyLimiter limiter) {
+        return new ConcurrencyLimitedTimeLimiter(timeLimiter, limiter);
+    }
+}
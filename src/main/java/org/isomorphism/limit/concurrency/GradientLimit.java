@@ -0,0 +1,55 @@
+package org.isomorphism.limit.concurrency;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * 梯度算法：比较长期RTT（指数滑动平均）和当前RTT，
+ * <pre>
+ *   gradient = clamp(tolerance * longRtt / rtt, 0.5, 1.0)
+ *   newLimit = limit * gradient + sqrt(limit)
+ * </pre>
+ * RTT没有明显上升时gradient为1，上限按sqrt(limit)增长；RTT上升时按比例收缩。结果再按smoothing平滑。
+ */
+public class GradientLimit extends AbstractLimit {
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final double tolerance;
+    private final double smoothing;
+    private final int longWindow;
+    private double longRttNanos;
+
+    /**
+     * @param tolerance  容忍RTT上升到长期RTT的多少倍而不收缩，不小于1
+     * @param smoothing  新上限的权重，取值(0, 1]
+     * @param longWindow 计算长期RTT的样本窗口
+     */
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing, int longWindow) {
+        super(initialLimit, minLimit, maxLimit);
+        checkArgument(tolerance >= 1.0, "tolerance must not be less than 1: %s", tolerance);
+        checkArgument(smoothing > 0.0 && smoothing <= 1.0, "smoothing must be in (0, 1]: %s", smoothing);
+        checkArgument(longWindow > 0, "longWindow must be positive: %s", longWindow);
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.longWindow = longWindow;
+    }
+
+    @Override
+    protected double update(double limit, long rttNanos, int inFlight, boolean didDrop) {
+        double newLimit;
+        if (didDrop) {
+            newLimit = limit * BACKOFF_RATIO;
+        } else {
+            if (longRttNanos == 0) {
+                longRttNanos = rttNanos;
+            } else {
+                longRttNanos += (rttNanos - longRttNanos) / longWindow;
+            }
+            if (inFlight * 2 < limit) {
+                return limit;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+            newLimit = limit * gradient + Math.sqrt(limit);
+        }
+        return limit * (1 - smoothing) + newLimit * smoothing;
+    }
+}
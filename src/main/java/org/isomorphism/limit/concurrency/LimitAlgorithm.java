@@ -0,0 +1,21 @@
+package org.isomorphism.limit.concurrency;
+
+/**
+ * 根据RTT样本调整并发上限的算法。
+ */
+public interface LimitAlgorithm {
+
+    /**
+     * 返回当前的并发上限
+     */
+    int getLimit();
+
+    /**
+     * 提交一个样本。实现不能阻塞调用者。
+     *
+     * @param rttNanos 请求从获取许可到释放许可的耗时，单位纳秒
+     * @param inFlight 获取许可时的在途请求数（包含本次请求）
+     * @param didDrop  请求是否被丢弃或者超时
+     */
+    void onSample(long rttNanos, int inFlight, boolean didDrop);
+}
@@ -0,0 +1,83 @@
+package org.isomorphism.limit.concurrency;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * ConcurrencyLimiter的默认实现：在途计数是一个AtomicInteger，获取许可是一次CAS，释放许可时把RTT交给{@link LimitAlgorithm}。
+ */
+public class SimpleConcurrencyLimiter implements ConcurrencyLimiter {
+    private final LimitAlgorithm algorithm;
+    private final Ticker ticker;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public SimpleConcurrencyLimiter(LimitAlgorithm algorithm, Ticker ticker) {
+        this.algorithm = checkNotNull(algorithm);
+        this.ticker = checkNotNull(ticker);
+    }
+
+    @Override
+    public Listener tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= algorithm.getLimit()) {
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new InFlightListener(ticker.read(), current + 1);
+            }
+        }
+    }
+
+    @Override
+    public int getLimit() {
+        return algorithm.getLimit();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private final class InFlightListener implements Listener {
+        private final long startNanos;
+        private final int inFlightAtStart;
+        private boolean released;
+
+        InFlightListener(long startNanos, int inFlightAtStart) {
+            this.startNanos = startNanos;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        @Override
+        public void onSuccess() {
+            if (release()) {
+                algorithm.onSample(ticker.read() - startNanos, inFlightAtStart, false);
+            }
+        }
+
+        @Override
+        public void onDropped() {
+            if (release()) {
+                algorithm.onSample(ticker.read() - startNanos, inFlightAtStart, true);
+            }
+        }
+
+        @Override
+        public void onIgnore() {
+            release();
+        }
+
+        private boolean release() {
+            if (released) {
+                return false;
+            }
+            released = true;
+            inFlight.decrementAndGet();
+            return true;
+        }
+    }
+}
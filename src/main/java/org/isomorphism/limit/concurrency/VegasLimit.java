@@ -0,0 +1,58 @@
+package org.isomorphism.limit.concurrency;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * 借鉴TCP Vegas的算法：用观测到的最小RTT作为无负载RTT，估算下游的排队长度
+ * <pre>
+ *   queueSize = limit * (1 - rttNoLoad / rtt)
+ * </pre>
+ * 排队少于alpha时增加上限，多于beta时减少上限，其中alpha = 3 * log10(limit)，beta = 6 * log10(limit)。
+ * <p>
+ * 为了在下游容量变化后重新找到无负载RTT，每隔probeInterval个样本会丢弃旧的最小RTT，重新测量。
+ */
+public class VegasLimit extends AbstractLimit {
+    private final int probeInterval;
+    private long rttNoLoadNanos;
+    private int samplesSinceProbe;
+
+    public VegasLimit(int initialLimit, int minLimit, int maxLimit, int probeInterval) {
+        super(initialLimit, minLimit, maxLimit);
+        checkArgument(probeInterval > 0, "probeInterval must be positive: %s", probeInterval);
+        this.probeInterval = probeInterval;
+    }
+
+    @Override
+    protected double update(double limit, long rttNanos, int inFlight, boolean didDrop) {
+        double log = Math.max(1.0, Math.log10(limit));
+        if (didDrop) {
+            return limit - log;
+        }
+
+        if (++samplesSinceProbe >= probeInterval) {
+            samplesSinceProbe = 0;
+            rttNoLoadNanos = 0;
+        }
+        if (rttNoLoadNanos == 0 || rttNanos < rttNoLoadNanos) {
+            rttNoLoadNanos = rttNanos;
+            return limit;
+        }
+
+        // 上限没有被充分使用时，RTT无法反映上限是否合适
+        if (inFlight * 2 < limit) {
+            return limit;
+        }
+
+        double queueSize = Math.ceil(limit * (1.0 - (double) rttNoLoadNanos / rttNanos));
+        double alpha = 3 * log;
+        double beta = 6 * log;
+        if (queueSize <= log) {
+            return limit + beta;
+        } else if (queueSize < alpha) {
+            return limit + log;
+        } else if (queueSize > beta) {
+            return limit - log;
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,59 @@
+package org.isomorphism.limit.ratelimiter;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * 限速器状态的只读快照，用于监控。获取快照不加锁，也不会修改限速器的状态。各个值分别读取，彼此之间可能有细微的时间差。
+ *
+ * @see org.isomorphism.limit.ratelimiter.impl.AbstractRateLimiter#snapshot()
+ * @see org.isomorphism.limit.ratelimiter.impl.FixedPointRateLimiter#snapshot()
+ * @see org.isomorphism.limit.ratelimiter.impl.SlidingWindowRateLimiter#snapshot()
+ * @see org.isomorphism.limit.ratelimiter.impl.FairShareRateLimiter#snapshot()
+ */
+public final class RateLimiterSnapshot {
+    private final double rate;
+    private final double storedPermits;
+    private final double maxStoredPermits;
+    private final long microsUntilNextFree;
+
+    public RateLimiterSnapshot(double rate, double storedPermits, double maxStoredPermits, long microsUntilNextFree) {
+        this.rate = rate;
+        this.storedPermits = storedPermits;
+        this.maxStoredPermits = maxStoredPermits;
+        this.microsUntilNextFree = Math.max(0, microsUntilNextFree);
+    }
+
+    /**
+     * 稳定速率，单位为每秒许可数
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * 按当前时间推算的存储许可数。对突发限速器是不需要等待就能拿到的许可数，对预热限速器表示冷却的程度。
+     */
+    public double getStoredPermits() {
+        return storedPermits;
+    }
+
+    public double getMaxStoredPermits() {
+        return maxStoredPermits;
+    }
+
+    /**
+     * 现在到达的请求需要等待的时间，0表示可以立即获得许可
+     */
+    public long getWaitTime(TimeUnit unit) {
+        return unit.convert(microsUntilNextFree, MICROSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "RateLimiterSnapshot[rate=%3.1fqps, storedPermits=%.1f/%.1f, waitMicros=%d]", rate, storedPermits, maxStoredPermits,
+                microsUntilNextFree);
+    }
+}
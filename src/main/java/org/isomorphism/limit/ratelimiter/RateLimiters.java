@@ -1,7 +1,11 @@
 package org.isomorphism.limit.ratelimiter;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.isomorphism.limit.ratelimiter.impl.FairShareRateLimiter;
+import org.isomorphism.limit.ratelimiter.impl.FixedPointRateLimiter;
 import org.isomorphism.limit.ratelimiter.impl.SleepingStopwatch;
+import org.isomorphism.limit.ratelimiter.impl.SlidingWindowCounter;
+import org.isomorphism.limit.ratelimiter.impl.SlidingWindowLog;
 import org.isomorphism.limit.ratelimiter.impl.SmoothBursty;
 import org.isomorphism.limit.ratelimiter.impl.SmoothWarmingUp;
 
@@ -66,6 +70,88 @@ public class RateLimiters {
         return create(SleepingStopwatch.createFromSystemTimer(), permitsPerSecond, warmupPeriod, unit, 3.0);
     }
 
+    /**
+     * 根据指定的稳定吞吐率、预热期、冷却因子和预热曲线来创建RateLimiter。
+     * <p>
+     * 完全冷却时的发放间隔为稳定间隔的coldFactor倍，预热期间的发放间隔按warmupCurve从冷却间隔过渡到稳定间隔，
+     * 整个过渡过程耗时warmupPeriod。{@link #create(double, long, TimeUnit)}相当于coldFactor为3.0、曲线为{@link WarmupCurves#linear()}。
+     * 非线性曲线的积分在创建时预先算成查找表，获取许可时的计算量与线性预热相同。
+     *
+     * @param permitsPerSecond 返回的RateLimiter的速率，意味着每秒有多少个许可变成有效。
+     * @param warmupPeriod     在这段时间内RateLimiter会增加它的速率，在抵达它的稳定速率或者最大速率之前
+     * @param unit             参数warmupPeriod 的时间单位
+     * @param coldFactor       冷却状态下的发放间隔是稳定间隔的多少倍，不小于1
+     * @param warmupCurve      预热曲线，参见{@link WarmupCurves}
+     * @throws IllegalArgumentException 如果permitsPerSecond为负数或者为0，或者coldFactor小于1
+     */
+    public static RateLimiter create(double permitsPerSecond, long warmupPeriod, TimeUnit unit, double coldFactor, WarmupCurve warmupCurve) {
+        checkArgument(warmupPeriod >= 0, "warmupPeriod must not be negative: %s", warmupPeriod);
+        return create(SleepingStopwatch.createFromSystemTimer(), permitsPerSecond, warmupPeriod, unit, coldFactor, warmupCurve);
+    }
+
+    /**
+     * 创建高精度的RateLimiter，行为与{@link #create(double)}相同，但内部全部使用定点纳秒整数运算。
+     * 适用于每秒超过一百万许可的场景，此时微秒精度的实现会有明显的速率误差。
+     *
+     * @param permitsPerSecond 返回的{@code RateLimiter}的速率，以每秒可用的许可证数量为单位
+     * @throws IllegalArgumentException 如果{@code permitPerSecond}为负数或零
+     */
+    public static RateLimiter createHighResolution(double permitsPerSecond) {
+        RateLimiter rateLimiter = new FixedPointRateLimiter(SleepingStopwatch.createFromSystemTimer(), 1.0 /* maxBurstSeconds */);
+        rateLimiter.setRate(permitsPerSecond);
+        return rateLimiter;
+    }
+
+    /**
+     * 创建发放节奏更精确的RateLimiter，行为与{@link #create(double)}相同，但使用{@link SleepingStopwatch#createPrecise()}等待。
+     * 普通的睡眠在Linux上会多睡50~1000微秒，速率在每秒上万时实际速率会明显偏低；精确等待会在每次等待的末尾自旋几十微秒。
+     *
+     * @param permitsPerSecond 返回的{@code RateLimiter}的速率，以每秒可用的许可证数量为单位
+     * @throws IllegalArgumentException 如果{@code permitPerSecond}为负数或零
+     */
+    public static RateLimiter createPrecise(double permitsPerSecond) {
+        return create(SleepingStopwatch.createPrecise(), permitsPerSecond);
+    }
+
+    /**
+     * 创建近似的滑动窗口RateLimiter：任意长度为window的滚动窗口内，最多发放maxPermits个许可。
+     * 窗口被切分为subWindows个子窗口，最老的子窗口按比例加权计入，子窗口越多越精确。
+     * 与{@link #create(double)}不同，窗口内的许可不会被平滑，允许在窗口开始时一次用完。
+     *
+     * @param maxPermits 窗口内允许的最大许可数
+     * @param window     窗口长度
+     * @param unit       参数window的时间单位
+     * @param subWindows 子窗口个数
+     * @throws IllegalArgumentException 如果maxPermits、window或者subWindows不是正数
+     */
+    public static RateLimiter createSlidingWindow(int maxPermits, long window, TimeUnit unit, int subWindows) {
+        return new SlidingWindowCounter(SleepingStopwatch.createFromSystemTimer(), maxPermits, window, unit, subWindows);
+    }
+
+    /**
+     * 创建精确的滑动窗口RateLimiter：任意长度为window的滚动窗口内，严格保证最多发放maxPermits个许可。
+     * 内部保存最近maxPermits个许可的发放时间，内存占用为 8 * maxPermits 字节。
+     *
+     * @param maxPermits 窗口内允许的最大许可数
+     * @param window     窗口长度
+     * @param unit       参数window的时间单位
+     * @throws IllegalArgumentException 如果maxPermits或者window不是正数
+     */
+    public static RateLimiter createExactSlidingWindow(int maxPermits, long window, TimeUnit unit) {
+        return new SlidingWindowLog(SleepingStopwatch.createFromSystemTimer(), maxPermits, window, unit);
+    }
+
+    /**
+     * 创建多租户共享的公平限速器：所有租户合计不超过permitsPerSecond，都在等待时按权重分配许可，
+     * 许可多的租户不会增加许可少的租户的等待时间。通过{@link FairShareRateLimiter#forTenant(Object)}得到单个租户的RateLimiter。
+     *
+     * @param permitsPerSecond 所有租户合计的速率，以每秒可用的许可证数量为单位
+     * @throws IllegalArgumentException 如果{@code permitPerSecond}为负数或零
+     */
+    public static FairShareRateLimiter createFairShare(double permitsPerSecond) {
+        return new FairShareRateLimiter(SleepingStopwatch.createFromSystemTimer(), permitsPerSecond, 1.0 /* maxBurstSeconds */);
+    }
+
     @VisibleForTesting
     static RateLimiter create(SleepingStopwatch stopwatch, double permitsPerSecond) {
         RateLimiter rateLimiter = new SmoothBursty(stopwatch, 1.0 /* maxBurstSeconds */);
@@ -75,7 +161,13 @@ public class RateLimiters {
 
     @VisibleForTesting
     static RateLimiter create(SleepingStopwatch stopwatch, double permitsPerSecond, long warmupPeriod, TimeUnit unit, double coldFactor) {
-        RateLimiter rateLimiter = new SmoothWarmingUp(stopwatch, warmupPeriod, unit, coldFactor);
+        return create(stopwatch, permitsPerSecond, warmupPeriod, unit, coldFactor, WarmupCurves.linear());
+    }
+
+    @VisibleForTesting
+    static RateLimiter create(SleepingStopwatch stopwatch, double permitsPerSecond, long warmupPeriod, TimeUnit unit, double coldFactor,
+                              WarmupCurve warmupCurve) {
+        RateLimiter rateLimiter = new SmoothWarmingUp(stopwatch, warmupPeriod, unit, coldFactor, warmupCurve);
         rateLimiter.setRate(permitsPerSecond);
         return rateLimiter;
     }
@@ -0,0 +1,21 @@
+package org.isomorphism.limit.ratelimiter;
+
+/**
+ * 预热曲线：描述预热期间许可的发放间隔如何从coldInterval过渡到stableInterval。
+ * <p>
+ * 参数x是超过thresholdPermits的存储许可占(maxPermits - thresholdPermits)的比例，x = 1表示完全冷却，x = 0表示预热完毕；
+ * 返回值同样归一化到[0, 1]，对应的发放间隔为 stableInterval + (coldInterval - stableInterval) * shape(x)。
+ * 实现应当满足shape(0) = 0，shape(1) = 1，并且单调不减。
+ * <p>
+ * 曲线只会在创建RateLimiter时被采样，用来预先计算积分表，获取许可时不会再调用它。
+ *
+ * @see WarmupCurves
+ */
+public interface WarmupCurve {
+
+    /**
+     * @param x 归一化的存储许可数，取值[0, 1]
+     * @return 归一化的发放间隔，取值[0, 1]
+     */
+    double shape(double x);
+}
@@ -0,0 +1,75 @@
+package org.isomorphism.limit.ratelimiter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * 内置的预热曲线。
+ */
+public class WarmupCurves {
+    private static final WarmupCurve LINEAR = new WarmupCurve() {
+        @Override
+        public double shape(double x) {
+            return x;
+        }
+
+        @Override
+        public String toString() {
+            return "WarmupCurves.linear()";
+        }
+    };
+
+    private WarmupCurves() {
+    }
+
+    /**
+     * 线性预热，即{@link RateLimiters#create(double, long, java.util.concurrent.TimeUnit)}使用的曲线：
+     * 发放间隔随存储许可数线性变化。
+     */
+    public static WarmupCurve linear() {
+        return LINEAR;
+    }
+
+    /**
+     * 指数预热：shape(x) = (e^(kx) - 1) / (e^k - 1)。
+     * 刚开始预热时发放间隔下降得很快，越接近稳定速率越平缓，适合缓存这类前几次访问代价最高的资源。
+     *
+     * @param steepness 曲线的陡峭程度k，必须为正数，越大越陡
+     */
+    public static WarmupCurve exponential(final double steepness) {
+        checkArgument(steepness > 0.0, "steepness must be positive: %s", steepness);
+        final double denominator = Math.expm1(steepness);
+        return new WarmupCurve() {
+            @Override
+            public double shape(double x) {
+                return Math.expm1(steepness * x) / denominator;
+            }
+
+            @Override
+            public String toString() {
+                return "WarmupCurves.exponential(" + steepness + ")";
+            }
+        };
+    }
+
+    /**
+     * 对数预热：shape(x) = ln(1 + kx) / ln(1 + k)。
+     * 刚开始预热时发放间隔下降得很慢，接近稳定速率时才迅速放开，适合JIT编译这类需要持续低负载才能热起来的后端。
+     *
+     * @param steepness 曲线的陡峭程度k，必须为正数，越大越陡
+     */
+    public static WarmupCurve logarithmic(final double steepness) {
+        checkArgument(steepness > 0.0, "steepness must be positive: %s", steepness);
+        final double denominator = Math.log1p(steepness);
+        return new WarmupCurve() {
+            @Override
+            public double shape(double x) {
+                return Math.log1p(steepness * x) / denominator;
+            }
+
+            @Override
+            public String toString() {
+                return "WarmupCurves.logarithmic(" + steepness + ")";
+            }
+        };
+    }
+}
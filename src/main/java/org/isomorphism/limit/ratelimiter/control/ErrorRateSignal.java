@@ -0,0 +1,26 @@
+package org.isomorphism.limit.ratelimiter.control;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 错误率信号：统计两次{@link #read()}之间失败请求所占的比例，没有请求时返回0。
+ */
+public class ErrorRateSignal implements FeedbackSignal {
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public void recordSuccess() {
+        successes.incrementAndGet();
+    }
+
+    public void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    @Override
+    public double read() {
+        long failed = failures.getAndSet(0);
+        long total = failed + successes.getAndSet(0);
+        return total == 0 ? 0.0 : (double) failed / total;
+    }
+}
@@ -0,0 +1,12 @@
+package org.isomorphism.limit.ratelimiter.control;
+
+/**
+ * 反映下游负载的反馈信号，例如错误率、p99延迟、队列深度。数值越大表示负载越重。
+ */
+public interface FeedbackSignal {
+
+    /**
+     * 返回信号的当前值。由{@link RateController}在每个控制周期调用一次，不应阻塞。
+     */
+    double read();
+}
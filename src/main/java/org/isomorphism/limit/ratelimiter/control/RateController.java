@@ -0,0 +1,217 @@
+package org.isomorphism.limit.ratelimiter.control;
+
+import com.google.common.collect.ImmutableList;
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * 根据反馈信号周期性地调整RateLimiter的速率，代替人工看监控后调用{@link RateLimiter#setRate(double)}。
+ * <p>
+ * 每个信号都有一个目标值，控制律是乘性的：
+ * <ul>
+ * <li>任一信号超过目标值的(1 + hysteresis)倍时，按最严重的超标比例降低速率：rate = rate * target / value，单次最多降到rate * maxDecreaseFactor</li>
+ * <li>所有信号都低于目标值的(1 - hysteresis)倍时，速率乘以increaseFactor</li>
+ * <li>其他情况处于滞回区间内，速率保持不变，避免在目标值附近来回震荡</li>
+ * </ul>
+ * 速率始终限制在[minRate, maxRate]内。
+ * <p>
+ * 只有速率确实发生变化时才会调用setRate。{@link org.isomorphism.limit.ratelimiter.impl.AbstractRateLimiter#setRate(double)}
+ * 只在持有锁时做O(1)的doSetRate，正在睡眠等待的获取者不持有锁，所以调整速率不会阻塞它们；新的速率从下一次请求开始生效。
+ */
+public class RateController {
+    private final RateLimiter rateLimiter;
+    private final double minRate;
+    private final double maxRate;
+    private final double hysteresis;
+    private final double increaseFactor;
+    private final double maxDecreaseFactor;
+    private final List<Target> targets;
+    private final AtomicLong failureCount = new AtomicLong();
+
+    private volatile double rate;
+    private volatile RuntimeException lastFailure;
+    private ScheduledFuture<?> schedule;
+
+    private RateController(Builder builder) {
+        this.rateLimiter = builder.rateLimiter;
+        this.minRate = builder.minRate;
+        this.maxRate = builder.maxRate;
+        this.hysteresis = builder.hysteresis;
+        this.increaseFactor = builder.increaseFactor;
+        this.maxDecreaseFactor = builder.maxDecreaseFactor;
+        this.targets = ImmutableList.copyOf(builder.targets);
+        this.rate = Math.max(minRate, Math.min(maxRate, builder.initialRate));
+        rateLimiter.setRate(rate);
+    }
+
+    public static Builder builder(RateLimiter rateLimiter, double initialRate) {
+        return new Builder(rateLimiter, initialRate);
+    }
+
+    /**
+     * 返回控制器最近一次设置的速率
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * 返回周期性调整中因异常而跳过的周期数
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * 返回周期性调整中最近一次抛出的异常，没有失败过时返回null
+     */
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * 读取所有信号并执行一次调整。
+     *
+     * @return 调整后的速率
+     */
+    public synchronized double tick() {
+        double worstRatio = 0.0;
+        for (Target target : targets) {
+            worstRatio = Math.max(worstRatio, target.signal.read() / target.value);
+        }
+
+        double newRate = rate;
+        if (worstRatio > 1.0 + hysteresis) {
+            newRate = rate * Math.max(maxDecreaseFactor, 1.0 / worstRatio);
+        } else if (worstRatio < 1.0 - hysteresis) {
+            newRate = rate * increaseFactor;
+        }
+        newRate = Math.max(minRate, Math.min(maxRate, newRate));
+
+        if (newRate != rate) {
+            rateLimiter.setRate(newRate);
+            rate = newRate;
+        }
+        return newRate;
+    }
+
+    /**
+     * 在executor上每隔period执行一次{@link #tick()}。抛出异常的周期被跳过，
+     * 计入{@link #getFailureCount()}和{@link #getLastFailure()}。
+     */
+    public synchronized void start(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        checkState(schedule == null, "RateController already started");
+        checkArgument(period > 0, "period must be positive: %s", period);
+        schedule = executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (RuntimeException e) {
+                    // 某个信号读取失败时跳过本周期，不能让异常终止后续的调度；记录下来供监控查看
+                    lastFailure = e;
+                    failureCount.incrementAndGet();
+                }
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * 停止周期性调整，当前速率保持不变
+     */
+    public synchronized void stop() {
+        if (schedule != null) {
+            schedule.cancel(false);
+            schedule = null;
+        }
+    }
+
+    private static final class Target {
+        final FeedbackSignal signal;
+        final double value;
+
+        Target(FeedbackSignal signal, double value) {
+            this.signal = signal;
+            this.value = value;
+        }
+    }
+
+    public static final class Builder {
+        private final RateLimiter rateLimiter;
+        private final double initialRate;
+        private double minRate;
+        private double maxRate = Double.MAX_VALUE;
+        private double hysteresis = 0.1;
+        private double increaseFactor = 1.1;
+        private double maxDecreaseFactor = 0.5;
+        private final List<Target> targets = new ArrayList<Target>();
+
+        private Builder(RateLimiter rateLimiter, double initialRate) {
+            checkArgument(initialRate > 0.0, "initialRate must be positive: %s", initialRate);
+            this.rateLimiter = checkNotNull(rateLimiter);
+            this.initialRate = initialRate;
+            this.minRate = initialRate / 100;
+        }
+
+        /**
+         * 速率的上下界，默认下界为initialRate的1%，没有上界
+         */
+        public Builder withBounds(double minRate, double maxRate) {
+            checkArgument(minRate > 0.0 && minRate <= maxRate, "bounds must satisfy 0 < minRate <= maxRate");
+            this.minRate = minRate;
+            this.maxRate = maxRate;
+            return this;
+        }
+
+        /**
+         * 滞回区间的相对宽度，信号在目标值的(1 ± hysteresis)倍之间时不调整速率。默认0.1。
+         */
+        public Builder withHysteresis(double hysteresis) {
+            checkArgument(hysteresis >= 0.0 && hysteresis < 1.0, "hysteresis must be in [0, 1): %s", hysteresis);
+            this.hysteresis = hysteresis;
+            return this;
+        }
+
+        /**
+         * 所有信号都低于目标时每个周期的增长倍数，默认1.1
+         */
+        public Builder withIncreaseFactor(double increaseFactor) {
+            checkArgument(increaseFactor > 1.0, "increaseFactor must be greater than 1: %s", increaseFactor);
+            this.increaseFactor = increaseFactor;
+            return this;
+        }
+
+        /**
+         * 单个周期内最多降到当前速率的多少倍，默认0.5
+         */
+        public Builder withMaxDecreaseFactor(double maxDecreaseFactor) {
+            checkArgument(maxDecreaseFactor > 0.0 && maxDecreaseFactor < 1.0, "maxDecreaseFactor must be in (0, 1): %s", maxDecreaseFactor);
+            this.maxDecreaseFactor = maxDecreaseFactor;
+            return this;
+        }
+
+        /**
+         * 注册一个反馈信号及其目标值，信号超过目标值时降低速率
+         */
+        public Builder withSignal(FeedbackSignal signal, double target) {
+            checkArgument(target > 0.0, "target must be positive: %s", target);
+            targets.add(new Target(checkNotNull(signal), target));
+            return this;
+        }
+
+        public RateController build() {
+            checkState(!targets.isEmpty(), "Must register at least one signal");
+            return new RateController(this);
+        }
+    }
+}
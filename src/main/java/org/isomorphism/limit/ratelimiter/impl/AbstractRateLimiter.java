@@ -1,12 +1,17 @@
 package org.isomorphism.limit.ratelimiter.impl;
 
+import org.isomorphism.limit.Reservation;
 import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.isomorphism.limit.ratelimiter.RateLimiterSnapshot;
 
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static java.lang.Math.max;
 import static java.util.concurrent.TimeUnit.MICROSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -19,17 +24,17 @@ public abstract class AbstractRateLimiter implements RateLimiter {
     private final SleepingStopwatch stopwatch;
 
     //在构造函数中无法初始化，因为mock不调用构造函数。
-    private volatile Object mutexDoNotUseDirectly;
+    //使用ReentrantLock而不是内置锁，持有锁时不会把虚拟线程钉在载体线程上。
+    private volatile ReentrantLock mutexDoNotUseDirectly;
 
-    private Object mutex() {
-        Object mutex = mutexDoNotUseDirectly;
+    private static final AtomicReferenceFieldUpdater<AbstractRateLimiter, ReentrantLock> MUTEX_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(AbstractRateLimiter.class, ReentrantLock.class, "mutexDoNotUseDirectly");
+
+    private ReentrantLock mutex() {
+        ReentrantLock mutex = mutexDoNotUseDirectly;
         if (mutex == null) {
-            synchronized (this) {
-                mutex = mutexDoNotUseDirectly;
-                if (mutex == null) {
-                    mutexDoNotUseDirectly = mutex = new Object();
-                }
-            }
+            MUTEX_UPDATER.compareAndSet(this, null, new ReentrantLock());
+            mutex = mutexDoNotUseDirectly;
         }
         return mutex;
     }
@@ -50,8 +55,12 @@ public abstract class AbstractRateLimiter implements RateLimiter {
      */
     public final void setRate(double permitsPerSecond) {
         checkArgument(permitsPerSecond > 0.0 && !Double.isNaN(permitsPerSecond), "rate must be positive");
-        synchronized (mutex()) {
+        ReentrantLock mutex = mutex();
+        mutex.lock();
+        try {
             doSetRate(permitsPerSecond, stopwatch.readMicros());
+        } finally {
+            mutex.unlock();
         }
     }
 
@@ -62,13 +71,30 @@ public abstract class AbstractRateLimiter implements RateLimiter {
      * 它的初始值相当于构造这个RateLimiter的工厂方法中的参数permitsPerSecond ，并且只有在调用setRate(double)后才会被更新。
      */
     public final double getRate() {
-        synchronized (mutex()) {
+        ReentrantLock mutex = mutex();
+        mutex.lock();
+        try {
             return doGetRate();
+        } finally {
+            mutex.unlock();
         }
     }
 
     abstract double doGetRate();
 
+    /**
+     * 返回限速器状态的只读快照，包括速率、存储的许可数和现在到达的请求需要等待的时间。
+     * 与{@link #getRate()}不同，不获取锁也不修改状态，适合监控频繁地轮询。
+     */
+    public final RateLimiterSnapshot snapshot() {
+        return doSnapshot(stopwatch.readMicros());
+    }
+
+    /**
+     * 不持有锁时调用，只能读取状态
+     */
+    abstract RateLimiterSnapshot doSnapshot(long nowMicros);
+
     /**
      *从RateLimiter获取一个许可，该方法会被阻塞直到获取到请求。如果存在等待的情况的话，告诉调用者获取到该请求所需要的睡眠时间。该方法等同于acquire(1)。
      *
@@ -86,7 +112,7 @@ public abstract class AbstractRateLimiter implements RateLimiter {
      * @throws IllegalArgumentException 如果请求的许可数为负数或者为0
      */
     public double acquire(int permits) {
-        long microsToWait = reserve(permits);
+        long microsToWait = reserveAndGetWaitLength(permits);
         stopwatch.sleepMicrosUninterruptibly(microsToWait);
         return 1.0 * microsToWait / SECONDS.toMicros(1L);
     }
@@ -96,13 +122,44 @@ public abstract class AbstractRateLimiter implements RateLimiter {
      *
      * @return 资源可用的时间，以毫秒为单位
      */
-    final long reserve(int permits) {
+    final long reserveAndGetWaitLength(int permits) {
         checkPermits(permits);
-        synchronized (mutex()) {
+        ReentrantLock mutex = mutex();
+        mutex.lock();
+        try {
             return reserveAndGetWaitLength(permits, stopwatch.readMicros());
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * 预约许可但不等待，调用者按{@link Reservation#getDelay(TimeUnit)}自行等待，之后可以取消或者按实际用量结算。
+     *
+     * @param permits 预约的许可数，通常是估计值
+     * @throws IllegalArgumentException 如果请求的许可数为负数或者为0
+     */
+    public Reservation reserve(int permits) {
+        checkPermits(permits);
+        ReentrantLock mutex = mutex();
+        mutex.lock();
+        try {
+            long nowMicros = stopwatch.readMicros();
+            return new RateLimiterReservation(permits, nowMicros + reserveAndGetWaitLength(permits, nowMicros));
+        } finally {
+            mutex.unlock();
         }
     }
 
+    /**
+     * 与{@link #reserve(int)}相同，但会等待到预约的许可可以使用再返回。
+     */
+    public Reservation acquireReservation(int permits) {
+        Reservation reservation = reserve(permits);
+        stopwatch.sleepMicrosUninterruptibly(reservation.getDelay(MICROSECONDS));
+        return reservation;
+    }
+
     /**
      * 从RateLimiter获取许可如果该许可可以在不超过timeout的时间内获取得到的话，或者如果无法在timeout 过期之前获取得到许可的话，那么立即返回false（无需等待）。
      * 该方法等同于tryAcquire(1, timeout, unit)。
@@ -152,13 +209,17 @@ public abstract class AbstractRateLimiter implements RateLimiter {
         long timeoutMicros = max(unit.toMicros(timeout), 0);
         checkPermits(permits);
         long microsToWait;
-        synchronized (mutex()) {
+        ReentrantLock mutex = mutex();
+        mutex.lock();
+        try {
             long nowMicros = stopwatch.readMicros();
             if (!canAcquire(nowMicros, timeoutMicros)) {
                 return false;
             } else {
                 microsToWait = reserveAndGetWaitLength(permits, nowMicros);
             }
+        } finally {
+            mutex.unlock();
         }
         stopwatch.sleepMicrosUninterruptibly(microsToWait);
         return true;
@@ -192,12 +253,82 @@ public abstract class AbstractRateLimiter implements RateLimiter {
      */
     abstract long reserveEarliestAvailable(int permits, long nowMicros);
 
+    /**
+     * 退回没有用到的许可，使之后的请求可以提前获得许可
+     */
+    abstract void refundPermits(int permits, long nowMicros);
+
     @Override
     public String toString() {
         return String.format(Locale.ROOT, "AbstractRateLimiter[stableRate=%3.1fqps]", getRate());
     }
 
 
+    private final class RateLimiterReservation implements Reservation {
+        private final long momentAvailableMicros;
+        private int permits;
+        private boolean done;
+
+        RateLimiterReservation(int permits, long momentAvailableMicros) {
+            this.permits = permits;
+            this.momentAvailableMicros = momentAvailableMicros;
+        }
+
+        @Override
+        public long getPermits() {
+            ReentrantLock mutex = mutex();
+            mutex.lock();
+            try {
+                return permits;
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(max(momentAvailableMicros - stopwatch.readMicros(), 0), MICROSECONDS);
+        }
+
+        @Override
+        public boolean cancel() {
+            ReentrantLock mutex = mutex();
+            mutex.lock();
+            try {
+                if (done) {
+                    return false;
+                }
+                done = true;
+                refundPermits(permits, stopwatch.readMicros());
+                permits = 0;
+                return true;
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        @Override
+        public void settle(long actualPermits) {
+            checkArgument(actualPermits >= 0 && actualPermits <= Integer.MAX_VALUE, "actualPermits (%s) must be a non-negative int", actualPermits);
+            ReentrantLock mutex = mutex();
+            mutex.lock();
+            try {
+                checkState(!done, "reservation already cancelled or settled");
+                done = true;
+                long nowMicros = stopwatch.readMicros();
+                if (actualPermits < permits) {
+                    refundPermits(permits - (int) actualPermits, nowMicros);
+                } else if (actualPermits > permits) {
+                    // 补扣的许可推迟之后的请求，当前调用者不再等待
+                    reserveEarliestAvailable((int) actualPermits - permits, nowMicros);
+                }
+                permits = (int) actualPermits;
+            } finally {
+                mutex.unlock();
+            }
+        }
+    }
+
     private static void checkPermits(int permits) {
         checkArgument(permits > 0, "Requested permits (%s) must be positive", permits);
     }
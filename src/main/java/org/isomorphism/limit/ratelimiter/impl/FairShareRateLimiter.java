@@ -0,0 +1,455 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.isomorphism.limit.ratelimiter.RateLimiterSnapshot;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * 多租户共享总速率的公平限速器，按权重用起始时间公平排队（SFQ）分配许可。
+ * <p>
+ * {@link AbstractRateLimiter}按抢到锁的顺序预约许可，许多租户同时阻塞时，线程最多的租户拿走大部分许可。
+ * 这里每个请求到达时按租户计算虚拟起始时间 start = max(V, 该租户上一个请求的虚拟结束时间)，
+ * 虚拟结束时间 finish = start + permits / weight，其中V是最近一次发放的请求的虚拟起始时间。
+ * 总速率上有空闲时，发放给虚拟起始时间最小的请求。轻量租户到达时虚拟起始时间就是V，
+ * 最多只需要等待一次发放，不会排在重租户积压的请求后面。
+ * <p>
+ * 每个租户的请求按到达顺序排队，有请求在等待的租户放在以队首起始时间为键的堆中，每次发放的代价为O(log 活跃租户数)。
+ * 租户的虚拟结束时间不超过V后，它的状态与新租户没有区别，会被自动丢弃；没有请求在等待时丢弃全部租户的状态。
+ * <p>
+ * 总速率的计算与{@link FixedPointRateLimiter}相同，闲置时最多积攒maxBurstSeconds秒的额度，但这里先等待再扣减，
+ * 等待中的请求不会预支之后的许可。队首的请求在锁外用计时器睡眠，其余请求在各自的Condition上等待。
+ */
+public class FairShareRateLimiter {
+
+    private final SleepingStopwatch stopwatch;
+    private final long maxBurstNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<Object, Double> weights = new HashMap<>();
+    private final Map<Object, Tenant> tenants = new HashMap<>();
+
+    /**
+     * 有请求在等待的租户，按队首请求的虚拟起始时间排序
+     */
+    private final PriorityQueue<Tenant> active = new PriorityQueue<>(11, new Comparator<Tenant>() {
+        @Override
+        public int compare(Tenant a, Tenant b) {
+            return compareWaiters(a.waiters.peekFirst(), b.waiters.peekFirst());
+        }
+    });
+
+    /**
+     * 没有请求在等待、但虚拟结束时间还在V之后的租户，按虚拟结束时间排序，可能有过期的条目
+     */
+    private final PriorityQueue<IdleTenant> idle = new PriorityQueue<>(11, new Comparator<IdleTenant>() {
+        @Override
+        public int compare(IdleTenant a, IdleTenant b) {
+            return Double.compare(a.finish, b.finish);
+        }
+    });
+
+    private double virtualTime;
+    private long sequence;
+
+    /**
+     * 以下两个字段只在持有锁时修改，volatile使{@link #snapshot()}可以不加锁读取
+     */
+    private volatile double intervalNanos;
+    private volatile double tatNanos;
+
+    public FairShareRateLimiter(SleepingStopwatch stopwatch, double permitsPerSecond, double maxBurstSeconds) {
+        checkArgument(maxBurstSeconds >= 0.0, "maxBurstSeconds must not be negative: %s", maxBurstSeconds);
+        this.stopwatch = checkNotNull(stopwatch);
+        this.maxBurstNanos = (long) (maxBurstSeconds * SECONDS.toNanos(1L));
+        this.intervalNanos = intervalNanos(permitsPerSecond);
+        this.tatNanos = stopwatch.readNanos();
+    }
+
+    /**
+     * 设置所有租户共享的稳定速率
+     */
+    public void setRate(double permitsPerSecond) {
+        double interval = intervalNanos(permitsPerSecond);
+        lock.lock();
+        try {
+            intervalNanos = interval;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static double intervalNanos(double permitsPerSecond) {
+        checkArgument(permitsPerSecond > 0.0 && !Double.isNaN(permitsPerSecond), "rate must be positive");
+        return SECONDS.toNanos(1L) / permitsPerSecond;
+    }
+
+    public double getRate() {
+        lock.lock();
+        try {
+            return SECONDS.toNanos(1L) / intervalNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 设置租户的权重，默认为1。租户都在等待时，分到的许可与权重成正比。只影响之后到达的请求。
+     */
+    public void setWeight(Object tenant, double weight) {
+        checkNotNull(tenant);
+        checkArgument(weight > 0.0 && !Double.isInfinite(weight), "weight must be positive: %s", weight);
+        lock.lock();
+        try {
+            if (weight == 1.0) {
+                weights.remove(tenant);
+            } else {
+                weights.put(tenant, weight);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double acquire(Object tenant) {
+        return acquire(tenant, 1);
+    }
+
+    /**
+     * 以指定租户的身份获取许可，阻塞直到轮到该请求，不响应中断。
+     *
+     * @return 等待的时间，单位为秒
+     */
+    public double acquire(Object tenant, int permits) {
+        long waited = acquire(tenant, permits, -1L);
+        return 1.0 * waited / SECONDS.toNanos(1L);
+    }
+
+    public boolean tryAcquire(Object tenant) {
+        return tryAcquire(tenant, 1, 0, NANOSECONDS);
+    }
+
+    /**
+     * 以指定租户的身份获取许可，超时前没有轮到该请求时返回false。
+     * 能否按时轮到取决于之后到达的其他租户的请求，所以只有在按当前速率一定来不及时才会立即返回。
+     */
+    public boolean tryAcquire(Object tenant, int permits, long timeout, TimeUnit unit) {
+        return acquire(tenant, permits, max(unit.toNanos(timeout), 0)) >= 0;
+    }
+
+    /**
+     * 返回一个以指定租户身份获取许可的{@link RateLimiter}，它不能单独设置速率。
+     */
+    public RateLimiter forTenant(Object tenant) {
+        checkNotNull(tenant);
+        return new TenantRateLimiter(tenant);
+    }
+
+    /**
+     * 返回当前保留了状态的租户数，包括正在等待的和虚拟结束时间还没有过去的
+     */
+    public int getTenantCount() {
+        lock.lock();
+        try {
+            return tenants.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 返回当前有请求在等待的租户数
+     */
+    public int getActiveTenantCount() {
+        lock.lock();
+        try {
+            return active.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 不加锁地读取总速率的状态，按resync的规则推算积攒的额度，但不写回。
+     * 等待时间只反映总速率，不包括已经在排队的请求。
+     */
+    public RateLimiterSnapshot snapshot() {
+        long nowNanos = stopwatch.readNanos();
+        double interval = intervalNanos;
+        double tat = max(tatNanos, (double) nowNanos - maxBurstNanos);
+        double maxStoredPermits = maxBurstNanos / interval;
+        double storedPermits = min(maxStoredPermits, max(nowNanos - tat, 0.0) / interval);
+        long microsToWait = (long) Math.ceil((tat - nowNanos) / MICROSECONDS.toNanos(1L));
+        return new RateLimiterSnapshot(SECONDS.toNanos(1L) / interval, storedPermits, maxStoredPermits, microsToWait);
+    }
+
+    /**
+     * @param timeoutNanos 负数表示不限时
+     * @return 等待的纳秒数，超时返回-1
+     */
+    private long acquire(Object key, int permits, long timeoutNanos) {
+        checkNotNull(key);
+        checkArgument(permits > 0, "Requested permits (%s) must be positive", permits);
+        boolean interrupted = false;
+        long arrival;
+        Waiter waiter;
+        lock.lock();
+        try {
+            arrival = stopwatch.readNanos();
+            resync(arrival);
+            if (timeoutNanos >= 0 && (timeoutNanos == 0 ? !active.isEmpty() || tatNanos > arrival : tatNanos - timeoutNanos > arrival)) {
+                return -1L;
+            }
+            waiter = enqueue(key, permits);
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            while (true) {
+                long sleepNanos;
+                lock.lock();
+                try {
+                    long now = stopwatch.readNanos();
+                    boolean expired = timeoutNanos >= 0 && now - arrival > timeoutNanos;
+                    if (isHead(waiter)) {
+                        resync(now);
+                        if (tatNanos <= now) {
+                            grant(waiter);
+                            return now - arrival;
+                        }
+                        if (timeoutNanos >= 0 && tatNanos - arrival > timeoutNanos) {
+                            abandon(waiter);
+                            return -1L;
+                        }
+                        sleepNanos = (long) Math.ceil(tatNanos - now);
+                    } else if (expired) {
+                        abandon(waiter);
+                        return -1L;
+                    } else {
+                        sleepNanos = 0L;
+                        try {
+                            if (timeoutNanos < 0) {
+                                waiter.condition.await();
+                            } else {
+                                waiter.condition.awaitNanos(timeoutNanos - (now - arrival));
+                            }
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                // 队首在锁外睡眠，睡醒后如果有更早的请求插到了前面，再回到Condition上等待
+                stopwatch.sleepNanosUninterruptibly(sleepNanos);
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Waiter enqueue(Object key, int permits) {
+        Tenant tenant = tenants.get(key);
+        if (tenant == null) {
+            tenant = new Tenant(key);
+            tenants.put(key, tenant);
+        }
+        Double weight = weights.get(key);
+        double start = max(virtualTime, tenant.lastFinish);
+        tenant.lastFinish = start + permits / (weight == null ? 1.0 : weight);
+        Waiter waiter = new Waiter(tenant, permits, start, sequence++, lock.newCondition());
+        tenant.waiters.addLast(waiter);
+        if (tenant.waiters.size() == 1) {
+            active.offer(tenant);
+        }
+        return waiter;
+    }
+
+    private boolean isHead(Waiter waiter) {
+        Tenant head = active.peek();
+        return head == waiter.tenant && head.waiters.peekFirst() == waiter;
+    }
+
+    private void grant(Waiter waiter) {
+        Tenant tenant = active.poll();
+        tenant.waiters.pollFirst();
+        tatNanos += waiter.permits * intervalNanos;
+        virtualTime = waiter.start;
+        if (!tenant.waiters.isEmpty()) {
+            active.offer(tenant);
+        } else {
+            markIdle(tenant);
+        }
+        evictIdle();
+        signalHead();
+    }
+
+    /**
+     * 超时的请求离开队列。它是租户的最后一个请求时退回预扣的虚拟时间。
+     */
+    private void abandon(Waiter waiter) {
+        Tenant tenant = waiter.tenant;
+        boolean head = tenant.waiters.peekFirst() == waiter;
+        boolean last = tenant.waiters.peekLast() == waiter;
+        if (head) {
+            active.remove(tenant);
+        }
+        tenant.waiters.remove(waiter);
+        if (last) {
+            tenant.lastFinish = waiter.start;
+        }
+        if (tenant.waiters.isEmpty()) {
+            markIdle(tenant);
+            evictIdle();
+        } else if (head) {
+            active.offer(tenant);
+        }
+        signalHead();
+    }
+
+    private void markIdle(Tenant tenant) {
+        if (tenant.lastFinish <= virtualTime) {
+            tenants.remove(tenant.key);
+        } else {
+            idle.offer(new IdleTenant(tenant, tenant.lastFinish));
+        }
+    }
+
+    private void evictIdle() {
+        if (active.isEmpty()) {
+            // 没有请求在等待，所有租户重新开始，虚拟时间归零避免精度下降
+            tenants.clear();
+            idle.clear();
+            virtualTime = 0.0;
+            return;
+        }
+        while (!idle.isEmpty() && idle.peek().finish <= virtualTime) {
+            IdleTenant entry = idle.poll();
+            Tenant tenant = entry.tenant;
+            if (tenant.waiters.isEmpty() && tenant.lastFinish == entry.finish && tenants.get(tenant.key) == tenant) {
+                tenants.remove(tenant.key);
+            }
+        }
+    }
+
+    private void signalHead() {
+        Tenant head = active.peek();
+        if (head != null) {
+            head.waiters.peekFirst().condition.signal();
+        }
+    }
+
+    private void resync(long nowNanos) {
+        tatNanos = max(tatNanos, (double) nowNanos - maxBurstNanos);
+    }
+
+    private static int compareWaiters(Waiter a, Waiter b) {
+        int result = Double.compare(a.start, b.start);
+        return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+    }
+
+    private static final class Tenant {
+        final Object key;
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        double lastFinish;
+
+        Tenant(Object key) {
+            this.key = key;
+        }
+    }
+
+    private static final class IdleTenant {
+        final Tenant tenant;
+        final double finish;
+
+        IdleTenant(Tenant tenant, double finish) {
+            this.tenant = tenant;
+            this.finish = finish;
+        }
+    }
+
+    private static final class Waiter {
+        final Tenant tenant;
+        final int permits;
+        final double start;
+        final long sequence;
+        final Condition condition;
+
+        Waiter(Tenant tenant, int permits, double start, long sequence, Condition condition) {
+            this.tenant = tenant;
+            this.permits = permits;
+            this.start = start;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+    }
+
+    private final class TenantRateLimiter implements RateLimiter {
+        private final Object tenant;
+
+        TenantRateLimiter(Object tenant) {
+            this.tenant = tenant;
+        }
+
+        @Override
+        public double acquire() {
+            return FairShareRateLimiter.this.acquire(tenant, 1);
+        }
+
+        @Override
+        public double acquire(int permits) {
+            return FairShareRateLimiter.this.acquire(tenant, permits);
+        }
+
+        @Override
+        public boolean tryAcquire(long timeout, TimeUnit unit) {
+            return FairShareRateLimiter.this.tryAcquire(tenant, 1, timeout, unit);
+        }
+
+        @Override
+        public boolean tryAcquire(int permits) {
+            return FairShareRateLimiter.this.tryAcquire(tenant, permits, 0, NANOSECONDS);
+        }
+
+        @Override
+        public boolean tryAcquire() {
+            return FairShareRateLimiter.this.tryAcquire(tenant, 1, 0, NANOSECONDS);
+        }
+
+        @Override
+        public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+            return FairShareRateLimiter.this.tryAcquire(tenant, permits, timeout, unit);
+        }
+
+        /**
+         * 速率由所有租户共享，不能通过租户视图修改
+         */
+        @Override
+        public void setRate(double permitsPerSecond) {
+            throw new UnsupportedOperationException("the rate is shared by all tenants");
+        }
+
+        @Override
+        public String toString() {
+            return "FairShareRateLimiter[tenant=" + tenant + "]";
+        }
+    }
+}
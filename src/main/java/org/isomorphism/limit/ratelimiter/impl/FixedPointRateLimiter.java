@@ -0,0 +1,234 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import com.google.common.math.LongMath;
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.isomorphism.limit.ratelimiter.RateLimiterSnapshot;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * 高精度限速器：全部使用定点纳秒整数运算，适用于每秒百万以上许可的场景。
+ * <p>
+ * {@link SmoothRateLimiter}以微秒为单位保存发放间隔，速率超过1M/s时间隔不足1微秒，取整误差会让实际速率偏离10%以上。
+ * 这里的发放间隔用 整数纳秒 + 32位二进制小数 表示，只在{@link #setRate(double)}时由BigDecimal换算一次，
+ * 每个许可的误差不超过 2^-33 纳秒，在0.001/s到1G/s之间都是精确且确定的。
+ * <p>
+ * 算法与{@link SmoothBursty}等价，用GCRA的形式表达：只维护一个理论到达时间tat（同样是定点纳秒），
+ * 闲置时最多积攒maxBurstSeconds秒的额度，即 tat 不早于 now - maxBurstNanos。
+ * 获取许可时的热路径只有整数加法和比较，不涉及浮点数。
+ */
+public class FixedPointRateLimiter implements RateLimiter {
+
+    private static final int FRACTION_BITS = 32;
+    private static final long FRACTION_ONE = 1L << FRACTION_BITS;
+    private static final long FRACTION_MASK = FRACTION_ONE - 1;
+    private static final BigInteger NANOS_PER_SECOND_FIXED = BigInteger.valueOf(SECONDS.toNanos(1L)).shiftLeft(FRACTION_BITS);
+
+    /**
+     * 底层计时器; 用于必要时测量经过的时间和睡眠。
+     */
+    private final SleepingStopwatch stopwatch;
+
+    /**
+     * 闲置时最多能积攒的时间额度
+     */
+    private final long maxBurstNanos;
+
+    private final ReentrantLock mutex = new ReentrantLock();
+
+    /**
+     * 发放间隔的整数纳秒部分。
+     * <p>
+     * 以下三个字段只在持有锁时修改，volatile使{@link #snapshot()}可以不加锁读取。
+     */
+    private volatile long intervalNanos;
+
+    /**
+     * 发放间隔的小数部分，单位为 2^-32 纳秒
+     */
+    private volatile long intervalFraction;
+
+    /**
+     * 理论到达时间的整数纳秒部分，早于now表示积攒了额度
+     */
+    private volatile long tatNanos;
+
+    /**
+     * 理论到达时间的小数部分，单位为 2^-32 纳秒
+     */
+    private long tatFraction;
+
+    private boolean started;
+
+    public FixedPointRateLimiter(SleepingStopwatch stopwatch, double maxBurstSeconds) {
+        checkArgument(maxBurstSeconds >= 0.0, "maxBurstSeconds must not be negative: %s", maxBurstSeconds);
+        this.stopwatch = checkNotNull(stopwatch);
+        this.maxBurstNanos = (long) (maxBurstSeconds * SECONDS.toNanos(1L));
+    }
+
+    @Override
+    public double acquire() {
+        return acquire(1);
+    }
+
+    @Override
+    public double acquire(int permits) {
+        checkPermits(permits);
+        long nanosToWait;
+        mutex.lock();
+        try {
+            long nowNanos = stopwatch.readNanos();
+            nanosToWait = max(reserveEarliestAvailable(permits, nowNanos) - nowNanos, 0);
+        } finally {
+            mutex.unlock();
+        }
+        stopwatch.sleepNanosUninterruptibly(nanosToWait);
+        return 1.0 * nanosToWait / SECONDS.toNanos(1L);
+    }
+
+    @Override
+    public boolean tryAcquire(long timeout, TimeUnit unit) {
+        return tryAcquire(1, timeout, unit);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        return tryAcquire(permits, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return tryAcquire(1, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+        long timeoutNanos = max(unit.toNanos(timeout), 0);
+        checkPermits(permits);
+        long nanosToWait;
+        mutex.lock();
+        try {
+            long nowNanos = stopwatch.readNanos();
+            resync(nowNanos);
+            if (earliestAvailable() - timeoutNanos > nowNanos) {
+                return false;
+            }
+            nanosToWait = max(reserveEarliestAvailable(permits, nowNanos) - nowNanos, 0);
+        } finally {
+            mutex.unlock();
+        }
+        stopwatch.sleepNanosUninterruptibly(nanosToWait);
+        return true;
+    }
+
+    /**
+     * 把速率换算成定点纳秒间隔，速率必须是有限的正数。已经预约的许可不受影响，与{@link SmoothBursty}一致。
+     */
+    @Override
+    public void setRate(double permitsPerSecond) {
+        checkArgument(permitsPerSecond > 0.0 && !Double.isInfinite(permitsPerSecond), "rate must be positive and finite: %s",
+                permitsPerSecond);
+        BigInteger fixed = new BigDecimal(NANOS_PER_SECOND_FIXED)
+                .divide(new BigDecimal(permitsPerSecond), 0, RoundingMode.HALF_EVEN)
+                .toBigInteger()
+                .max(BigInteger.ONE);
+        BigInteger whole = fixed.shiftRight(FRACTION_BITS);
+        mutex.lock();
+        try {
+            if (whole.bitLength() >= Long.SIZE) {
+                intervalNanos = Long.MAX_VALUE;
+                intervalFraction = 0;
+            } else {
+                intervalNanos = whole.longValue();
+                intervalFraction = fixed.longValue() & FRACTION_MASK;
+            }
+            if (!started) {
+                // 与SmoothBursty相同，初始时没有积攒的额度
+                tatNanos = stopwatch.readNanos();
+                started = true;
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * 返回当前的稳定速率，由定点间隔换算而来，可能与{@link #setRate(double)}传入的值有极小的差别。
+     */
+    public double getRate() {
+        mutex.lock();
+        try {
+            double interval = intervalNanos + (double) intervalFraction / FRACTION_ONE;
+            return SECONDS.toNanos(1L) / interval;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * 不加锁地读取当前状态，按resync的规则推算积攒的额度，但不写回。理论到达时间的小数部分忽略不计。
+     */
+    public RateLimiterSnapshot snapshot() {
+        long nowNanos = stopwatch.readNanos();
+        double interval = intervalNanos + (double) intervalFraction / FRACTION_ONE;
+        long tat = max(tatNanos, LongMath.saturatedSubtract(nowNanos, maxBurstNanos));
+        if (interval == 0.0) {
+            // 还没有设置速率
+            return new RateLimiterSnapshot(0.0, 0.0, 0.0, 0L);
+        }
+        double maxStoredPermits = maxBurstNanos / interval;
+        double storedPermits = min(maxStoredPermits, max(nowNanos - tat, 0L) / interval);
+        long microsToWait = LongMath.divide(max(tat - nowNanos, 0L), MICROSECONDS.toNanos(1L), RoundingMode.CEILING);
+        return new RateLimiterSnapshot(SECONDS.toNanos(1L) / interval, storedPermits, maxStoredPermits, microsToWait);
+    }
+
+    private long reserveEarliestAvailable(int permits, long nowNanos) {
+        resync(nowNanos);
+        long moment = max(earliestAvailable(), nowNanos);
+
+        // permits < 2^31, intervalFraction < 2^32，乘积不会溢出
+        long fraction = permits * intervalFraction;
+        long carry = fraction >>> FRACTION_BITS;
+        tatFraction += fraction & FRACTION_MASK;
+        if (tatFraction >= FRACTION_ONE) {
+            tatFraction -= FRACTION_ONE;
+            carry++;
+        }
+        long cost = LongMath.saturatedAdd(LongMath.saturatedMultiply(permits, intervalNanos), carry);
+        tatNanos = LongMath.saturatedAdd(tatNanos, cost);
+        return moment;
+    }
+
+    /**
+     * 闲置太久时丢弃超出maxBurstNanos的额度
+     */
+    private void resync(long nowNanos) {
+        long floor = LongMath.saturatedSubtract(nowNanos, maxBurstNanos);
+        if (tatNanos < floor) {
+            tatNanos = floor;
+            tatFraction = 0;
+        }
+    }
+
+    /**
+     * tat向上取整到纳秒
+     */
+    private long earliestAvailable() {
+        return tatFraction == 0 ? tatNanos : LongMath.saturatedAdd(tatNanos, 1L);
+    }
+
+    private static void checkPermits(int permits) {
+        checkArgument(permits > 0, "Requested permits (%s) must be positive", permits);
+    }
+}
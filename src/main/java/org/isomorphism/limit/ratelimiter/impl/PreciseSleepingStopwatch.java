@@ -0,0 +1,95 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 高精度的计时器：睡眠的大部分时间用park让出CPU，最后一小段自旋等待，避免内核唤醒延迟造成的多睡。
+ * <p>
+ * Linux上sleep/park通常会多睡50~1000微秒，20k/s时每个许可只有50微秒，多睡会让实际速率远低于设定值。
+ * 这里在每次park后测量实际唤醒延迟，用指数移动平均估算内核的唤醒延迟，park时提前这么多加上一段余量醒来，剩下的时间自旋。
+ * 自旋会占用一个CPU核，等待时间越短占比越高，适用于对发送节奏要求严格的场景。
+ */
+final class PreciseSleepingStopwatch extends SleepingStopwatch {
+    /**
+     * 提前醒来后至少自旋这么久，吸收唤醒延迟的抖动
+     */
+    private static final long SPIN_MARGIN_NANOS = MICROSECONDS.toNanos(20);
+
+    /**
+     * 唤醒延迟估计的上限，防止偶发的长时间停顿导致之后一直自旋
+     */
+    private static final long MAX_LATENCY_NANOS = MICROSECONDS.toNanos(2000);
+
+    private static final long INITIAL_LATENCY_NANOS = MICROSECONDS.toNanos(60);
+
+    private final long origin = System.nanoTime();
+
+    /**
+     * park的唤醒延迟估计，权重1/8的指数移动平均。多个线程同时更新时丢失个别样本无关紧要。
+     */
+    private volatile long latencyNanos = INITIAL_LATENCY_NANOS;
+
+    @Override
+    protected long readMicros() {
+        return NANOSECONDS.toMicros(readNanos());
+    }
+
+    @Override
+    protected long readNanos() {
+        return System.nanoTime() - origin;
+    }
+
+    @Override
+    protected void sleepMicrosUninterruptibly(long micros) {
+        sleepNanosUninterruptibly(MICROSECONDS.toNanos(micros));
+    }
+
+    @Override
+    protected void sleepNanosUninterruptibly(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + nanos;
+        boolean interrupted = false;
+        try {
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > latencyNanos + SPIN_MARGIN_NANOS) {
+                long parkNanos = remaining - latencyNanos - SPIN_MARGIN_NANOS;
+                long wakeTarget = System.nanoTime() + parkNanos;
+                LockSupport.parkNanos(this, parkNanos);
+                if (Thread.interrupted()) {
+                    // 中断会让park立即返回，不计入延迟估计
+                    interrupted = true;
+                    continue;
+                }
+                calibrate(System.nanoTime() - wakeTarget);
+            }
+            while (deadline - System.nanoTime() > 0) {
+                // 自旋到截止时间
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 提前返回（虚假唤醒）的样本记为0，让估计慢慢回落
+     */
+    private void calibrate(long observedNanos) {
+        long sample = Math.min(Math.max(observedNanos, 0L), MAX_LATENCY_NANOS);
+        long current = latencyNanos;
+        latencyNanos = current + (sample - current) / 8;
+    }
+
+    @VisibleForTesting
+    long getLatencyEstimateNanos() {
+        return latencyNanos;
+    }
+}
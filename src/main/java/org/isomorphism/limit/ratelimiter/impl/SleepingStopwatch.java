@@ -4,6 +4,7 @@ import com.google.common.base.Stopwatch;
 import com.google.common.util.concurrent.Uninterruptibles;
 
 import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public abstract class SleepingStopwatch {
     protected SleepingStopwatch() {
@@ -18,6 +19,22 @@ public abstract class SleepingStopwatch {
 
     protected abstract void sleepMicrosUninterruptibly(long micros);
 
+    /**
+     * 纳秒精度的读数，默认由{@link #readMicros()}换算。系统计时器会直接读取纳秒。
+     */
+    protected long readNanos() {
+        return MICROSECONDS.toNanos(readMicros());
+    }
+
+    /**
+     * 纳秒精度的睡眠，默认向上取整到微秒后调用{@link #sleepMicrosUninterruptibly(long)}。
+     */
+    protected void sleepNanosUninterruptibly(long nanos) {
+        if (nanos > 0) {
+            sleepMicrosUninterruptibly((nanos + 999) / 1000);
+        }
+    }
+
     public static final SleepingStopwatch createFromSystemTimer() {
         return new SleepingStopwatch() {
             final Stopwatch stopwatch = Stopwatch.createStarted();
@@ -33,6 +50,26 @@ public abstract class SleepingStopwatch {
                     Uninterruptibles.sleepUninterruptibly(micros, MICROSECONDS);
                 }
             }
+
+            @Override
+            protected long readNanos() {
+                return stopwatch.elapsed(NANOSECONDS);
+            }
+
+            @Override
+            protected void sleepNanosUninterruptibly(long nanos) {
+                if (nanos > 0) {
+                    Uninterruptibles.sleepUninterruptibly(nanos, NANOSECONDS);
+                }
+            }
         };
     }
-}
\ No newline at end of file
+
+    /**
+     * 高精度的系统计时器：大部分等待时间park，最后几十微秒自旋，并根据实测的唤醒延迟自我校准。
+     * 睡眠的误差通常在几微秒以内，代价是每次等待末尾会占用CPU自旋。
+     */
+    public static final SleepingStopwatch createPrecise() {
+        return new PreciseSleepingStopwatch();
+    }
+}
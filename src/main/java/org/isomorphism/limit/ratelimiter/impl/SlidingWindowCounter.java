@@ -0,0 +1,152 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.isomorphism.limit.ratelimiter.RateLimiterSnapshot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.max;
+
+/**
+ * 近似的滑动窗口实现：把窗口切成subWindows个子窗口，用一个长度为subWindows + 1的计数环记录每个子窗口发放的许可数。
+ * <p>
+ * 估算当前窗口内的许可数时，最近subWindows个子窗口全部计入，刚刚滑出窗口的那个子窗口按它仍落在窗口内的比例加权：
+ * <pre>
+ *   estimate = sum(count[epoch - subWindows + 1 .. epoch]) + count[epoch - subWindows] * (1 - elapsedInEpoch / subWindow)
+ * </pre>
+ * 即假设最老子窗口内的请求是均匀分布的。子窗口越多，误差越小。
+ * <p>
+ * 每个槽位是一个long：高32位是子窗口编号，低32位是该子窗口内的计数，因此计数的重置和累加都是一次CAS。
+ * 判定时先检查再累加，累加后如果超限则回滚，所以在竞争激烈时可能偏保守地拒绝，但不会超发。
+ */
+public class SlidingWindowCounter extends SlidingWindowRateLimiter {
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    private final int subWindows;
+    private final long subWindowMicros;
+
+    /**
+     * 下标为 epoch % (subWindows + 1)
+     */
+    private final AtomicLongArray slots;
+
+    private volatile int maxPermits;
+
+    public SlidingWindowCounter(SleepingStopwatch stopwatch, int maxPermits, long window, TimeUnit unit, int subWindows) {
+        super(stopwatch, window, unit);
+        checkArgument(subWindows > 0, "subWindows must be positive: %s", subWindows);
+        checkArgument(windowMicros >= subWindows, "window is too short to be split into %s sub-windows", subWindows);
+        this.subWindows = subWindows;
+        // 向上取整，使实际窗口不短于要求的窗口
+        this.subWindowMicros = (windowMicros + subWindows - 1) / subWindows;
+        this.slots = new AtomicLongArray(subWindows + 1);
+        setMaxPermits(maxPermits);
+    }
+
+    @Override
+    public int getMaxPermits() {
+        return maxPermits;
+    }
+
+    @Override
+    public void setMaxPermits(int maxPermits) {
+        checkArgument(maxPermits > 0, "maxPermits must be positive: %s", maxPermits);
+        this.maxPermits = maxPermits;
+    }
+
+    @Override
+    long tryReserve(int permits, long nowMicros) {
+        int limit = maxPermits;
+        checkArgument(permits <= limit, "Requested permits (%s) must not exceed the window limit (%s)", permits, limit);
+
+        long epoch = nowMicros / subWindowMicros;
+        long elapsedMicros = nowMicros - epoch * subWindowMicros;
+        long oldest = count(epoch - subWindows);
+        double weightedOldest = oldest * (double) (subWindowMicros - elapsedMicros) / subWindowMicros;
+
+        long recent = recentCount(epoch);
+        double excess = recent + weightedOldest + permits - limit;
+        if (excess > 0) {
+            return microsToWait(excess, oldest, elapsedMicros);
+        }
+
+        add(epoch, permits);
+        // 再检查一次，把其他线程同时累加的部分也算进来
+        recent = recentCount(epoch);
+        excess = recent + weightedOldest - limit;
+        if (excess > 0) {
+            add(epoch, -permits);
+            return microsToWait(excess, oldest, elapsedMicros);
+        }
+        return 0L;
+    }
+
+    @Override
+    RateLimiterSnapshot doSnapshot(long nowMicros) {
+        int limit = maxPermits;
+        long epoch = nowMicros / subWindowMicros;
+        long elapsedMicros = nowMicros - epoch * subWindowMicros;
+        long oldest = count(epoch - subWindows);
+        double used = recentCount(epoch) + oldest * (double) (subWindowMicros - elapsedMicros) / subWindowMicros;
+        double excess = used + 1 - limit;
+        return newSnapshot(limit, limit - used, excess > 0 ? microsToWait(excess, oldest, elapsedMicros) : 0L);
+    }
+
+    /**
+     * 最老子窗口的权重随时间线性衰减，先看在当前子窗口结束前能否衰减出足够的额度，否则等到下一个子窗口再重新计算。
+     */
+    private long microsToWait(double excess, long oldest, long elapsedMicros) {
+        long remainingMicros = subWindowMicros - elapsedMicros;
+        if (oldest > 0) {
+            long decayMicros = (long) Math.ceil(excess * subWindowMicros / oldest);
+            if (decayMicros <= remainingMicros) {
+                return max(decayMicros, 1L);
+            }
+        }
+        return remainingMicros;
+    }
+
+    private long recentCount(long epoch) {
+        long sum = 0;
+        for (int i = 0; i < subWindows; i++) {
+            sum += count(epoch - i);
+        }
+        return sum;
+    }
+
+    private long count(long epoch) {
+        if (epoch < 0) {
+            return 0;
+        }
+        long slot = slots.get(index(epoch));
+        return epochOf(slot) == (int) epoch ? slot & COUNT_MASK : 0;
+    }
+
+    /**
+     * 给epoch所在的子窗口累加delta个许可；槽位还停留在更早的子窗口时先清零。
+     */
+    private void add(long epoch, int delta) {
+        int index = index(epoch);
+        while (true) {
+            long slot = slots.get(index);
+            long count = epochOf(slot) == (int) epoch ? slot & COUNT_MASK : 0;
+            if (delta < 0 && epochOf(slot) != (int) epoch) {
+                // 回滚时子窗口已经被复用，不需要再扣减
+                return;
+            }
+            long update = ((long) (int) epoch << 32) | ((count + delta) & COUNT_MASK);
+            if (slots.compareAndSet(index, slot, update)) {
+                return;
+            }
+        }
+    }
+
+    private int index(long epoch) {
+        return (int) (epoch % (subWindows + 1));
+    }
+
+    private static int epochOf(long slot) {
+        return (int) (slot >>> 32);
+    }
+}
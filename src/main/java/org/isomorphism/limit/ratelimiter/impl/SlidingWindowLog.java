@@ -0,0 +1,178 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.isomorphism.limit.ratelimiter.RateLimiterSnapshot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.max;
+
+/**
+ * 精确的滑动窗口实现：用一个长度为maxPermits的时间戳环记录最近发放的maxPermits个许可的发放时间。
+ * <p>
+ * 给每个许可分配一个单调递增的序号seq，它的时间戳写在 seq % maxPermits 的位置。
+ * 要发放序号为seq的许可，只需要确认序号为 seq - maxPermits 的许可已经滑出窗口，即可保证任意窗口内不超过maxPermits个许可。
+ * <p>
+ * 序号的分配是一次CAS；时间戳在分配成功后才写入，为了区分"新时间戳还没写入"和"旧时间戳"，
+ * 每个槽位的最低位保存该许可所在圈数的奇偶性，其余位保存发放时间（微秒）。因此每个许可只占一个long。
+ */
+public class SlidingWindowLog extends SlidingWindowRateLimiter {
+
+    private volatile Ring ring;
+
+    public SlidingWindowLog(SleepingStopwatch stopwatch, int maxPermits, long window, TimeUnit unit) {
+        super(stopwatch, window, unit);
+        checkArgument(maxPermits > 0, "maxPermits must be positive: %s", maxPermits);
+        this.ring = new Ring(maxPermits, 0L);
+    }
+
+    @Override
+    public int getMaxPermits() {
+        return ring.size;
+    }
+
+    /**
+     * 调整窗口内允许的最大许可数。需要重建时间戳环，复杂度为O(maxPermits)，期间新的请求会短暂自旋。
+     */
+    @Override
+    public synchronized void setMaxPermits(int maxPermits) {
+        checkArgument(maxPermits > 0, "maxPermits must be positive: %s", maxPermits);
+        Ring old = ring;
+        if (old.size == maxPermits) {
+            return;
+        }
+
+        // 冻结旧环：把序号取反，之后旧环上的CAS都会失败
+        long next;
+        do {
+            next = old.next.get();
+        } while (!old.next.compareAndSet(next, ~next));
+
+        // 把最近的许可搬到新环上。新环更大时，旧环已经覆盖掉的更早的许可按已知最老的时间戳保守处理。
+        Ring fresh = new Ring(maxPermits, next);
+        long oldestKnown = max(0, next - old.size);
+        for (long seq = max(0, next - maxPermits); seq < next; seq++) {
+            long timestamp = old.awaitTimestamp(max(seq, oldestKnown));
+            fresh.entries.set(fresh.slot(seq), fresh.encode(seq, timestamp));
+        }
+        ring = fresh;
+    }
+
+    @Override
+    long tryReserve(int permits, long nowMicros) {
+        while (true) {
+            Ring r = ring;
+            checkArgument(permits <= r.size, "Requested permits (%s) must not exceed the window limit (%s)", permits, r.size);
+            long next = r.next.get();
+            if (next < 0) {
+                // setMaxPermits正在替换时间戳环
+                Thread.yield();
+                continue;
+            }
+            long microsToWait = r.microsToWait(next, permits, nowMicros, windowMicros);
+            if (microsToWait > 0) {
+                return microsToWait;
+            }
+            if (r.next.compareAndSet(next, next + permits)) {
+                r.publish(next, permits, nowMicros);
+                return 0L;
+            }
+        }
+    }
+
+    @Override
+    RateLimiterSnapshot doSnapshot(long nowMicros) {
+        Ring r = ring;
+        long next = r.next.get();
+        if (next < 0) {
+            // 冻结的旧环仍然可以读取
+            next = ~next;
+        }
+        long used = r.countInWindow(next, nowMicros, windowMicros);
+        return newSnapshot(r.size, r.size - used, r.microsToWait(next, 1, nowMicros, windowMicros));
+    }
+
+    static final class Ring {
+        final int size;
+        final AtomicLongArray entries;
+
+        /**
+         * 下一个待分配的序号；为负数时表示该环已被冻结
+         */
+        final AtomicLong next;
+
+        Ring(int size, long next) {
+            this.size = size;
+            this.entries = new AtomicLongArray(size);
+            this.next = new AtomicLong(next);
+        }
+
+        long microsToWait(long next, int permits, long nowMicros, long windowMicros) {
+            long microsToWait = 0;
+            for (int i = 0; i < permits; i++) {
+                long seq = next + i - size;
+                if (seq < 0) {
+                    continue;
+                }
+                long entry = entries.get(slot(seq));
+                if (!isPublished(seq, entry)) {
+                    // 该许可刚被其他线程拿走、还没写入时间戳，它的发放时间必然接近now
+                    return windowMicros;
+                }
+                microsToWait = max(microsToWait, (entry >>> 1) + windowMicros - nowMicros);
+            }
+            return microsToWait;
+        }
+
+        /**
+         * 最近size个许可中仍在窗口内的个数。时间戳按序号大致递增，二分查找第一个仍在窗口内的许可；
+         * 还没写入时间戳的许可按刚刚发放计算。
+         */
+        long countInWindow(long next, long nowMicros, long windowMicros) {
+            long low = max(0, next - size);
+            long high = next;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                long entry = entries.get(slot(mid));
+                if (isPublished(mid, entry) && (entry >>> 1) + windowMicros <= nowMicros) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return next - low;
+        }
+
+        void publish(long next, int permits, long nowMicros) {
+            for (int i = 0; i < permits; i++) {
+                long seq = next + i;
+                entries.set(slot(seq), encode(seq, nowMicros));
+            }
+        }
+
+        long awaitTimestamp(long seq) {
+            long entry;
+            while (!isPublished(seq, entry = entries.get(slot(seq)))) {
+                Thread.yield();
+            }
+            return entry >>> 1;
+        }
+
+        int slot(long seq) {
+            return (int) (seq % size);
+        }
+
+        /**
+         * 第0圈写入奇偶位1，这样初始值0会被当作"尚未写入"
+         */
+        long encode(long seq, long timestampMicros) {
+            return (timestampMicros << 1) | (~(seq / size) & 1L);
+        }
+
+        boolean isPublished(long seq, long entry) {
+            return (entry & 1L) == (~(seq / size) & 1L);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.isomorphism.limit.ratelimiter.RateLimiterSnapshot;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Math.max;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * 滑动窗口限速器：保证任意一个长度为window的滚动时间窗口内，发放的许可数不超过maxPermits。
+ * <p>
+ * 与{@link SmoothBursty}不同，这里不会把许可平滑地摊开，只约束窗口内的总量，适用于"任意60秒内最多N次"这类约定。
+ * 有两种实现：
+ * <ul>
+ * <li>{@link SlidingWindowCounter}：子窗口计数环 + 对最老子窗口做加权插值，是近似算法，内存与子窗口数成正比</li>
+ * <li>{@link SlidingWindowLog}：紧凑的时间戳环，是精确算法，内存与maxPermits成正比</li>
+ * </ul>
+ * 两者都是无锁的，占用内存在构造后固定，不随请求量增长。
+ */
+public abstract class SlidingWindowRateLimiter implements RateLimiter {
+
+    /**
+     * 底层计时器; 用于必要时测量经过的时间和睡眠。
+     */
+    final SleepingStopwatch stopwatch;
+
+    /**
+     * 滚动窗口的长度
+     */
+    final long windowMicros;
+
+    SlidingWindowRateLimiter(SleepingStopwatch stopwatch, long window, TimeUnit unit) {
+        checkArgument(window > 0, "window must be positive: %s", window);
+        this.stopwatch = checkNotNull(stopwatch);
+        this.windowMicros = unit.toMicros(window);
+        checkArgument(windowMicros > 0, "window must be at least one microsecond");
+    }
+
+    @Override
+    public double acquire() {
+        return acquire(1);
+    }
+
+    @Override
+    public double acquire(int permits) {
+        checkPermits(permits);
+        long startMicros = stopwatch.readMicros();
+        long nowMicros = startMicros;
+        long microsToWait;
+        while ((microsToWait = tryReserve(permits, nowMicros)) > 0) {
+            stopwatch.sleepMicrosUninterruptibly(microsToWait);
+            nowMicros = stopwatch.readMicros();
+        }
+        return 1.0 * (nowMicros - startMicros) / SECONDS.toMicros(1L);
+    }
+
+    @Override
+    public boolean tryAcquire(long timeout, TimeUnit unit) {
+        return tryAcquire(1, timeout, unit);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        return tryAcquire(permits, 0, MICROSECONDS);
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return tryAcquire(1, 0, MICROSECONDS);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+        long timeoutMicros = max(unit.toMicros(timeout), 0);
+        checkPermits(permits);
+        long nowMicros = stopwatch.readMicros();
+        long deadlineMicros = nowMicros + timeoutMicros;
+        long microsToWait;
+        while ((microsToWait = tryReserve(permits, nowMicros)) > 0) {
+            if (nowMicros + microsToWait > deadlineMicros) {
+                return false;
+            }
+            stopwatch.sleepMicrosUninterruptibly(microsToWait);
+            nowMicros = stopwatch.readMicros();
+        }
+        return true;
+    }
+
+    /**
+     * 按新的速率换算窗口内的许可上限，即 permitsPerSecond * window，向下取整且至少为1。
+     * 已经发放的许可仍然计入窗口。
+     */
+    @Override
+    public final void setRate(double permitsPerSecond) {
+        checkArgument(permitsPerSecond > 0.0 && !Double.isNaN(permitsPerSecond), "rate must be positive");
+        double permits = Math.floor(permitsPerSecond * windowMicros / SECONDS.toMicros(1L));
+        setMaxPermits((int) Math.min(Integer.MAX_VALUE, max(1.0, permits)));
+    }
+
+    /**
+     * 返回窗口内允许的最大许可数
+     */
+    public abstract int getMaxPermits();
+
+    /**
+     * 设置窗口内允许的最大许可数
+     */
+    public abstract void setMaxPermits(int maxPermits);
+
+    /**
+     * 不加锁地读取窗口的状态。存储许可数是窗口内还能立即拿到的许可数，等待时间是下一个许可的等待时间。
+     */
+    public final RateLimiterSnapshot snapshot() {
+        return doSnapshot(stopwatch.readMicros());
+    }
+
+    /**
+     * 只能读取状态，不能占用许可
+     */
+    abstract RateLimiterSnapshot doSnapshot(long nowMicros);
+
+    final RateLimiterSnapshot newSnapshot(int maxPermits, double availablePermits, long microsToWait) {
+        double rate = maxPermits * (double) SECONDS.toMicros(1L) / windowMicros;
+        return new RateLimiterSnapshot(rate, max(availablePermits, 0.0), maxPermits, microsToWait);
+    }
+
+    /**
+     * 尝试在nowMicros时刻一次性拿到permits个许可。
+     *
+     * @return 0表示已经拿到；否则返回建议的等待微秒数，等待之后需要重新尝试
+     */
+    abstract long tryReserve(int permits, long nowMicros);
+
+    static void checkPermits(int permits) {
+        checkArgument(permits > 0, "Requested permits (%s) must be positive", permits);
+    }
+}
@@ -33,6 +33,14 @@ public class SmoothBursty extends SmoothRateLimiter {
         return 0L;
     }
 
+    /**
+     * 存储的许可不需要等待，退回的许可直接存起来，不超过maxPermits
+     */
+    @Override
+    void creditStoredPermits(double permits) {
+        storedPermits = Math.min(maxPermits, storedPermits + permits);
+    }
+
     @Override
     double coolDownIntervalMicros() {
         return stableIntervalMicros;
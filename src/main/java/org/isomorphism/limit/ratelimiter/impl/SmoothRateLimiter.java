@@ -1,6 +1,7 @@
 package org.isomorphism.limit.ratelimiter.impl;
 
 import com.google.common.math.LongMath;
+import org.isomorphism.limit.ratelimiter.RateLimiterSnapshot;
 
 import static java.lang.Math.min;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -69,25 +70,27 @@ public abstract class SmoothRateLimiter extends AbstractRateLimiter {
 
     /**
      * The currently stored permits.
+     * <p>
+     * 以下字段只在持有锁时修改，volatile使{@link #doSnapshot(long)}可以不加锁读取。
      */
-    double storedPermits;
+    volatile double storedPermits;
 
     /**
      * The maximum number of stored permits.
      */
-    double maxPermits;
+    volatile double maxPermits;
 
     /**
      * The interval between two unit requests, at our stable rate. E.g., a stable rate of 5 permits
      * per second has a stable interval of 200ms.
      */
-    double stableIntervalMicros;
+    volatile double stableIntervalMicros;
 
     /**
      * The time when the next request (no matter its size) will be granted. After granting a request,
      * this is pushed further in the future. Large requests push this further than small requests.
      */
-    private long nextFreeTicketMicros = 0L; // could be either in the past or future
+    private volatile long nextFreeTicketMicros = 0L; // could be either in the past or future
 
     SmoothRateLimiter(SleepingStopwatch stopwatch) {
         super(stopwatch);
@@ -108,6 +111,22 @@ public abstract class SmoothRateLimiter extends AbstractRateLimiter {
         return SECONDS.toMicros(1L) / stableIntervalMicros;
     }
 
+    /**
+     * 按resync的规则推算存储的许可数，但不写回
+     */
+    @Override
+    final RateLimiterSnapshot doSnapshot(long nowMicros) {
+        double intervalMicros = stableIntervalMicros;
+        double maxPermits = this.maxPermits;
+        double storedPermits = this.storedPermits;
+        long nextFreeTicketMicros = this.nextFreeTicketMicros;
+        if (nowMicros > nextFreeTicketMicros) {
+            storedPermits = min(maxPermits, storedPermits + (nowMicros - nextFreeTicketMicros) / coolDownIntervalMicros());
+        }
+        double rate = intervalMicros == 0.0 ? 0.0 : SECONDS.toMicros(1L) / intervalMicros;
+        return new RateLimiterSnapshot(rate, storedPermits, maxPermits, nextFreeTicketMicros - nowMicros);
+    }
+
     @Override
     final long queryEarliestAvailable(long nowMicros) {
         return nextFreeTicketMicros;
@@ -126,6 +145,27 @@ public abstract class SmoothRateLimiter extends AbstractRateLimiter {
         return returnValue;
     }
 
+    /**
+     * 先把nextFreeTicketMicros往回拉，最多拉到现在；剩下的部分交给{@link #creditStoredPermits(double)}。
+     * 已经排在后面的预约的等待时间不变，之后的请求可以提前。按稳定间隔计算，不考虑预约时花掉的存储许可。
+     */
+    @Override
+    final void refundPermits(int permits, long nowMicros) {
+        resync(nowMicros);
+        long refundMicros = (long) (permits * stableIntervalMicros);
+        long pulledBack = min(refundMicros, nextFreeTicketMicros - nowMicros);
+        nextFreeTicketMicros -= pulledBack;
+        if (refundMicros > pulledBack) {
+            creditStoredPermits((refundMicros - pulledBack) / stableIntervalMicros);
+        }
+    }
+
+    /**
+     * 没有排队的预约可以提前时，退回的许可能否存起来。预热时存储的许可代表冷却，所以默认丢弃。
+     */
+    void creditStoredPermits(double permits) {
+    }
+
     /**
      * Translates a specified portion of our currently stored permits which we want to spend/acquire,
      * into a throttling time. Conceptually, this evaluates the integral of the underlying function we
@@ -1,7 +1,13 @@
 package org.isomorphism.limit.ratelimiter.impl;
 
+import org.isomorphism.limit.ratelimiter.WarmupCurve;
+import org.isomorphism.limit.ratelimiter.WarmupCurves;
+
 import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 public class SmoothWarmingUp extends SmoothRateLimiter {
     private final long warmupPeriodMicros;
     /**
@@ -10,19 +16,38 @@ public class SmoothWarmingUp extends SmoothRateLimiter {
     private double slope;
     private double thresholdPermits;
     private double coldFactor;
+    private double coldIntervalMicros;
+
+    /**
+     * 非线性预热曲线的积分表；线性预热时为null，直接用梯形面积计算
+     */
+    private final WarmupTable warmupTable;
 
     public SmoothWarmingUp(SleepingStopwatch stopwatch, long warmupPeriod, TimeUnit timeUnit, double coldFactor) {
+        this(stopwatch, warmupPeriod, timeUnit, coldFactor, WarmupCurves.linear());
+    }
+
+    public SmoothWarmingUp(SleepingStopwatch stopwatch, long warmupPeriod, TimeUnit timeUnit, double coldFactor, WarmupCurve warmupCurve) {
         super(stopwatch);
+        checkArgument(coldFactor >= 1.0, "coldFactor must not be less than 1: %s", coldFactor);
+        checkNotNull(warmupCurve);
         this.warmupPeriodMicros = timeUnit.toMicros(warmupPeriod);
         this.coldFactor = coldFactor;
+        this.warmupTable = warmupCurve == WarmupCurves.linear() ? null : new WarmupTable(warmupCurve);
     }
 
     @Override
     void doSetRate(double permitsPerSecond, double stableIntervalMicros) {
         double oldMaxPermits = maxPermits;
-        double coldIntervalMicros = stableIntervalMicros * coldFactor;
+        coldIntervalMicros = stableIntervalMicros * coldFactor;
         thresholdPermits = 0.5 * warmupPeriodMicros / stableIntervalMicros;
-        maxPermits = thresholdPermits + 2.0 * warmupPeriodMicros / (stableIntervalMicros + coldIntervalMicros);
+        if (warmupTable == null) {
+            maxPermits = thresholdPermits + 2.0 * warmupPeriodMicros / (stableIntervalMicros + coldIntervalMicros);
+        } else {
+            // 从maxPermits降到thresholdPermits的时间是曲线下的面积，它应当等于warmupPeriod
+            double averageIntervalMicros = stableIntervalMicros + (coldIntervalMicros - stableIntervalMicros) * warmupTable.area();
+            maxPermits = thresholdPermits + warmupPeriodMicros / averageIntervalMicros;
+        }
         slope = (coldIntervalMicros - stableIntervalMicros) / (maxPermits - thresholdPermits);
         if (oldMaxPermits == Double.POSITIVE_INFINITY) {
             //如果我们没有特殊情况，我们将在下面得到toredPermits == NaN
@@ -39,8 +64,12 @@ public class SmoothWarmingUp extends SmoothRateLimiter {
         // 测量功能正确部分的积分（攀爬线）
         if (availablePermitsAboveThreshold > 0.0) {
             double permitsAboveThresholdToTake = Math.min(availablePermitsAboveThreshold, permitsToTake);
-            double length = permitsToTime(availablePermitsAboveThreshold) + permitsToTime(availablePermitsAboveThreshold - permitsAboveThresholdToTake);
-            micros = (long) (permitsAboveThresholdToTake * length / 2.0);
+            if (warmupTable == null) {
+                double length = permitsToTime(availablePermitsAboveThreshold) + permitsToTime(availablePermitsAboveThreshold - permitsAboveThresholdToTake);
+                micros = (long) (permitsAboveThresholdToTake * length / 2.0);
+            } else {
+                micros = (long) curveToTime(availablePermitsAboveThreshold, permitsAboveThresholdToTake);
+            }
             permitsToTake -= permitsAboveThresholdToTake;
         }
         // 测量功能左侧的积分（水平线）
@@ -52,8 +81,17 @@ public class SmoothWarmingUp extends SmoothRateLimiter {
         return stableIntervalMicros + permits * slope;
     }
 
+    /**
+     * 曲线在[permitsAboveThreshold - permitsToTake, permitsAboveThreshold]上的积分，查表得到
+     */
+    private double curveToTime(double permitsAboveThreshold, double permitsToTake) {
+        double width = maxPermits - thresholdPermits;
+        double area = warmupTable.integral(permitsAboveThreshold / width) - warmupTable.integral((permitsAboveThreshold - permitsToTake) / width);
+        return permitsToTake * stableIntervalMicros + (coldIntervalMicros - stableIntervalMicros) * width * area;
+    }
+
     @Override
     double coolDownIntervalMicros() {
         return warmupPeriodMicros / maxPermits;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.isomorphism.limit.ratelimiter.WarmupCurve;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * 预热曲线的积分表：cumulative[i]是曲线在[0, i / SIZE]上的积分，积分用Simpson公式在构造时算好。
+ * 查询任意x处的积分时只做一次数组访问和线性插值，不再调用曲线本身。
+ */
+final class WarmupTable {
+    static final int SIZE = 1024;
+
+    private final double[] cumulative = new double[SIZE + 1];
+
+    WarmupTable(WarmupCurve curve) {
+        double step = 1.0 / SIZE;
+        double previous = sample(curve, 0.0);
+        for (int i = 1; i <= SIZE; i++) {
+            double x = i * step;
+            double next = sample(curve, x);
+            double middle = sample(curve, x - step / 2);
+            cumulative[i] = cumulative[i - 1] + step * (previous + 4 * middle + next) / 6;
+            previous = next;
+        }
+    }
+
+    /**
+     * 曲线在[0, 1]上的积分，即平均归一化发放间隔
+     */
+    double area() {
+        return cumulative[SIZE];
+    }
+
+    /**
+     * 曲线在[0, x]上的积分，x会被截断到[0, 1]
+     */
+    double integral(double x) {
+        if (x <= 0.0) {
+            return 0.0;
+        }
+        double position = x * SIZE;
+        int index = (int) position;
+        if (index >= SIZE) {
+            return cumulative[SIZE];
+        }
+        return cumulative[index] + (cumulative[index + 1] - cumulative[index]) * (position - index);
+    }
+
+    private static double sample(WarmupCurve curve, double x) {
+        double value = curve.shape(x);
+        checkArgument(value >= 0.0 && value <= 1.0, "WarmupCurve %s returned %s at %s, expected a value in [0, 1]", curve, value, x);
+        return value;
+    }
+}
@@ -0,0 +1,99 @@
+package org.isomorphism.limit.simulation;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 一次回放的统计结果。排队延迟只统计被放行的请求，分位数的相对误差不超过1/16。
+ */
+public final class SimulationReport {
+    private final long admitted;
+    private final long denied;
+    private final long admittedPermits;
+    private final long deniedPermits;
+    private final long durationNanos;
+    private final long burstWindowNanos;
+    private final long peakPermitsPerWindow;
+    private final DelayHistogram delays;
+
+    SimulationReport(long admitted, long denied, long admittedPermits, long deniedPermits, long durationNanos,
+                     long burstWindowNanos, long peakPermitsPerWindow, DelayHistogram delays) {
+        this.admitted = admitted;
+        this.denied = denied;
+        this.admittedPermits = admittedPermits;
+        this.deniedPermits = deniedPermits;
+        this.durationNanos = durationNanos;
+        this.burstWindowNanos = burstWindowNanos;
+        this.peakPermitsPerWindow = peakPermitsPerWindow;
+        this.delays = delays;
+    }
+
+    public long getAdmitted() {
+        return admitted;
+    }
+
+    public long getDenied() {
+        return denied;
+    }
+
+    public long getAdmittedPermits() {
+        return admittedPermits;
+    }
+
+    public long getDeniedPermits() {
+        return deniedPermits;
+    }
+
+    /**
+     * 被拒绝的请求占比
+     */
+    public double getDenialRate() {
+        long total = admitted + denied;
+        return total == 0 ? 0.0 : (double) denied / total;
+    }
+
+    /**
+     * 第一条到最后一条记录之间的虚拟时长
+     */
+    public long getDuration(TimeUnit unit) {
+        return unit.convert(durationNanos, NANOSECONDS);
+    }
+
+    /**
+     * 放行的许可按排队结束的时刻计入对齐的突发窗口，返回单个窗口内的最大许可数
+     */
+    public long getPeakPermitsPerWindow() {
+        return peakPermitsPerWindow;
+    }
+
+    public long getBurstWindow(TimeUnit unit) {
+        return unit.convert(burstWindowNanos, NANOSECONDS);
+    }
+
+    /**
+     * 被放行请求的排队延迟分位数，quantile取值[0, 1]
+     */
+    public long getDelayPercentile(double quantile, TimeUnit unit) {
+        return unit.convert(delays.percentile(quantile), NANOSECONDS);
+    }
+
+    public long getMaxDelay(TimeUnit unit) {
+        return unit.convert(delays.max(), NANOSECONDS);
+    }
+
+    public double getMeanDelayNanos() {
+        return delays.mean();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "admitted=%d (%d permits), denied=%d (%d permits, %.2f%%), duration=%dms, "
+                        + "delay p50=%dus p90=%dus p99=%dus p999=%dus max=%dus, peak=%d permits per %dms",
+                admitted, admittedPermits, denied, deniedPermits, 100 * getDenialRate(), getDuration(TimeUnit.MILLISECONDS),
+                getDelayPercentile(0.5, TimeUnit.MICROSECONDS), getDelayPercentile(0.9, TimeUnit.MICROSECONDS),
+                getDelayPercentile(0.99, TimeUnit.MICROSECONDS), getDelayPercentile(0.999, TimeUnit.MICROSECONDS),
+                getMaxDelay(TimeUnit.MICROSECONDS), peakPermitsPerWindow, getBurstWindow(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,9 @@
+package org.isomorphism.limit.simulation;
+
+/**
+ * 仿真的对象：在虚拟时钟的当前时刻请求若干许可，返回是否放行。
+ * 放行前需要排队的时间通过{@link VirtualClock}的睡眠记录，参见{@link SimulationTargets}。
+ */
+public interface SimulationTarget {
+    boolean offer(int permits);
+}
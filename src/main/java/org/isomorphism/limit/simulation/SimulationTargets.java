@@ -0,0 +1,45 @@
+package org.isomorphism.limit.simulation;
+
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.isomorphism.limit.tokenbuket.TokenBucket;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 把现有的限速器适配成{@link SimulationTarget}。被仿真的对象必须使用同一个{@link VirtualClock}提供的计时器构造。
+ */
+public final class SimulationTargets {
+    private SimulationTargets() {
+    }
+
+    /**
+     * 每个请求调用{@code tryAcquire(permits, maxWait, unit)}：最多排队maxWait，否则拒绝。
+     * maxWait为0时等价于{@code tryAcquire(permits)}。
+     */
+    public static SimulationTarget rateLimiter(final RateLimiter rateLimiter, final long maxWait, final TimeUnit unit) {
+        checkNotNull(rateLimiter);
+        checkArgument(maxWait >= 0, "maxWait must not be negative: %s", maxWait);
+        return new SimulationTarget() {
+            @Override
+            public boolean offer(int permits) {
+                return rateLimiter.tryAcquire(permits, maxWait, unit);
+            }
+        };
+    }
+
+    /**
+     * 每个请求调用{@code tryConsume(permits)}，令牌不足时拒绝
+     */
+    public static SimulationTarget tokenBucket(final TokenBucket tokenBucket) {
+        checkNotNull(tokenBucket);
+        return new SimulationTarget() {
+            @Override
+            public boolean offer(int permits) {
+                return tokenBucket.tryConsume(permits);
+            }
+        };
+    }
+}
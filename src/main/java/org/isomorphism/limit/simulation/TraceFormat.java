@@ -0,0 +1,26 @@
+package org.isomorphism.limit.simulation;
+
+/**
+ * 流量记录文件的格式：
+ * <pre>
+ *   magic   int   'TBTR'
+ *   version int   1
+ *   count   long  记录条数
+ *   records       每条记录是两个无符号LEB128变长整数：与上一条的时间差（纳秒）、许可数
+ * </pre>
+ * 时间差通常很小，每条记录一般只占2到4个字节。
+ */
+final class TraceFormat {
+    static final int MAGIC = 0x54425452;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int COUNT_OFFSET = 8;
+
+    /**
+     * 一条记录的最大字节数
+     */
+    static final int MAX_RECORD_BYTES = 20;
+
+    private TraceFormat() {
+    }
+}
@@ -0,0 +1,114 @@
+package org.isomorphism.limit.simulation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * 以内存映射的方式顺序读取{@link TraceWriter}写出的记录文件。
+ * <p>
+ * 文件按最多1GB一段映射，读到段尾时再映射下一段，因此可以回放超过2GB的记录。用法：
+ * <pre>{@code
+ *   try (TraceReader trace = new TraceReader(file)) {
+ *       while (trace.next()) {
+ *           use(trace.timestampNanos(), trace.permits());
+ *       }
+ *   }
+ * }</pre>
+ */
+public final class TraceReader implements Closeable {
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long count;
+
+    private MappedByteBuffer buffer;
+    private long bufferOffset;
+    private long read;
+    private long timestampNanos;
+    private int permits;
+
+    public TraceReader(File file) throws IOException {
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+        this.fileSize = channel.size();
+        try {
+            checkState(fileSize >= TraceFormat.HEADER_BYTES, "not a trace file: %s", file);
+            map(0L);
+            checkState(buffer.getInt() == TraceFormat.MAGIC, "not a trace file: %s", file);
+            int version = buffer.getInt();
+            checkState(version == TraceFormat.VERSION, "unsupported trace version: %s", version);
+            this.count = buffer.getLong();
+        } catch (RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 文件中的记录条数
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * 读取下一条记录，没有更多记录时返回false
+     */
+    public boolean next() throws IOException {
+        if (read == count) {
+            return false;
+        }
+        if (buffer.remaining() < TraceFormat.MAX_RECORD_BYTES && bufferOffset + buffer.limit() < fileSize) {
+            map(bufferOffset + buffer.position());
+        }
+        timestampNanos += readVarLong();
+        permits = (int) readVarLong();
+        read++;
+        return true;
+    }
+
+    /**
+     * 当前记录的到达时刻，相对于记录开始，单位纳秒
+     */
+    public long timestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * 当前记录请求的许可数
+     */
+    public int permits() {
+        return permits;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        raf.close();
+    }
+
+    private void map(long offset) throws IOException {
+        bufferOffset = offset;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_BYTES, fileSize - offset));
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,78 @@
+package org.isomorphism.limit.simulation;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * 把请求到达的时间序列写成紧凑的二进制记录文件，供{@link TraceReader}回放。
+ * 时间戳必须单调不减，记录条数在{@link #close()}时回填到文件头。
+ */
+public final class TraceWriter implements Closeable {
+    private final File file;
+    private final OutputStream out;
+    private long lastNanos;
+    private long count;
+    private boolean closed;
+
+    public TraceWriter(File file) throws IOException {
+        this.file = file;
+        this.out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(TraceFormat.MAGIC);
+        header.writeInt(TraceFormat.VERSION);
+        header.writeLong(0L);
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param timestampNanos 请求到达的时刻，相对于记录开始，单位纳秒
+     * @param permits        请求的许可数
+     */
+    public void append(long timestampNanos, int permits) throws IOException {
+        checkState(!closed, "trace is closed");
+        checkArgument(timestampNanos >= lastNanos, "timestamps must not go backwards: %s < %s", timestampNanos, lastNanos);
+        checkArgument(permits > 0, "permits must be positive: %s", permits);
+        writeVarLong(timestampNanos - lastNanos);
+        writeVarLong(permits);
+        lastNanos = timestampNanos;
+        count++;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        out.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(TraceFormat.COUNT_OFFSET);
+            raf.writeLong(count);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,95 @@
+package org.isomorphism.limit.simulation;
+
+import com.google.common.base.Ticker;
+import org.isomorphism.limit.ratelimiter.impl.SleepingStopwatch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 仿真用的虚拟时钟，时间只由{@link #advanceTo(long)}推进。
+ * <p>
+ * 通过{@link #stopwatch()}和{@link #ticker()}把它交给RateLimiter或者令牌桶。
+ * 限速器要求睡眠时不会真的睡眠，只把时钟推进相应的时长并记下来，由{@link Simulator}作为这个请求的排队延迟取走。
+ * 睡眠后会重新读时钟的限速器（比如滑动窗口）因此能看到时间流逝；请求处理完后Simulator再把时钟拨回到达时刻，
+ * 因为真实场景中其他请求仍在按时到达。
+ * <p>
+ * 仿真是单线程的，这个类不是线程安全的。
+ */
+public final class VirtualClock {
+    private long nanos;
+    private long sleptNanos;
+
+    private final SleepingStopwatch stopwatch = new SleepingStopwatch() {
+        @Override
+        protected long readMicros() {
+            return NANOSECONDS.toMicros(nanos);
+        }
+
+        @Override
+        protected void sleepMicrosUninterruptibly(long micros) {
+            sleepNanosUninterruptibly(MICROSECONDS.toNanos(micros));
+        }
+
+        @Override
+        protected long readNanos() {
+            return nanos;
+        }
+
+        @Override
+        protected void sleepNanosUninterruptibly(long nanos) {
+            if (nanos > 0) {
+                VirtualClock.this.nanos += nanos;
+                sleptNanos += nanos;
+            }
+        }
+    };
+
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos;
+        }
+    };
+
+    /**
+     * 当前的虚拟时间，单位纳秒
+     */
+    public long read() {
+        return nanos;
+    }
+
+    /**
+     * 把时钟推进到指定的时刻，时间不能倒退
+     */
+    public void advanceTo(long nanos) {
+        checkArgument(nanos >= this.nanos, "virtual time must not go backwards: %s < %s", nanos, this.nanos);
+        this.nanos = nanos;
+    }
+
+    /**
+     * 把时钟拨回到指定的时刻，只在一个请求处理完后撤销它睡眠时推进的时间
+     */
+    void rewindTo(long nanos) {
+        checkArgument(nanos <= this.nanos, "cannot rewind forwards: %s > %s", nanos, this.nanos);
+        this.nanos = nanos;
+    }
+
+    /**
+     * 取走自上次调用以来限速器请求的睡眠时长
+     */
+    public long takeSleptNanos() {
+        long slept = sleptNanos;
+        sleptNanos = 0;
+        return slept;
+    }
+
+    public SleepingStopwatch stopwatch() {
+        return stopwatch;
+    }
+
+    public Ticker ticker() {
+        return ticker;
+    }
+}
@@ -0,0 +1,150 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * 自适应超时：每个代理方法有自己的{@link LatencyHistogram}，调用的超时时间取最近耗时的某个分位数乘以一个倍数，
+ * 并限制在[floor, ceiling]之间。
+ * <p>
+ * 直方图每隔rotation轮换一次，耗时整体变化后一到两个rotation内超时时间就会跟上；
+ * 超时的调用按它的超时时间计入，所以耗时上升到超时以上时，超时时间每次刷新都会按倍数放宽，直到ceiling。
+ * 样本不足时使用ceiling。超时时间每32次调用或者每秒重新计算一次，调用时只读一个volatile字段，不分配对象。
+ * <pre>{@code
+ *   AdaptiveTimeout adaptive = AdaptiveTimeout.create(0.99, 20, 2000, TimeUnit.MILLISECONDS).withMultiplier(2.0);
+ *   Service proxy = ProxyBuilder.newBuilder(timeLimiter, target, Service.class).withAdaptiveTimeout(adaptive).build();
+ *   Map<Method, LatencyHistogram> histograms = adaptive.getHistograms();
+ * }</pre>
+ * 同一个AdaptiveTimeout可以用于多个代理，{@link #getHistograms()}包含用到它的所有方法，供监控系统抓取。
+ */
+public final class AdaptiveTimeout {
+    /**
+     * 样本少于这个数时使用ceiling
+     */
+    private static final int MIN_SAMPLES = 20;
+    private static final int REFRESH_MASK = 31;
+    private static final long REFRESH_INTERVAL_NANOS = SECONDS.toNanos(1L);
+
+    private final double quantile;
+    private final long floorNanos;
+    private final long ceilingNanos;
+    private double multiplier = 2.0;
+    private long rotationNanos = SECONDS.toNanos(5L);
+    private Ticker ticker = Ticker.systemTicker();
+
+    private final ConcurrentMap<Method, Tracker> trackers = new ConcurrentHashMap<Method, Tracker>();
+
+    private AdaptiveTimeout(double quantile, long floorNanos, long ceilingNanos) {
+        this.quantile = quantile;
+        this.floorNanos = floorNanos;
+        this.ceilingNanos = ceilingNanos;
+    }
+
+    /**
+     * @param quantile 参考的耗时分位数，例如0.99
+     * @param floor    超时时间的下限
+     * @param ceiling  超时时间的上限，样本不足时也使用它
+     * @param unit     floor和ceiling的时间单位
+     */
+    public static AdaptiveTimeout create(double quantile, long floor, long ceiling, TimeUnit unit) {
+        checkArgument(quantile > 0.0 && quantile <= 1.0, "quantile must be in (0, 1]: %s", quantile);
+        checkArgument(floor > 0, "floor must be positive: %s", floor);
+        checkArgument(ceiling >= floor, "ceiling must not be less than floor: %s < %s", ceiling, floor);
+        return new AdaptiveTimeout(quantile, unit.toNanos(floor), unit.toNanos(ceiling));
+    }
+
+    /**
+     * 分位数的倍数，默认2.0
+     */
+    public AdaptiveTimeout withMultiplier(double multiplier) {
+        checkArgument(multiplier >= 1.0, "multiplier must be at least 1: %s", multiplier);
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * 直方图的轮换周期，默认5秒
+     */
+    public AdaptiveTimeout withRotation(long rotation, TimeUnit unit) {
+        checkArgument(rotation > 0, "rotation must be positive: %s", rotation);
+        this.rotationNanos = unit.toNanos(rotation);
+        return this;
+    }
+
+    @VisibleForTesting
+    AdaptiveTimeout withTicker(Ticker ticker) {
+        this.ticker = checkNotNull(ticker);
+        return this;
+    }
+
+    /**
+     * 所有用到这个AdaptiveTimeout的方法的耗时直方图
+     */
+    public Map<Method, LatencyHistogram> getHistograms() {
+        Map<Method, LatencyHistogram> histograms = new ConcurrentHashMap<Method, LatencyHistogram>();
+        for (Map.Entry<Method, Tracker> e : trackers.entrySet()) {
+            histograms.put(e.getKey(), e.getValue().latencies);
+        }
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * 方法当前使用的超时时间，方法没有用到这个AdaptiveTimeout时返回-1
+     */
+    public long getTimeout(Method method, TimeUnit unit) {
+        Tracker tracker = trackers.get(method);
+        return tracker == null ? -1 : unit.convert(tracker.timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    Tracker track(Method method) {
+        Tracker tracker = new Tracker();
+        Tracker existing = trackers.putIfAbsent(method, tracker);
+        return existing == null ? tracker : existing;
+    }
+
+    /**
+     * 一个方法的耗时统计和当前的超时时间
+     */
+    final class Tracker {
+        final LatencyHistogram latencies = new LatencyHistogram(rotationNanos, TimeUnit.NANOSECONDS, ticker);
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile long timeoutNanos = ceilingNanos;
+        private volatile long refreshedNanos = ticker.read();
+
+        long read() {
+            return ticker.read();
+        }
+
+        long timeoutNanos(long nowNanos) {
+            if ((calls.incrementAndGet() & REFRESH_MASK) == 0 || nowNanos - refreshedNanos >= REFRESH_INTERVAL_NANOS) {
+                refreshedNanos = nowNanos;
+                timeoutNanos = compute();
+            }
+            return timeoutNanos;
+        }
+
+        void record(long elapsedNanos) {
+            latencies.record(elapsedNanos);
+        }
+
+        private long compute() {
+            if (latencies.count() < MIN_SAMPLES) {
+                return ceilingNanos;
+            }
+            double scaled = latencies.percentile(quantile) * multiplier;
+            return (long) Math.max(floorNanos, Math.min(scaled, ceilingNanos));
+        }
+    }
+}
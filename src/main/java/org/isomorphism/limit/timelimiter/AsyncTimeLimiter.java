@@ -0,0 +1,54 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.isomorphism.limit.timelimiter.SimpleTimeLimiter.checkPositiveTimeout;
+
+/**
+ * 异步的TimeLimiter：把调用提交到执行器，立即返回一个带超时的{@link ListenableFuture}，调用者不必阻塞等待。
+ * <p>
+ * 超时由{@link TimeoutFutures}的共享定时器判定，到期时返回的Future以{@link java.util.concurrent.TimeoutException}失败，
+ * 并中断正在执行的任务。取消返回的Future同样会取消任务。
+ */
+public final class AsyncTimeLimiter {
+    private final ListeningExecutorService executor;
+
+    private AsyncTimeLimiter(ListeningExecutorService executor) {
+        this.executor = checkNotNull(executor);
+    }
+
+    /**
+     * @param executor 执行调用的ExecutorService；它的线程池是否有界决定了并发调用的上限
+     */
+    public static AsyncTimeLimiter create(ExecutorService executor) {
+        return new AsyncTimeLimiter(MoreExecutors.listeningDecorator(executor));
+    }
+
+    /**
+     * 使用与{@link SimpleTimeLimiter#create()}相同的默认执行器
+     */
+    public static AsyncTimeLimiter create() {
+        return create(DefaultExecutors.newTimeLimiterExecutor());
+    }
+
+    public <T> ListenableFuture<T> callAsyncWithTimeout(Callable<T> callable, long timeoutDuration, TimeUnit timeoutUnit) {
+        checkNotNull(callable);
+        checkNotNull(timeoutUnit);
+        checkPositiveTimeout(timeoutDuration);
+        return TimeoutFutures.withTimeout(executor.submit(callable), timeoutDuration, timeoutUnit);
+    }
+
+    public ListenableFuture<?> runAsyncWithTimeout(Runnable runnable, long timeoutDuration, TimeUnit timeoutUnit) {
+        checkNotNull(runnable);
+        checkNotNull(timeoutUnit);
+        checkPositiveTimeout(timeoutDuration);
+        return TimeoutFutures.withTimeout(executor.submit(runnable), timeoutDuration, timeoutUnit);
+    }
+}
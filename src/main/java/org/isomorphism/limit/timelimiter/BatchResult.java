@@ -0,0 +1,113 @@
+package org.isomorphism.limit.timelimiter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * {@link TimeLimiter#invokeAllWithTimeout}的结果：按提交顺序记录每个任务是成功、失败还是没能在截止时间前完成。
+ * 截止时间到达时已经完成的任务的结果都会保留下来。
+ */
+public final class BatchResult<T> {
+    private static final byte SUCCEEDED = 0;
+    private static final byte FAILED = 1;
+    private static final byte TIMED_OUT = 2;
+
+    private final Object[] values;
+    private final Throwable[] failures;
+    private final byte[] states;
+
+    BatchResult(int size) {
+        this.values = new Object[size];
+        this.failures = new Throwable[size];
+        this.states = new byte[size];
+    }
+
+    void succeeded(int index, T value) {
+        values[index] = value;
+        states[index] = SUCCEEDED;
+    }
+
+    void failed(int index, Throwable failure) {
+        failures[index] = failure;
+        states[index] = FAILED;
+    }
+
+    void timedOut(int index) {
+        states[index] = TIMED_OUT;
+    }
+
+    public int size() {
+        return states.length;
+    }
+
+    public boolean isSucceeded(int index) {
+        checkElementIndex(index, states.length);
+        return states[index] == SUCCEEDED;
+    }
+
+    public boolean isTimedOut(int index) {
+        checkElementIndex(index, states.length);
+        return states[index] == TIMED_OUT;
+    }
+
+    /**
+     * 任务抛出的异常，任务成功或者超时时返回null
+     */
+    public Throwable getFailure(int index) {
+        checkElementIndex(index, states.length);
+        return failures[index];
+    }
+
+    /**
+     * 返回第index个任务的结果
+     *
+     * @throws ExecutionException 任务抛出了异常，异常作为cause
+     * @throws TimeoutException   任务没能在截止时间前完成
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) throws ExecutionException, TimeoutException {
+        checkElementIndex(index, states.length);
+        switch (states[index]) {
+            case SUCCEEDED:
+                return (T) values[index];
+            case FAILED:
+                throw new ExecutionException(failures[index]);
+            default:
+                throw new TimeoutException("task " + index + " did not complete before the deadline");
+        }
+    }
+
+    /**
+     * 所有成功的任务的结果，按提交顺序
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getSucceededValues() {
+        List<T> succeeded = new ArrayList<T>();
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] == SUCCEEDED) {
+                succeeded.add((T) values[i]);
+            }
+        }
+        return Collections.unmodifiableList(succeeded);
+    }
+
+    public int getTimedOutCount() {
+        int count = 0;
+        for (byte state : states) {
+            if (state == TIMED_OUT) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{size=" + size() + ", succeeded=" + getSucceededValues().size() + ", timedOut=" + getTimedOutCount() + "}";
+    }
+}
@@ -0,0 +1,215 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 隔离舱：给一个下游（一个接口或者一个方法）划出固定数量的执行名额，满了立即抛出{@link BulkheadFullException}。
+ * <p>
+ * 超时的调用会被取消，但不响应中断的I/O仍然占着线程。名额在任务真正结束时才归还，而不是在调用者超时返回时，
+ * 所以一个挂住的下游最多占用它自己的名额，不会拖垮其它下游，也不会让线程数无限增长。
+ * <pre>{@code
+ *   Bulkhead orders = Bulkhead.threadPool("orders", 20, 0);
+ *   OrderService proxy = ProxyBuilder.newBuilder(orders.timeLimiter(), target, OrderService.class)
+ *           .withTimeout(200, TimeUnit.MILLISECONDS)
+ *           .withTimeLimiter("export", Bulkhead.semaphore("orders-export", 2).timeLimiter())
+ *           .build();
+ * }</pre>
+ * 饱和度、执行中、排队和泄漏（调用者已经超时、任务仍在运行）的数量都可以随时读取，读取不加锁。
+ */
+public final class Bulkhead {
+    private final String name;
+    private final int maxConcurrentCalls;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore permits;
+    private final Set<Runnable> running = Collections.newSetFromMap(new ConcurrentHashMap<Runnable, Boolean>());
+    private final AtomicLong rejected = new AtomicLong();
+    private final TimeLimiter timeLimiter;
+
+    private Bulkhead(String name, int maxConcurrentCalls, ExecutorService executor, boolean ownsExecutor) {
+        checkArgument(maxConcurrentCalls > 0, "maxConcurrentCalls must be positive: %s", maxConcurrentCalls);
+        this.name = checkNotNull(name);
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.executor = checkNotNull(executor);
+        this.ownsExecutor = ownsExecutor;
+        this.permits = new Semaphore(maxConcurrentCalls);
+        this.timeLimiter = SimpleTimeLimiter.create(new BoundedExecutor());
+    }
+
+    /**
+     * 独占线程池的隔离舱：创建时预先启动maxThreads个线程，另外最多排队queueCapacity个调用。
+     *
+     * @param name          名字，用于线程名和异常信息
+     * @param maxThreads    线程数
+     * @param queueCapacity 线程都忙时允许排队的调用数，为0时不排队
+     */
+    public static Bulkhead threadPool(String name, int maxThreads, int queueCapacity) {
+        checkArgument(maxThreads > 0, "maxThreads must be positive: %s", maxThreads);
+        checkArgument(queueCapacity >= 0, "queueCapacity must not be negative: %s", queueCapacity);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bulkhead-" + name + "-%d").build());
+        pool.prestartAllCoreThreads();
+        // 名额已经限制了排队的长度，线程池本身不会拒绝
+        return new Bulkhead(name, maxThreads + queueCapacity, pool, true);
+    }
+
+    /**
+     * 信号量隔离舱：调用在给定的共享执行器上运行，只限制同时进行的调用数。
+     */
+    public static Bulkhead semaphore(String name, int maxConcurrentCalls, ExecutorService executor) {
+        return new Bulkhead(name, maxConcurrentCalls, executor, false);
+    }
+
+    /**
+     * 使用与{@link SimpleTimeLimiter#create()}相同的默认执行器的信号量隔离舱
+     */
+    public static Bulkhead semaphore(String name, int maxConcurrentCalls) {
+        return new Bulkhead(name, maxConcurrentCalls, DefaultExecutors.newTimeLimiterExecutor(), true);
+    }
+
+    /**
+     * 在这个隔离舱里执行调用的TimeLimiter，名额用完时调用方法直接抛出{@link BulkheadFullException}
+     */
+    public TimeLimiter timeLimiter() {
+        return timeLimiter;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * 已占用的名额比例，0到1之间；接近1时新的调用会被拒绝
+     */
+    public double getSaturation() {
+        return (double) (maxConcurrentCalls - permits.availablePermits()) / maxConcurrentCalls;
+    }
+
+    /**
+     * 正在线程上运行的调用数，包括泄漏的调用
+     */
+    public int getActiveCount() {
+        return running.size();
+    }
+
+    /**
+     * 已占用名额、还没开始运行的调用数
+     */
+    public int getQueuedCount() {
+        return Math.max(maxConcurrentCalls - permits.availablePermits() - running.size(), 0);
+    }
+
+    /**
+     * 调用者已经超时放弃、但仍在运行的调用数，它们占着的线程要等任务自己结束才会归还
+     */
+    public int getLeakedCount() {
+        int leaked = 0;
+        for (Runnable task : running) {
+            if (task instanceof Future && ((Future<?>) task).isCancelled()) {
+                leaked++;
+            }
+        }
+        return leaked;
+    }
+
+    /**
+     * 累计被拒绝的调用数
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * 关闭隔离舱自己创建的线程池，共享的执行器不受影响
+     */
+    public void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead{" + name + ", saturation=" + getSaturation() + ", active=" + getActiveCount() + ", leaked=" + getLeakedCount()
+                + ", rejected=" + getRejectedCount() + "}";
+    }
+
+    /**
+     * 提交时先占名额，任务结束时归还。SimpleTimeLimiter提交的是FutureTask，超时时会被取消，据此统计泄漏。
+     */
+    private final class BoundedExecutor extends AbstractExecutorService {
+
+        @Override
+        public void execute(final Runnable command) {
+            checkNotNull(command);
+            if (!permits.tryAcquire()) {
+                rejected.incrementAndGet();
+                throw new BulkheadFullException(name, maxConcurrentCalls);
+            }
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        running.add(command);
+                        try {
+                            command.run();
+                        } finally {
+                            running.remove(command);
+                            permits.release();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            Bulkhead.this.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return ownsExecutor ? executor.shutdownNow() : Collections.<Runnable>emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.isomorphism.limit.timelimiter;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 隔离舱已满，调用被立即拒绝，没有提交给任何线程。
+ */
+public class BulkheadFullException extends RejectedExecutionException {
+    private static final long serialVersionUID = 1L;
+
+    private final String bulkheadName;
+
+    public BulkheadFullException(String bulkheadName, int maxConcurrentCalls) {
+        super("bulkhead " + bulkheadName + " is full: " + maxConcurrentCalls + " calls in flight");
+        this.bulkheadName = bulkheadName;
+    }
+
+    public String getBulkheadName() {
+        return bulkheadName;
+    }
+}
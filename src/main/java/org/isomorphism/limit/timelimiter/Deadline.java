@@ -0,0 +1,191 @@
+package org.isomorphism.limit.timelimiter;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 嵌套的限时调用共享的截止时间。
+ * <p>
+ * TimeLimiter执行一次调用时为它建立一个Deadline，并在执行调用的线程上把它设为{@link #current()}，
+ * 调用内部再经过TimeLimiter的调用（包括代理的方法）都继承它：超时时间取自己的超时和剩余时间中较小的一个，
+ * 剩余时间已经用完时不再提交，直接抛出{@link TimeoutException}。
+ * <p>
+ * 外层的调用超时或者被中断时会取消它的Deadline，取消会级联到所有内层调用，即使内层的代码不响应中断，
+ * 调用者也不会再等它们。
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+    private static final long MAX_TIMEOUT_NANOS = Long.MAX_VALUE / 4;
+
+    private final Deadline parent;
+    private final long deadlineNanos;
+
+    /**
+     * 内层调用和关联的任务。大多数调用没有嵌套，也不关联任务，两个集合在第一次登记时才创建。
+     */
+    private volatile Set<Deadline> children;
+    private volatile Set<Future<?>> tasks;
+    private volatile boolean cancelled;
+
+    private Deadline(Deadline parent, long deadlineNanos) {
+        this.parent = parent;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 当前线程所在的限时调用的截止时间，不在限时调用中时返回null
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 剩余的时间，已经过期或者被取消时返回0
+     */
+    public long remaining(TimeUnit unit) {
+        if (cancelled) {
+            return 0;
+        }
+        return unit.convert(Math.max(deadlineNanos - System.nanoTime(), 0L), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isExpired() {
+        return cancelled || deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 在当前的截止时间下开始一次超时为timeoutNanos的调用，返回的Deadline不晚于外层的截止时间。
+     * 调用结束后必须{@link #close()}。
+     *
+     * @throws TimeoutException 外层的截止时间已经过去或者已被取消
+     */
+    static Deadline start(long timeoutNanos) throws TimeoutException {
+        // 限制在约73年以内，保证截止时间之间的差不会溢出
+        long deadline = System.nanoTime() + Math.min(timeoutNanos, MAX_TIMEOUT_NANOS);
+        Deadline parent = CURRENT.get();
+        if (parent == null) {
+            return new Deadline(null, deadline);
+        }
+        if (parent.isExpired()) {
+            throw new TimeoutException("deadline exceeded before the call started");
+        }
+        if (deadline - parent.deadlineNanos > 0) {
+            deadline = parent.deadlineNanos;
+        }
+        Deadline child = new Deadline(parent, deadline);
+        parent.children().add(child);
+        if (parent.cancelled) {
+            child.cancel();
+        }
+        return child;
+    }
+
+    /**
+     * 这次调用实际可用的时间
+     */
+    long timeoutNanos() {
+        return Math.max(deadlineNanos - System.nanoTime(), 0L);
+    }
+
+    /**
+     * 关联执行这次调用的任务，取消时一并取消它。批量调用的所有任务共用一个Deadline。
+     */
+    void bind(Future<?> future) {
+        tasks().add(future);
+        if (cancelled) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * 取消这次调用和它内部的所有调用
+     */
+    void cancel() {
+        cancelled = true;
+        Set<Future<?>> tasks = this.tasks;
+        if (tasks != null) {
+            for (Future<?> future : tasks) {
+                future.cancel(true);
+            }
+        }
+        Set<Deadline> children = this.children;
+        if (children != null) {
+            for (Deadline child : children) {
+                child.cancel();
+            }
+        }
+    }
+
+    void close() {
+        if (parent != null) {
+            parent.children.remove(this);
+        }
+    }
+
+    private Set<Deadline> children() {
+        Set<Deadline> result = children;
+        if (result == null) {
+            synchronized (this) {
+                result = children;
+                if (result == null) {
+                    children = result = Collections.newSetFromMap(new ConcurrentHashMap<Deadline, Boolean>());
+                }
+            }
+        }
+        return result;
+    }
+
+    private Set<Future<?>> tasks() {
+        Set<Future<?>> result = tasks;
+        if (result == null) {
+            synchronized (this) {
+                result = tasks;
+                if (result == null) {
+                    tasks = result = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 返回的Callable在执行期间把当前线程的截止时间设为这个Deadline
+     */
+    <T> Callable<T> wrap(final Callable<T> callable) {
+        checkNotNull(callable);
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return callWithin(callable);
+            }
+        };
+    }
+
+    /**
+     * 在当前线程上以这个Deadline为截止时间执行callable
+     */
+    <T> T callWithin(Callable<T> callable) throws Exception {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return callable.call();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.isomorphism.limit.timelimiter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SimpleTimeLimiter默认使用的执行器。
+ * <p>
+ * 这是Java 21以下的版本，每个并发的调用占用一个平台线程。jar是multi-release的，
+ * 在Java 21及以上运行时会加载src/main/java21下的同名类，改为每个任务一个虚拟线程。
+ */
+final class DefaultExecutors {
+    private DefaultExecutors() {
+    }
+
+    static ExecutorService newTimeLimiterExecutor() {
+        return Executors.newCachedThreadPool();
+    }
+}
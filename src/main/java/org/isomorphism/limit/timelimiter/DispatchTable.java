@@ -0,0 +1,197 @@
+package org.isomorphism.limit.timelimiter;
+
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * 代理的方法分派表：创建代理时为每个方法预先算好调用目标的MethodHandle、是否可中断、执行它的TimeLimiter、超时时间和限速器。
+ * <p>
+ * JDK代理传给InvocationHandler的Method对象是代理类自己持有的副本，和{@link Class#getMethods()}返回的不是同一个对象，
+ * 所以第一次调用某个方法时按equals找到对应的条目，之后把这个Method对象按引用记下来。
+ * 此后的查找只是在一个很短的数组里比较引用，不计算Method的hashCode，也不做反射调用。
+ */
+final class DispatchTable {
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Entry[] entries;
+
+    /**
+     * 交替存放代理类的Method对象和对应的条目，只在学习新方法时整体替换
+     */
+    private volatile Object[] learned = NO_ARGS;
+
+    DispatchTable(Object target, Map<Method, Policy> policies) {
+        this.entries = new Entry[policies.size()];
+        int i = 0;
+        for (Map.Entry<Method, Policy> e : policies.entrySet()) {
+            entries[i++] = new Entry(target, e.getKey(), e.getValue());
+        }
+    }
+
+    Entry lookup(Method method) {
+        Object[] pairs = learned;
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (pairs[i] == method) {
+                return (Entry) pairs[i + 1];
+            }
+        }
+        return learn(method);
+    }
+
+    private synchronized Entry learn(Method method) {
+        for (Entry entry : entries) {
+            if (entry.method.equals(method)) {
+                Object[] pairs = Arrays.copyOf(learned, learned.length + 2);
+                pairs[pairs.length - 2] = method;
+                pairs[pairs.length - 1] = entry;
+                learned = pairs;
+                return entry;
+            }
+        }
+        throw new IllegalArgumentException("not a proxied method: " + method);
+    }
+
+    /**
+     * 创建代理时为一个方法指定的执行方式
+     */
+    static final class Policy {
+        final TimeLimiter timeLimiter;
+        final long timeoutNanos;
+
+        /**
+         * 不对冲时为null
+         */
+        final Hedger hedger;
+
+        /**
+         * 使用固定的超时时间时为null
+         */
+        final AdaptiveTimeout adaptiveTimeout;
+
+        /**
+         * 不限速时为null
+         */
+        final RateLimiter rateLimiter;
+        final int permits;
+
+        Policy(TimeLimiter timeLimiter, long timeoutNanos, Hedger hedger, AdaptiveTimeout adaptiveTimeout, RateLimiter rateLimiter, int permits) {
+            this.timeLimiter = timeLimiter;
+            this.timeoutNanos = timeoutNanos;
+            this.hedger = hedger;
+            this.adaptiveTimeout = adaptiveTimeout;
+            this.rateLimiter = rateLimiter;
+            this.permits = permits;
+        }
+
+        Policy withRateLimiter(RateLimiter rateLimiter, int permits) {
+            return new Policy(timeLimiter, timeoutNanos, hedger, adaptiveTimeout, rateLimiter, permits);
+        }
+    }
+
+    /**
+     * 一个方法的分派信息
+     */
+    static final class Entry {
+        final Method method;
+        final boolean interruptible;
+        final TimeLimiter timeLimiter;
+        final long timeoutNanos;
+
+        /**
+         * 使用固定的超时时间时为null
+         */
+        final AdaptiveTimeout.Tracker adaptiveTimeout;
+
+        /**
+         * 不限速时为null
+         */
+        final RateLimiter rateLimiter;
+        final int permits;
+        private final Hedger hedger;
+        private final Object target;
+
+        /**
+         * 类型为 (Object[])Object，已经绑定了目标对象；无法创建时为null，退回到反射调用
+         */
+        private final MethodHandle invoker;
+
+        Entry(Object target, Method method, Policy policy) {
+            this.target = target;
+            this.method = method;
+            this.interruptible = declaresInterruptedException(method);
+            this.timeLimiter = policy.timeLimiter;
+            this.timeoutNanos = policy.timeoutNanos;
+            this.hedger = policy.hedger;
+            this.adaptiveTimeout = policy.adaptiveTimeout == null ? null : policy.adaptiveTimeout.track(method);
+            this.rateLimiter = policy.rateLimiter;
+            this.permits = policy.permits;
+            this.invoker = spreadInvoker(target, method);
+        }
+
+        Callable<Object> bind(Object[] args) {
+            Callable<Object> invocation = new Invocation(this, args == null ? NO_ARGS : args);
+            return hedger == null ? invocation : hedger.hedge(invocation);
+        }
+
+        Object invoke(Object[] args) throws Exception {
+            try {
+                if (invoker != null) {
+                    return (Object) invoker.invokeExact(args);
+                }
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw SimpleTimeLimiter.throwCause(e, false /* combineStackTraces */);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        }
+
+        private static MethodHandle spreadInvoker(Object target, Method method) {
+            int arity = method.getParameterTypes().length;
+            try {
+                // 目标接口可能不是public的
+                method.setAccessible(true);
+                return MethodHandles.lookup().unreflect(method)
+                        .bindTo(target)
+                        .asType(MethodType.genericMethodType(arity))
+                        .asSpreader(Object[].class, arity);
+            } catch (IllegalAccessException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        private static boolean declaresInterruptedException(Method method) {
+            for (Class<?> exType : method.getExceptionTypes()) {
+                if (exType == InterruptedException.class) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Invocation implements Callable<Object> {
+        private final Entry entry;
+        private final Object[] args;
+
+        Invocation(Entry entry, Object[] args) {
+            this.entry = entry;
+            this.args = args;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            return entry.invoke(args);
+        }
+    }
+}
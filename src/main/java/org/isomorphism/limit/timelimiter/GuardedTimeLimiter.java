@@ -0,0 +1,200 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * TimeLimiter的装饰器：每次调用前先通过{@link #acquire()}拿到一个{@link CallGuard}，调用结束后把结果（成功、超时、失败）告诉它。
+ * <p>
+ * 子类在{@link #acquire()}中决定是否放行，拒绝时抛出{@link java.util.concurrent.RejectedExecutionException}的子类，
+ * 此时不会向被装饰的TimeLimiter提交任何任务。
+ */
+public abstract class GuardedTimeLimiter implements TimeLimiter {
+
+    private final TimeLimiter delegate;
+
+    protected GuardedTimeLimiter(TimeLimiter delegate) {
+        this.delegate = checkNotNull(delegate);
+    }
+
+    /**
+     * 记录一次调用的结果，每个CallGuard只会收到一次回调。
+     */
+    public interface CallGuard {
+        /**
+         * 调用在时间限制内正常返回
+         */
+        void onSuccess();
+
+        /**
+         * 调用超时
+         */
+        void onTimeout();
+
+        /**
+         * 调用抛出了异常
+         */
+        void onFailure(Throwable cause);
+
+        /**
+         * 调用者线程被中断，结果与目标无关
+         */
+        void onIgnore();
+    }
+
+    /**
+     * 在调用开始前执行，拒绝调用时抛出{@link java.util.concurrent.RejectedExecutionException}的子类。
+     */
+    protected abstract CallGuard acquire();
+
+    /**
+     * 代理的每次调用经由{@link #callWithTimeout(Callable, long, TimeUnit, boolean)}，同样会先{@link #acquire()}。
+     */
+    @Override
+    public <T> T newProxy(T target, Class<T> interfaceType, long timeoutDuration, TimeUnit timeoutUnit) {
+        return ProxyBuilder.newBuilder(this, target, interfaceType).withTimeout(timeoutDuration, timeoutUnit).build();
+    }
+
+    @Deprecated
+    @Override
+    public <T> T callWithTimeout(Callable<T> callable, long timeoutDuration, TimeUnit timeoutUnit, boolean interruptible) throws Exception {
+        CallGuard guard = acquire();
+        try {
+            T result = delegate.callWithTimeout(callable, timeoutDuration, timeoutUnit, interruptible);
+            guard.onSuccess();
+            return result;
+        } catch (UncheckedTimeoutException e) {
+            guard.onTimeout();
+            throw e;
+        } catch (InterruptedException e) {
+            guard.onIgnore();
+            throw e;
+        } catch (Throwable t) {
+            guard.onFailure(t);
+            throw t;
+        }
+    }
+
+    @Override
+    public <T> T callWithTimeout(Callable<T> callable, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException, InterruptedException,
+            ExecutionException {
+        CallGuard guard = acquire();
+        try {
+            T result = delegate.callWithTimeout(callable, timeoutDuration, timeoutUnit);
+            guard.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            guard.onTimeout();
+            throw e;
+        } catch (InterruptedException e) {
+            guard.onIgnore();
+            throw e;
+        } catch (Throwable t) {
+            guard.onFailure(t);
+            throw t;
+        }
+    }
+
+    @Override
+    public <T> T callUninterruptiblyWithTimeout(Callable<T> callable, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException, ExecutionException {
+        CallGuard guard = acquire();
+        try {
+            T result = delegate.callUninterruptiblyWithTimeout(callable, timeoutDuration, timeoutUnit);
+            guard.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            guard.onTimeout();
+            throw e;
+        } catch (Throwable t) {
+            guard.onFailure(t);
+            throw t;
+        }
+    }
+
+    @Override
+    public void runWithTimeout(Runnable runnable, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException, InterruptedException {
+        CallGuard guard = acquire();
+        try {
+            delegate.runWithTimeout(runnable, timeoutDuration, timeoutUnit);
+            guard.onSuccess();
+        } catch (TimeoutException e) {
+            guard.onTimeout();
+            throw e;
+        } catch (InterruptedException e) {
+            guard.onIgnore();
+            throw e;
+        } catch (Throwable t) {
+            guard.onFailure(t);
+            throw t;
+        }
+    }
+
+    @Override
+    public void runUninterruptiblyWithTimeout(Runnable runnable, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException {
+        CallGuard guard = acquire();
+        try {
+            delegate.runUninterruptiblyWithTimeout(runnable, timeoutDuration, timeoutUnit);
+            guard.onSuccess();
+        } catch (TimeoutException e) {
+            guard.onTimeout();
+            throw e;
+        } catch (Throwable t) {
+            guard.onFailure(t);
+            throw t;
+        }
+    }
+
+    /**
+     * 整批任务只{@link #acquire()}一次，有任务超时时按超时计
+     */
+    @Override
+    public <T> BatchResult<T> invokeAllWithTimeout(Collection<? extends Callable<T>> tasks, long timeoutDuration, TimeUnit timeoutUnit)
+            throws InterruptedException {
+        CallGuard guard = acquire();
+        try {
+            BatchResult<T> result = delegate.invokeAllWithTimeout(tasks, timeoutDuration, timeoutUnit);
+            if (result.getTimedOutCount() > 0) {
+                guard.onTimeout();
+            } else {
+                guard.onSuccess();
+            }
+            return result;
+        } catch (InterruptedException e) {
+            guard.onIgnore();
+            throw e;
+        } catch (Throwable t) {
+            guard.onFailure(t);
+            throw t;
+        }
+    }
+
+    /**
+     * 整批任务只{@link #acquire()}一次
+     */
+    @Override
+    public <T> T invokeAnyWithTimeout(Collection<? extends Callable<T>> tasks, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException,
+            InterruptedException, ExecutionException {
+        CallGuard guard = acquire();
+        try {
+            T result = delegate.invokeAnyWithTimeout(tasks, timeoutDuration, timeoutUnit);
+            guard.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            guard.onTimeout();
+            throw e;
+        } catch (InterruptedException e) {
+            guard.onIgnore();
+            throw e;
+        } catch (Throwable t) {
+            guard.onFailure(t);
+            throw t;
+        }
+    }
+}
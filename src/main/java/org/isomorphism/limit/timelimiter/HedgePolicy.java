@@ -0,0 +1,81 @@
+package org.isomorphism.limit.timelimiter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * 对冲请求的配置：主调用超过最近耗时的某个分位数仍未返回时，再发起一次相同的调用，采用先返回的结果并取消另一个。
+ * 只适用于幂等的方法。
+ * <p>
+ * 对冲受预算限制：每次调用积攒budgetPercent%个令牌，每次对冲消耗一个，所以对冲的调用最多占流量的budgetPercent%。
+ * 下游出故障、所有调用都变慢时，对冲不会把负载翻倍。
+ * <pre>{@code
+ *   ProxyBuilder.newBuilder(timeLimiter, target, Service.class)
+ *           .withTimeout(1, TimeUnit.SECONDS)
+ *           .withHedging("get", HedgePolicy.atPercentile(0.95).withBudgetPercent(5.0))
+ *           .build();
+ * }</pre>
+ */
+public final class HedgePolicy {
+    private final double quantile;
+    private double budgetPercent = 5.0;
+    private long minDelayNanos = MILLISECONDS.toNanos(1L);
+    private long rotationNanos = TimeUnit.SECONDS.toNanos(10L);
+    private ExecutorService executor;
+
+    private HedgePolicy(double quantile) {
+        checkArgument(quantile > 0.0 && quantile < 1.0, "quantile must be in (0, 1): %s", quantile);
+        this.quantile = quantile;
+    }
+
+    /**
+     * 主调用的耗时超过最近耗时的第quantile分位数时对冲，例如0.95
+     */
+    public static HedgePolicy atPercentile(double quantile) {
+        return new HedgePolicy(quantile);
+    }
+
+    /**
+     * 对冲调用占总调用数的上限，百分比，默认5
+     */
+    public HedgePolicy withBudgetPercent(double budgetPercent) {
+        checkArgument(budgetPercent > 0.0 && budgetPercent <= 100.0, "budgetPercent must be in (0, 100]: %s", budgetPercent);
+        this.budgetPercent = budgetPercent;
+        return this;
+    }
+
+    /**
+     * 对冲前至少等待的时间，样本不足时也使用它，默认1毫秒
+     */
+    public HedgePolicy withMinDelay(long delay, TimeUnit unit) {
+        checkArgument(delay >= 0, "delay must not be negative: %s", delay);
+        this.minDelayNanos = unit.toNanos(delay);
+        return this;
+    }
+
+    /**
+     * 耗时统计的窗口轮换周期，默认10秒
+     */
+    public HedgePolicy withRotation(long rotation, TimeUnit unit) {
+        checkArgument(rotation > 0, "rotation must be positive: %s", rotation);
+        this.rotationNanos = unit.toNanos(rotation);
+        return this;
+    }
+
+    /**
+     * 执行主调用和对冲调用的执行器，默认与{@link SimpleTimeLimiter#create()}相同
+     */
+    public HedgePolicy withExecutor(ExecutorService executor) {
+        this.executor = checkNotNull(executor);
+        return this;
+    }
+
+    Hedger newHedger() {
+        ExecutorService attempts = executor == null ? DefaultExecutors.newTimeLimiterExecutor() : executor;
+        return new Hedger(attempts, new LatencyHistogram(rotationNanos, TimeUnit.NANOSECONDS), quantile, budgetPercent, minDelayNanos);
+    }
+}
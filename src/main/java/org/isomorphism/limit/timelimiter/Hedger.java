@@ -0,0 +1,150 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 一个代理方法的对冲状态：耗时直方图和对冲预算。{@link #hedge(Callable)}返回的Callable在TimeLimiter的线程上运行，
+ * 超时被中断时会取消所有尝试。
+ */
+final class Hedger {
+    /**
+     * 预算的定点单位，一个令牌为1000
+     */
+    private static final long TOKEN = 1000L;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    /**
+     * 样本少于这个数时只按minDelay对冲
+     */
+    private static final int MIN_SAMPLES = 20;
+
+    /**
+     * 每隔多少次调用重新计算一次分位数
+     */
+    private static final int REFRESH_MASK = 63;
+
+    private final ExecutorService executor;
+    private final LatencyHistogram latencies;
+    private final double quantile;
+    private final long tokensPerCall;
+    private final long minDelayNanos;
+
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicLong hedged = new AtomicLong();
+    private volatile long thresholdNanos;
+
+    Hedger(ExecutorService executor, LatencyHistogram latencies, double quantile, double budgetPercent, long minDelayNanos) {
+        this.executor = executor;
+        this.latencies = latencies;
+        this.quantile = quantile;
+        this.tokensPerCall = Math.max((long) (budgetPercent / 100.0 * TOKEN), 1L);
+        this.minDelayNanos = minDelayNanos;
+        this.thresholdNanos = minDelayNanos;
+    }
+
+    Callable<Object> hedge(final Callable<Object> attempt) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return callHedged(attempt);
+            }
+        };
+    }
+
+    @VisibleForTesting
+    long getHedgedCount() {
+        return hedged.get();
+    }
+
+    @VisibleForTesting
+    LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    private Object callHedged(Callable<Object> attempt) throws Exception {
+        deposit();
+        CompletionService<Object> completion = new ExecutorCompletionService<Object>(executor);
+        Future<Object> primary = completion.submit(timed(attempt));
+        Future<Object> secondary = null;
+        try {
+            Future<Object> done = completion.poll(threshold(), NANOSECONDS);
+            if (done == null) {
+                if (withdraw()) {
+                    hedged.incrementAndGet();
+                    secondary = completion.submit(timed(attempt));
+                }
+                done = completion.take();
+            }
+            try {
+                return done.get();
+            } catch (ExecutionException e) {
+                if (secondary == null) {
+                    throw e;
+                }
+                // 先返回的失败了，等另一个
+                return completion.take().get();
+            }
+        } catch (ExecutionException e) {
+            throw SimpleTimeLimiter.throwCause(e, false /* combineStackTraces */);
+        } finally {
+            primary.cancel(true);
+            if (secondary != null) {
+                secondary.cancel(true);
+            }
+        }
+    }
+
+    private Callable<Object> timed(final Callable<Object> attempt) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                long start = System.nanoTime();
+                Object result = attempt.call();
+                // 被取消的慢调用不计入，分位数会略偏低，多出来的对冲由预算限制
+                latencies.record(System.nanoTime() - start);
+                return result;
+            }
+        };
+    }
+
+    private long threshold() {
+        if ((calls.incrementAndGet() & REFRESH_MASK) == 0) {
+            thresholdNanos = latencies.count() < MIN_SAMPLES ? minDelayNanos : Math.max(latencies.percentile(quantile), minDelayNanos);
+        }
+        return thresholdNanos;
+    }
+
+    private void deposit() {
+        while (true) {
+            long current = tokens.get();
+            long next = Math.min(current + tokensPerCall, MAX_TOKENS);
+            if (current == next || tokens.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    private boolean withdraw() {
+        while (true) {
+            long current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 无锁的调用耗时直方图，单位纳秒。分桶方式与仿真用的直方图相同：每个2的幂区间再等分16个子桶，相对误差不超过1/16。
+ * <p>
+ * 只统计最近的数据：样本写入当前窗口，窗口每隔rotation轮换一次，分位数由当前和上一个窗口合并计算，
+ * 所以反映的是最近一到两个rotation内的耗时。记录一次样本是几次原子加法，没有锁。
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final Ticker ticker;
+    private final long rotationNanos;
+    private final AtomicReference<Window> current;
+    private volatile Window previous;
+
+    public LatencyHistogram(long rotation, TimeUnit unit) {
+        this(rotation, unit, Ticker.systemTicker());
+    }
+
+    public LatencyHistogram(long rotation, TimeUnit unit, Ticker ticker) {
+        checkArgument(rotation > 0, "rotation must be positive: %s", rotation);
+        this.ticker = checkNotNull(ticker);
+        this.rotationNanos = unit.toNanos(rotation);
+        long now = ticker.read();
+        this.current = new AtomicReference<Window>(new Window(now));
+        this.previous = new Window(now);
+    }
+
+    public void record(long nanos) {
+        window().record(Math.max(nanos, 0L));
+    }
+
+    /**
+     * 最近一到两个窗口内的样本数
+     */
+    public long count() {
+        Window cur = window();
+        return cur.total.get() + previous.total.get();
+    }
+
+    /**
+     * 返回第quantile（0到1）分位数所在桶的上界，没有样本时返回0
+     */
+    public long percentile(double quantile) {
+        checkArgument(quantile >= 0.0 && quantile <= 1.0, "quantile must be in [0, 1]: %s", quantile);
+        Window cur = window();
+        Window prev = previous;
+        long total = cur.total.get() + prev.total.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max((long) Math.ceil(quantile * total), 1L);
+        long seen = 0;
+        long last = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = cur.counts.get(i) + prev.counts.get(i);
+            if (count > 0) {
+                seen += count;
+                last = upperBound(i);
+                if (seen >= rank) {
+                    return last;
+                }
+            }
+        }
+        // 并发写入时总数和桶计数可能不一致
+        return last;
+    }
+
+    private Window window() {
+        Window cur = current.get();
+        long now = ticker.read();
+        if (now - cur.startNanos >= rotationNanos) {
+            Window fresh = new Window(now);
+            if (current.compareAndSet(cur, fresh)) {
+                // 空闲超过一个rotation时，cur的样本已经早于上一个窗口，不能再参与计算
+                previous = now - cur.startNanos >= 2 * rotationNanos ? new Window(now - rotationNanos) : cur;
+                return fresh;
+            }
+            return current.get();
+        }
+        return cur;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    private static final class Window {
+        final long startNanos;
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        final AtomicLong total = new AtomicLong();
+
+        Window(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        void record(long value) {
+            counts.incrementAndGet(index(value));
+            total.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.isomorphism.limit.ratelimiter.impl.SleepingStopwatch;
+import org.isomorphism.limit.ratelimiter.impl.SmoothBursty;
+import org.isomorphism.limit.ratelimiter.impl.SmoothWarmingUp;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 创建限时代理，可以为不同的方法指定不同的超时时间：
+ * <pre>{@code
+ *   DemoInterface proxy = ProxyBuilder.newBuilder(timeLimiter, target, DemoInterface.class)
+ *           .withTimeout(200, TimeUnit.MILLISECONDS)
+ *           .withTimeout("execute", 50, TimeUnit.MILLISECONDS)
+ *           .build();
+ * }</pre>
+ * 每个方法的调用目标、是否可中断（声明了InterruptedException）、TimeLimiter和超时时间在build时算好放进分派表，
+ * 调用时不做反射，也不查Set，每次调用只分配一个提交给TimeLimiter的Callable。
+ * <p>
+ * 用{@link #withTimeLimiter(String, TimeLimiter)}可以让个别方法在单独的{@link Bulkhead}里执行，
+ * 整个接口共用一个隔离舱时，把{@link Bulkhead#timeLimiter()}传给{@link #newBuilder(TimeLimiter, Object, Class)}即可。
+ * 幂等的读方法可以用{@link #withHedging(String, HedgePolicy)}开启对冲请求来降低长尾耗时。
+ * 超时时间也可以由{@link #withAdaptiveTimeout(AdaptiveTimeout)}按最近的耗时自动调整。
+ * <p>
+ * 接口和方法上的{@link Timeout}和{@link RateLimit}注解在build时读取：限速器和超时时间一起编进分派表，
+ * 一次调用先在调用者线程上等待许可，再交给TimeLimiter，不需要再套一层限速的代理。
+ * <pre>{@code
+ *   @Timeout(200)
+ *   @RateLimit(permitsPerSecond = 100.0)
+ *   interface OrderService {
+ *       @Timeout(50)
+ *       Order get(long id);
+ *
+ *       @RateLimit(permitsPerSecond = 5.0, warmupPeriod = 10)
+ *       Report export(long from, long to);
+ *   }
+ * }</pre>
+ * {@link TimeLimiter#newProxy(Object, Class, long, TimeUnit)}相当于只指定了默认超时时间。
+ */
+public final class ProxyBuilder<T> {
+    private final TimeLimiter timeLimiter;
+    private final T target;
+    private final Class<T> interfaceType;
+    private final Map<String, Long> methodTimeoutNanos = new LinkedHashMap<String, Long>();
+    private final Map<String, TimeLimiter> methodTimeLimiters = new LinkedHashMap<String, TimeLimiter>();
+    private final Map<String, HedgePolicy> methodHedgePolicies = new LinkedHashMap<String, HedgePolicy>();
+    private final Map<String, AdaptiveTimeout> methodAdaptiveTimeouts = new LinkedHashMap<String, AdaptiveTimeout>();
+    private Long defaultTimeoutNanos;
+    private AdaptiveTimeout defaultAdaptiveTimeout;
+
+    private ProxyBuilder(TimeLimiter timeLimiter, T target, Class<T> interfaceType) {
+        this.timeLimiter = checkNotNull(timeLimiter);
+        this.target = checkNotNull(target);
+        this.interfaceType = checkNotNull(interfaceType);
+        checkArgument(interfaceType.isInterface(), "interfaceType must be an interface type");
+    }
+
+    /**
+     * @param timeLimiter   执行每次调用的TimeLimiter
+     * @param target        被代理的对象
+     * @param interfaceType 代理实现的接口
+     */
+    public static <T> ProxyBuilder<T> newBuilder(TimeLimiter timeLimiter, T target, Class<T> interfaceType) {
+        return new ProxyBuilder<T>(timeLimiter, target, interfaceType);
+    }
+
+    /**
+     * 没有单独指定超时时间的方法使用的超时时间
+     */
+    public ProxyBuilder<T> withTimeout(long timeoutDuration, TimeUnit timeoutUnit) {
+        SimpleTimeLimiter.checkPositiveTimeout(timeoutDuration);
+        defaultTimeoutNanos = timeoutUnit.toNanos(timeoutDuration);
+        return this;
+    }
+
+    /**
+     * 为指定名字的方法（包括它的所有重载）单独指定超时时间
+     */
+    public ProxyBuilder<T> withTimeout(String methodName, long timeoutDuration, TimeUnit timeoutUnit) {
+        SimpleTimeLimiter.checkPositiveTimeout(timeoutDuration);
+        checkArgument(hasMethod(methodName), "%s has no method named %s", interfaceType.getName(), methodName);
+        methodTimeoutNanos.put(methodName, timeoutUnit.toNanos(timeoutDuration));
+        return this;
+    }
+
+    /**
+     * 让指定名字的方法（包括它的所有重载）由另一个TimeLimiter执行，通常是某个{@link Bulkhead#timeLimiter()}
+     */
+    public ProxyBuilder<T> withTimeLimiter(String methodName, TimeLimiter methodTimeLimiter) {
+        checkNotNull(methodTimeLimiter);
+        checkArgument(hasMethod(methodName), "%s has no method named %s", interfaceType.getName(), methodName);
+        methodTimeLimiters.put(methodName, methodTimeLimiter);
+        return this;
+    }
+
+    /**
+     * 对指定名字的方法（包括它的所有重载）使用对冲请求，方法必须是幂等的。参见{@link HedgePolicy}
+     */
+    public ProxyBuilder<T> withHedging(String methodName, HedgePolicy hedgePolicy) {
+        checkNotNull(hedgePolicy);
+        checkArgument(hasMethod(methodName), "%s has no method named %s", interfaceType.getName(), methodName);
+        methodHedgePolicies.put(methodName, hedgePolicy);
+        return this;
+    }
+
+    /**
+     * 没有单独指定超时时间的方法使用自适应超时，代替{@link #withTimeout(long, TimeUnit)}。参见{@link AdaptiveTimeout}
+     */
+    public ProxyBuilder<T> withAdaptiveTimeout(AdaptiveTimeout adaptiveTimeout) {
+        defaultAdaptiveTimeout = checkNotNull(adaptiveTimeout);
+        return this;
+    }
+
+    /**
+     * 指定名字的方法（包括它的所有重载）使用自适应超时，每个重载各自统计耗时
+     */
+    public ProxyBuilder<T> withAdaptiveTimeout(String methodName, AdaptiveTimeout adaptiveTimeout) {
+        checkNotNull(adaptiveTimeout);
+        checkArgument(hasMethod(methodName), "%s has no method named %s", interfaceType.getName(), methodName);
+        methodAdaptiveTimeouts.put(methodName, adaptiveTimeout);
+        return this;
+    }
+
+    public T build() {
+        Map<String, Hedger> hedgers = new HashMap<String, Hedger>();
+        for (Map.Entry<String, HedgePolicy> e : methodHedgePolicies.entrySet()) {
+            hedgers.put(e.getKey(), e.getValue().newHedger());
+        }
+        RateLimit sharedRate = interfaceType.getAnnotation(RateLimit.class);
+        RateLimiter sharedRateLimiter = sharedRate == null ? null : newRateLimiter(sharedRate);
+
+        Map<Method, DispatchTable.Policy> policies = new LinkedHashMap<Method, DispatchTable.Policy>();
+        for (Method method : interfaceType.getMethods()) {
+            DispatchTable.Policy policy = policyOf(method, hedgers);
+            RateLimit rate = method.getAnnotation(RateLimit.class);
+            if (rate != null) {
+                policy = policy.withRateLimiter(newRateLimiter(rate), rate.permits());
+            } else if (sharedRate != null) {
+                policy = policy.withRateLimiter(sharedRateLimiter, sharedRate.permits());
+            }
+            policies.put(method, policy);
+        }
+        // 代理也会把这三个方法分派给InvocationHandler，它们不限速
+        for (String name : new String[]{"hashCode", "equals", "toString"}) {
+            for (Method method : Object.class.getMethods()) {
+                if (method.getName().equals(name)) {
+                    policies.put(method, policyOf(method, hedgers));
+                }
+            }
+        }
+        final DispatchTable table = new DispatchTable(target, policies);
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                DispatchTable.Entry entry = table.lookup(method);
+                if (entry.adaptiveTimeout != null) {
+                    return callAdaptive(entry, args);
+                }
+                long timeoutNanos = entry.rateLimiter == null ? entry.timeoutNanos : acquirePermits(entry, entry.timeoutNanos);
+                return callWithTimeout(entry, args, timeoutNanos);
+            }
+        };
+        return SimpleTimeLimiter.newProxy(interfaceType, handler);
+    }
+
+    /**
+     * 代理按方法决定是否可中断，TimeLimiter只有带interruptible参数的方法能按调用选择，它已被废弃，这里是唯一的调用点
+     */
+    @SuppressWarnings("deprecation")
+    private static Object callWithTimeout(DispatchTable.Entry entry, Object[] args, long timeoutNanos) throws Exception {
+        return entry.timeLimiter.callWithTimeout(entry.bind(args), timeoutNanos, NANOSECONDS, entry.interruptible);
+    }
+
+    /**
+     * 成功的调用按实际耗时计入，超时的调用按超时时间计入，其它失败不计入
+     */
+    private static Object callAdaptive(DispatchTable.Entry entry, Object[] args) throws Exception {
+        AdaptiveTimeout.Tracker tracker = entry.adaptiveTimeout;
+        long start = tracker.read();
+        long timeoutNanos = tracker.timeoutNanos(start);
+        if (entry.rateLimiter != null) {
+            timeoutNanos = acquirePermits(entry, timeoutNanos);
+        }
+        try {
+            Object result = callWithTimeout(entry, args, timeoutNanos);
+            tracker.record(tracker.read() - start);
+            return result;
+        } catch (UncheckedTimeoutException e) {
+            tracker.record(timeoutNanos);
+            throw e;
+        }
+    }
+
+    /**
+     * 等待速率许可，等待的时间计入调用的超时时间，返回剩下的超时时间
+     */
+    private static long acquirePermits(DispatchTable.Entry entry, long timeoutNanos) {
+        long start = System.nanoTime();
+        if (!entry.rateLimiter.tryAcquire(entry.permits, timeoutNanos, NANOSECONDS)) {
+            throw new UncheckedTimeoutException("no permit for " + entry.method.getName() + " within " + timeoutNanos + " ns");
+        }
+        return Math.max(timeoutNanos - (System.nanoTime() - start), 1L);
+    }
+
+    private static RateLimiter newRateLimiter(RateLimit rate) {
+        checkArgument(rate.permits() > 0, "permits must be positive: %s", rate.permits());
+        RateLimiter rateLimiter;
+        if (rate.warmupPeriod() > 0) {
+            rateLimiter = new SmoothWarmingUp(SleepingStopwatch.createFromSystemTimer(), rate.warmupPeriod(), rate.warmupUnit(), rate.coldFactor());
+        } else {
+            rateLimiter = new SmoothBursty(SleepingStopwatch.createFromSystemTimer(), rate.maxBurstSeconds());
+        }
+        rateLimiter.setRate(rate.permitsPerSecond());
+        return rateLimiter;
+    }
+
+    private DispatchTable.Policy policyOf(Method method, Map<String, Hedger> hedgers) {
+        TimeLimiter methodTimeLimiter = methodTimeLimiters.get(method.getName());
+        AdaptiveTimeout adaptiveTimeout = methodAdaptiveTimeouts.get(method.getName());
+        if (adaptiveTimeout == null && !methodTimeoutNanos.containsKey(method.getName()) && method.getAnnotation(Timeout.class) == null) {
+            adaptiveTimeout = defaultAdaptiveTimeout;
+        }
+        return new DispatchTable.Policy(methodTimeLimiter == null ? timeLimiter : methodTimeLimiter,
+                adaptiveTimeout == null ? timeoutOf(method) : 0L, hedgers.get(method.getName()), adaptiveTimeout, null, 0);
+    }
+
+    /**
+     * 优先级：按名字单独指定的超时、方法上的注解、接口上的注解、默认超时
+     */
+    private long timeoutOf(Method method) {
+        Long timeout = methodTimeoutNanos.get(method.getName());
+        if (timeout != null) {
+            return timeout;
+        }
+        Timeout annotation = method.getAnnotation(Timeout.class);
+        if (annotation == null) {
+            annotation = interfaceType.getAnnotation(Timeout.class);
+        }
+        if (annotation != null) {
+            SimpleTimeLimiter.checkPositiveTimeout(annotation.value());
+            return annotation.unit().toNanos(annotation.value());
+        }
+        checkState(defaultTimeoutNanos != null, "no timeout specified for %s", method);
+        return defaultTimeoutNanos;
+    }
+
+    private boolean hasMethod(String methodName) {
+        for (Method method : interfaceType.getMethods()) {
+            if (method.getName().equals(methodName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
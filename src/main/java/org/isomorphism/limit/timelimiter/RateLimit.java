@@ -0,0 +1,48 @@
+package org.isomorphism.limit.timelimiter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 代理方法的调用速率，由{@link ProxyBuilder}在创建代理时换成一个RateLimiter放进分派表：
+ * warmupPeriod为0时是SmoothBursty，否则是SmoothWarmingUp。
+ * <p>
+ * 标在方法上时这个方法（每个重载）有自己的RateLimiter；标在接口上时，没有标注的方法共用一个RateLimiter。
+ * 等待许可的时间计入调用的超时时间，超时前拿不到许可时抛出{@link com.google.common.util.concurrent.UncheckedTimeoutException}，
+ * 目标方法不会被调用。
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface RateLimit {
+    /**
+     * 每秒的许可数
+     */
+    double permitsPerSecond();
+
+    /**
+     * 闲置时最多积攒多少秒的许可，只用于没有预热期的情况
+     */
+    double maxBurstSeconds() default 1.0;
+
+    /**
+     * 预热期，为0时不预热
+     */
+    long warmupPeriod() default 0;
+
+    TimeUnit warmupUnit() default TimeUnit.SECONDS;
+
+    /**
+     * 冷却状态下的发放间隔是稳定间隔的多少倍，只用于有预热期的情况
+     */
+    double coldFactor() default 3.0;
+
+    /**
+     * 每次调用消耗的许可数
+     */
+    int permits() default 1;
+}
@@ -0,0 +1,407 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.isomorphism.limit.timelimiter.SimpleTimeLimiter.checkPositiveTimeout;
+
+/**
+ * 在调用者线程上直接执行的TimeLimiter：调用前把截止时间登记到一个共享的看门狗线程，
+ * 超时后看门狗中断调用者线程，调用结束时抛出{@link TimeoutException}。
+ * "Uninterruptibly"系列方法和不可中断的代理方法不会被看门狗中断，只在调用结束后报告超时，
+ * 避免关闭调用中正在使用的{@link java.nio.channels.InterruptibleChannel}。
+ * <p>
+ * 与{@link SimpleTimeLimiter}相比，常见的快速调用没有线程切换，也不分配Future：每个线程复用一张登记票，
+ * 登记和注销只是几次volatile写和一次CAS。代价是：
+ * <ul>
+ * <li>只能通过中断来终止超时的调用，不响应中断的代码以及不可中断的调用会一直执行完，之后才抛出TimeoutException</li>
+ * <li>超时的判定精度取决于看门狗的唤醒延迟，通常在百微秒量级</li>
+ * <li>调用者线程收到的外部中断也会传给被调用的代码；"Uninterruptibly"系列方法无法屏蔽这一点</li>
+ * </ul>
+ * 超时中断在方法返回前会被清除，不会泄漏到调用者后续的代码里。
+ * <p>
+ * 与SimpleTimeLimiter一样，嵌套的调用继承外层的{@link Deadline}。
+ */
+public final class SameThreadTimeLimiter implements TimeLimiter {
+
+    private final Watchdog watchdog;
+
+    private SameThreadTimeLimiter(Watchdog watchdog) {
+        this.watchdog = checkNotNull(watchdog);
+    }
+
+    /**
+     * 使用全局共享的看门狗线程创建TimeLimiter
+     */
+    public static TimeLimiter create() {
+        return new SameThreadTimeLimiter(Watchdog.shared());
+    }
+
+    @Override
+    public <T> T newProxy(T target, Class<T> interfaceType, long timeoutDuration, TimeUnit timeoutUnit) {
+        return ProxyBuilder.newBuilder(this, target, interfaceType).withTimeout(timeoutDuration, timeoutUnit).build();
+    }
+
+    @Deprecated
+    @Override
+    public <T> T callWithTimeout(Callable<T> callable, long timeoutDuration, TimeUnit timeoutUnit, boolean interruptible) throws Exception {
+        try {
+            return call(callable, timeoutDuration, timeoutUnit, interruptible);
+        } catch (TimeoutException e) {
+            throw new UncheckedTimeoutException(e);
+        } catch (CallFailure f) {
+            Throwable cause = f.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw f;
+        }
+    }
+
+    @Override
+    public <T> T callWithTimeout(Callable<T> callable, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException, InterruptedException,
+            ExecutionException {
+        try {
+            return call(callable, timeoutDuration, timeoutUnit, true);
+        } catch (CallFailure f) {
+            if (f.getCause() instanceof InterruptedException) {
+                // 调用者线程被外部中断
+                throw (InterruptedException) f.getCause();
+            }
+            SimpleTimeLimiter.wrapAndThrowExecutionExceptionOrError(f.getCause());
+            throw new AssertionError();
+        }
+    }
+
+    @Override
+    public <T> T callUninterruptiblyWithTimeout(Callable<T> callable, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException, ExecutionException {
+        try {
+            return call(callable, timeoutDuration, timeoutUnit, false);
+        } catch (CallFailure f) {
+            SimpleTimeLimiter.wrapAndThrowExecutionExceptionOrError(f.getCause());
+            throw new AssertionError();
+        }
+    }
+
+    @Override
+    public void runWithTimeout(Runnable runnable, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException, InterruptedException {
+        run(runnable, timeoutDuration, timeoutUnit, true);
+    }
+
+    @Override
+    public void runUninterruptiblyWithTimeout(Runnable runnable, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException {
+        run(runnable, timeoutDuration, timeoutUnit, false);
+    }
+
+    private void run(Runnable runnable, long timeoutDuration, TimeUnit timeoutUnit, boolean interruptible) throws TimeoutException {
+        checkNotNull(runnable);
+        try {
+            call(Executors.callable(runnable), timeoutDuration, timeoutUnit, interruptible);
+        } catch (CallFailure f) {
+            SimpleTimeLimiter.wrapAndThrowRuntimeExecutionExceptionOrError(f.getCause());
+            throw new AssertionError();
+        }
+    }
+
+    /**
+     * 在调用者线程上依次执行，所有任务共用一个截止时间，截止时间过后的任务不再执行、记为超时。
+     */
+    @Override
+    public <T> BatchResult<T> invokeAllWithTimeout(Collection<? extends Callable<T>> tasks, long timeoutDuration, TimeUnit timeoutUnit)
+            throws InterruptedException {
+        checkNotNull(tasks);
+        checkNotNull(timeoutUnit);
+        checkPositiveTimeout(timeoutDuration);
+
+        BatchResult<T> result = new BatchResult<T>(tasks.size());
+        long deadline = System.nanoTime() + timeoutUnit.toNanos(timeoutDuration);
+        int i = 0;
+        for (Callable<T> task : tasks) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                result.timedOut(i++);
+                continue;
+            }
+            try {
+                result.succeeded(i, call(task, remaining, NANOSECONDS, true));
+            } catch (TimeoutException e) {
+                result.timedOut(i);
+            } catch (CallFailure f) {
+                if (f.getCause() instanceof InterruptedException) {
+                    // 调用者线程被外部中断
+                    throw (InterruptedException) f.getCause();
+                }
+                result.failed(i, f.getCause());
+            }
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * 在调用者线程上依次执行，返回第一个成功的任务的结果，后面的任务不再执行。
+     */
+    @Override
+    public <T> T invokeAnyWithTimeout(Collection<? extends Callable<T>> tasks, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException,
+            InterruptedException, ExecutionException {
+        checkNotNull(tasks);
+        checkArgument(!tasks.isEmpty(), "tasks must not be empty");
+        checkNotNull(timeoutUnit);
+        checkPositiveTimeout(timeoutDuration);
+
+        long deadline = System.nanoTime() + timeoutUnit.toNanos(timeoutDuration);
+        Throwable last = null;
+        for (Callable<T> task : tasks) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException("no task succeeded within " + timeoutDuration + " " + timeoutUnit);
+            }
+            try {
+                return call(task, remaining, NANOSECONDS, true);
+            } catch (CallFailure f) {
+                if (f.getCause() instanceof InterruptedException) {
+                    throw (InterruptedException) f.getCause();
+                }
+                last = f.getCause();
+            }
+        }
+        SimpleTimeLimiter.wrapAndThrowExecutionExceptionOrError(last);
+        throw new AssertionError();
+    }
+
+    /**
+     * 在当前线程上执行callable。看门狗触发时抛出TimeoutException，调用本身的异常（通常是被中断引起的）作为它的cause；
+     * 否则callable抛出的异常包装在CallFailure中，以便和超时区分开。interruptible为false时看门狗不中断调用者线程。
+     */
+    private <T> T call(Callable<T> callable, long timeoutDuration, TimeUnit timeoutUnit, boolean interruptible)
+            throws TimeoutException, CallFailure {
+        checkNotNull(callable);
+        checkNotNull(timeoutUnit);
+        checkPositiveTimeout(timeoutDuration);
+        Deadline deadline = Deadline.start(timeoutUnit.toNanos(timeoutDuration));
+        try {
+            Ticket ticket = watchdog.arm(NANOSECONDS, Math.max(deadline.timeoutNanos(), 1L), interruptible);
+            long stamp = ticket.stamp();
+            T result = null;
+            Throwable failure = null;
+            try {
+                result = deadline.callWithin(callable);
+            } catch (Throwable t) {
+                failure = t;
+            }
+            if (!watchdog.disarm(ticket, stamp)) {
+                // 取消内层还没结束的异步调用
+                deadline.cancel();
+                TimeoutException timeout = new TimeoutException("call did not complete within " + timeoutDuration + " " + timeoutUnit);
+                if (failure != null) {
+                    timeout.initCause(failure);
+                }
+                throw timeout;
+            }
+            if (failure != null) {
+                throw new CallFailure(failure);
+            }
+            return result;
+        } finally {
+            deadline.close();
+        }
+    }
+
+    private static final class CallFailure extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        CallFailure(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * 登记票：记录一个线程当前调用的截止时间。
+     * <p>
+     * stamp的低2位是状态，其余位是序号，每次登记加1，这样看门狗不会误把上一次调用的超时算到下一次调用头上。
+     */
+    static final class Ticket {
+        static final long IDLE = 0;
+        static final long ARMED = 1;
+        static final long FIRED = 2;
+        /**
+         * 看门狗已经处理完过期的票：可中断的票此时已经发出中断
+         */
+        static final long INTERRUPTED = 3;
+        static final long STATE_MASK = 3;
+
+        final Thread owner;
+
+        /**
+         * 嵌套调用时临时创建的票，用完即丢弃
+         */
+        final boolean temporary;
+
+        final AtomicLong stamp = new AtomicLong();
+
+        /**
+         * 在stamp之前写入、之后读取，由stamp的volatile语义保证可见性
+         */
+        long deadlineNanos;
+
+        /**
+         * 同deadlineNanos，过期时是否中断owner
+         */
+        boolean interruptible;
+
+        volatile boolean retired;
+
+        Ticket(Thread owner, boolean temporary) {
+            this.owner = owner;
+            this.temporary = temporary;
+        }
+
+        long stamp() {
+            return stamp.get();
+        }
+
+        static long state(long stamp) {
+            return stamp & STATE_MASK;
+        }
+    }
+
+    /**
+     * 共享的看门狗线程。登记的票放在一个无锁队列里，看门狗每次醒来扫描一遍，中断过期的调用，
+     * 然后睡到最早的截止时间。新登记的截止时间早于看门狗计划的唤醒时间时才唤醒它，常见情况下登记不涉及系统调用。
+     * <p>
+     * 扫描的开销与使用过它的存活线程数成正比，已经结束的线程的票在扫描时移除。
+     */
+    static final class Watchdog implements Runnable {
+        private static final long MAX_PARK_NANOS = MILLISECONDS.toNanos(1000);
+
+        /**
+         * 扫描期间把计划唤醒时间设到很远的将来，保证扫描时登记的票一定会唤醒看门狗
+         */
+        private static final long SCANNING = Long.MAX_VALUE / 2;
+
+        private final ConcurrentLinkedQueue<Ticket> tickets = new ConcurrentLinkedQueue<Ticket>();
+        private final ThreadLocal<Ticket> current = new ThreadLocal<Ticket>();
+        private final Thread thread;
+
+        /**
+         * 看门狗计划的下一次唤醒时间
+         */
+        private volatile long nextWakeNanos;
+
+        private static final class Holder {
+            static final Watchdog SHARED = new Watchdog("time-limiter-watchdog");
+        }
+
+        static Watchdog shared() {
+            return Holder.SHARED;
+        }
+
+        Watchdog(String name) {
+            this.nextWakeNanos = System.nanoTime() + SCANNING;
+            this.thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Ticket arm(TimeUnit timeoutUnit, long timeoutDuration, boolean interruptible) {
+            checkNotNull(timeoutUnit);
+            checkPositiveTimeout(timeoutDuration);
+            long deadline = System.nanoTime() + timeoutUnit.toNanos(timeoutDuration);
+
+            Ticket ticket = current.get();
+            if (ticket == null) {
+                ticket = new Ticket(Thread.currentThread(), false);
+                tickets.add(ticket);
+                current.set(ticket);
+            } else if (Ticket.state(ticket.stamp()) != Ticket.IDLE) {
+                // 嵌套调用：外层的票还在使用
+                ticket = new Ticket(Thread.currentThread(), true);
+                tickets.add(ticket);
+            }
+
+            ticket.deadlineNanos = deadline;
+            ticket.interruptible = interruptible;
+            ticket.stamp.set((ticket.stamp() & ~Ticket.STATE_MASK) + (Ticket.STATE_MASK + 1) | Ticket.ARMED);
+            if (deadline - nextWakeNanos < 0) {
+                LockSupport.unpark(thread);
+            }
+            return ticket;
+        }
+
+        /**
+         * @return 正常注销返回true；看门狗已经触发返回false，此时它造成的中断（如果有）已被清除
+         */
+        boolean disarm(Ticket ticket, long stamp) {
+            boolean completed = ticket.stamp.compareAndSet(stamp, stamp & ~Ticket.STATE_MASK);
+            if (!completed) {
+                // 等看门狗发出中断后再清除，避免中断落在调用返回之后
+                while (Ticket.state(ticket.stamp()) != Ticket.INTERRUPTED) {
+                    Thread.yield();
+                }
+                if (ticket.interruptible) {
+                    Thread.interrupted();
+                }
+                ticket.stamp.set(stamp & ~Ticket.STATE_MASK);
+            }
+            if (ticket.temporary) {
+                ticket.retired = true;
+            }
+            return completed;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long now = System.nanoTime();
+                nextWakeNanos = now + SCANNING;
+                long next = now + MAX_PARK_NANOS;
+                for (Iterator<Ticket> it = tickets.iterator(); it.hasNext(); ) {
+                    Ticket ticket = it.next();
+                    long stamp = ticket.stamp();
+                    if (Ticket.state(stamp) != Ticket.ARMED) {
+                        if (ticket.retired || (Ticket.state(stamp) == Ticket.IDLE && !ticket.owner.isAlive())) {
+                            it.remove();
+                        }
+                        continue;
+                    }
+                    long deadline = ticket.deadlineNanos;
+                    if (deadline - now <= 0) {
+                        long fired = (stamp & ~Ticket.STATE_MASK) | Ticket.FIRED;
+                        if (ticket.stamp.compareAndSet(stamp, fired)) {
+                            if (ticket.interruptible) {
+                                ticket.owner.interrupt();
+                            }
+                            ticket.stamp.set((stamp & ~Ticket.STATE_MASK) | Ticket.INTERRUPTED);
+                        }
+                    } else if (deadline - next < 0) {
+                        next = deadline;
+                    }
+                }
+                nextWakeNanos = next;
+                long parkNanos = next - System.nanoTime();
+                if (parkNanos > 0) {
+                    LockSupport.parkNanos(this, parkNanos);
+                }
+                // 看门狗线程不响应中断
+                Thread.interrupted();
+            }
+        }
+    }
+}
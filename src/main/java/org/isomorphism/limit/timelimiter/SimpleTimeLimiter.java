@@ -1,24 +1,26 @@
 package org.isomorphism.limit.timelimiter;
 
 import com.google.common.collect.ObjectArrays;
-import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ExecutionError;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.common.util.concurrent.UncheckedTimeoutException;
 import com.google.common.util.concurrent.Uninterruptibles;
 
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.*;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * TimeLimiter使用{@link ExecutorService}在后台运行方法调用。 如果给定的方法调用的时间限制到期，则运行该调用的线程将被中断。
+ * <p>
+ * 嵌套在另一个限时调用内的调用继承外层的{@link Deadline}：超时时间不超过外层剩余的时间，外层超时或被中断时内层的调用一并取消。
  *
  * @since 1.0
  */
@@ -38,14 +40,22 @@ public class SimpleTimeLimiter implements TimeLimiter {
     }
 
     /**
-     * 使用{@link Executors＃newCachedThreadPool（）}构造一个TimeLimiter实例来执行代理方法调用。
+     * 使用默认的执行器构造一个TimeLimiter实例来执行代理方法调用：Java 21及以上为每个任务一个虚拟线程，
+     * 更早的版本为{@link Executors#newCachedThreadPool()}。
      * <p>
      * <p>警告：使用有限的执行者可能会适得其反！ 如果线程池充满，任何时间呼叫者花费等待线程可能会计入其时间限制，在这种情况下，在调用目标方法之前，调用甚至可能会超时。
      *
-     * @deprecated 使用{@code Executors.newCachedThreadPool（）}替代{@link #create（ExecutorService）}。
+     * @deprecated 使用{@link #create()}，或者{@code Executors.newCachedThreadPool（）}替代{@link #create（ExecutorService）}。
      */
     SimpleTimeLimiter() {
-        this(Executors.newCachedThreadPool());
+        this(DefaultExecutors.newTimeLimiterExecutor());
+    }
+
+    /**
+     * 使用默认的执行器创建一个TimeLimiter实例：Java 21及以上为每个任务一个虚拟线程，更早的版本为{@link Executors#newCachedThreadPool()}。
+     */
+    public static TimeLimiter create() {
+        return new SimpleTimeLimiter();
     }
 
     /**
@@ -59,32 +69,8 @@ public class SimpleTimeLimiter implements TimeLimiter {
     }
 
     @Override
-    public <T> T newProxy(final T target, Class<T> interfaceType, final long timeoutDuration, final TimeUnit timeoutUnit) {
-        checkNotNull(target);
-        checkNotNull(interfaceType);
-        checkNotNull(timeoutUnit);
-        checkPositiveTimeout(timeoutDuration);
-        checkArgument(interfaceType.isInterface(), "interfaceType must be an interface type");
-
-        final Set<Method> interruptibleMethods = findInterruptibleMethods(interfaceType);
-
-        InvocationHandler handler = new InvocationHandler() {
-            @Override
-            public Object invoke(Object obj, final Method method, final Object[] args) throws Throwable {
-                Callable<Object> callable = new Callable<Object>() {
-                    @Override
-                    public Object call() throws Exception {
-                        try {
-                            return method.invoke(target, args);
-                        } catch (InvocationTargetException e) {
-                            throw throwCause(e, false /* combineStackTraces */);
-                        }
-                    }
-                };
-                return callWithTimeout(callable, timeoutDuration, timeoutUnit, interruptibleMethods.contains(method));
-            }
-        };
-        return newProxy(interfaceType, handler);
+    public <T> T newProxy(T target, Class<T> interfaceType, long timeoutDuration, TimeUnit timeoutUnit) {
+        return ProxyBuilder.newBuilder(this, target, interfaceType).withTimeout(timeoutDuration, timeoutUnit).build();
     }
 
     @Deprecated
@@ -94,25 +80,34 @@ public class SimpleTimeLimiter implements TimeLimiter {
         checkNotNull(timeoutUnit);
         checkPositiveTimeout(timeoutDuration);
 
-        Future<T> future = executor.submit(callable);
-
+        Deadline deadline;
         try {
-            if (isInterruptible) {
-                try {
-                    return future.get(timeoutDuration, timeoutUnit);
-                } catch (InterruptedException e) {
-                    future.cancel(true);
-                    throw e;
-                }
-            } else {
-                return Uninterruptibles.getUninterruptibly(future, timeoutDuration, timeoutUnit);
-            }
-        } catch (ExecutionException e) {
-            throw throwCause(e, true /* combineStackTraces */);
+            deadline = Deadline.start(timeoutUnit.toNanos(timeoutDuration));
         } catch (TimeoutException e) {
-            future.cancel(true);
             throw new UncheckedTimeoutException(e);
         }
+        try {
+            Future<T> future = submit(callable, deadline);
+            try {
+                if (isInterruptible) {
+                    try {
+                        return future.get(deadline.timeoutNanos(), NANOSECONDS);
+                    } catch (InterruptedException e) {
+                        deadline.cancel();
+                        throw e;
+                    }
+                } else {
+                    return Uninterruptibles.getUninterruptibly(future, deadline.timeoutNanos(), NANOSECONDS);
+                }
+            } catch (ExecutionException e) {
+                throw throwCause(e, true /* combineStackTraces */);
+            } catch (TimeoutException | CancellationException e) {
+                deadline.cancel();
+                throw new UncheckedTimeoutException(e);
+            }
+        } finally {
+            deadline.close();
+        }
     }
 
     @Override
@@ -122,16 +117,22 @@ public class SimpleTimeLimiter implements TimeLimiter {
         checkNotNull(timeoutUnit);
         checkPositiveTimeout(timeoutDuration);
 
-        Future<T> future = executor.submit(callable);
-
+        Deadline deadline = Deadline.start(timeoutUnit.toNanos(timeoutDuration));
         try {
-            return future.get(timeoutDuration, timeoutUnit);
-        } catch (InterruptedException | TimeoutException e) {
-            future.cancel(true /* mayInterruptIfRunning */);
-            throw e;
-        } catch (ExecutionException e) {
-            wrapAndThrowExecutionExceptionOrError(e.getCause());
-            throw new AssertionError();
+            Future<T> future = submit(callable, deadline);
+            try {
+                return future.get(deadline.timeoutNanos(), NANOSECONDS);
+            } catch (InterruptedException | TimeoutException e) {
+                deadline.cancel();
+                throw e;
+            } catch (CancellationException e) {
+                throw cancelled(e);
+            } catch (ExecutionException e) {
+                wrapAndThrowExecutionExceptionOrError(e.getCause());
+                throw new AssertionError();
+            }
+        } finally {
+            deadline.close();
         }
     }
 
@@ -141,16 +142,22 @@ public class SimpleTimeLimiter implements TimeLimiter {
         checkNotNull(timeoutUnit);
         checkPositiveTimeout(timeoutDuration);
 
-        Future<T> future = executor.submit(callable);
-
+        Deadline deadline = Deadline.start(timeoutUnit.toNanos(timeoutDuration));
         try {
-            return Uninterruptibles.getUninterruptibly(future, timeoutDuration, timeoutUnit);
-        } catch (TimeoutException e) {
-            future.cancel(true /* mayInterruptIfRunning */);
-            throw e;
-        } catch (ExecutionException e) {
-            wrapAndThrowExecutionExceptionOrError(e.getCause());
-            throw new AssertionError();
+            Future<T> future = submit(callable, deadline);
+            try {
+                return Uninterruptibles.getUninterruptibly(future, deadline.timeoutNanos(), NANOSECONDS);
+            } catch (TimeoutException e) {
+                deadline.cancel();
+                throw e;
+            } catch (CancellationException e) {
+                throw cancelled(e);
+            } catch (ExecutionException e) {
+                wrapAndThrowExecutionExceptionOrError(e.getCause());
+                throw new AssertionError();
+            }
+        } finally {
+            deadline.close();
         }
     }
 
@@ -160,16 +167,22 @@ public class SimpleTimeLimiter implements TimeLimiter {
         checkNotNull(timeoutUnit);
         checkPositiveTimeout(timeoutDuration);
 
-        Future<?> future = executor.submit(runnable);
-
+        Deadline deadline = Deadline.start(timeoutUnit.toNanos(timeoutDuration));
         try {
-            future.get(timeoutDuration, timeoutUnit);
-        } catch (InterruptedException | TimeoutException e) {
-            future.cancel(true /* mayInterruptIfRunning */);
-            throw e;
-        } catch (ExecutionException e) {
-            wrapAndThrowRuntimeExecutionExceptionOrError(e.getCause());
-            throw new AssertionError();
+            Future<?> future = submit(Executors.callable(runnable), deadline);
+            try {
+                future.get(deadline.timeoutNanos(), NANOSECONDS);
+            } catch (InterruptedException | TimeoutException e) {
+                deadline.cancel();
+                throw e;
+            } catch (CancellationException e) {
+                throw cancelled(e);
+            } catch (ExecutionException e) {
+                wrapAndThrowRuntimeExecutionExceptionOrError(e.getCause());
+                throw new AssertionError();
+            }
+        } finally {
+            deadline.close();
         }
     }
 
@@ -179,20 +192,148 @@ public class SimpleTimeLimiter implements TimeLimiter {
         checkNotNull(timeoutUnit);
         checkPositiveTimeout(timeoutDuration);
 
-        Future<?> future = executor.submit(runnable);
+        Deadline deadline = Deadline.start(timeoutUnit.toNanos(timeoutDuration));
+        try {
+            Future<?> future = submit(Executors.callable(runnable), deadline);
+            try {
+                Uninterruptibles.getUninterruptibly(future, deadline.timeoutNanos(), NANOSECONDS);
+            } catch (TimeoutException e) {
+                deadline.cancel();
+                throw e;
+            } catch (CancellationException e) {
+                throw cancelled(e);
+            } catch (ExecutionException e) {
+                wrapAndThrowRuntimeExecutionExceptionOrError(e.getCause());
+                throw new AssertionError();
+            }
+        } finally {
+            deadline.close();
+        }
+    }
+
+    @Override
+    public <T> BatchResult<T> invokeAllWithTimeout(Collection<? extends Callable<T>> tasks, long timeoutDuration, TimeUnit timeoutUnit)
+            throws InterruptedException {
+        checkNotNull(tasks);
+        checkNotNull(timeoutUnit);
+        checkPositiveTimeout(timeoutDuration);
 
+        BatchResult<T> result = new BatchResult<T>(tasks.size());
+        Deadline deadline;
         try {
-            Uninterruptibles.getUninterruptibly(future, timeoutDuration, timeoutUnit);
+            deadline = Deadline.start(timeoutUnit.toNanos(timeoutDuration));
         } catch (TimeoutException e) {
-            future.cancel(true /* mayInterruptIfRunning */);
-            throw e;
-        } catch (ExecutionException e) {
-            wrapAndThrowRuntimeExecutionExceptionOrError(e.getCause());
+            for (int i = 0; i < tasks.size(); i++) {
+                result.timedOut(i);
+            }
+            return result;
+        }
+        try {
+            CompletionService<T> completion = new ExecutorCompletionService<T>(executor);
+            List<Future<T>> futures = submitAll(completion, tasks, deadline);
+            try {
+                for (int pending = futures.size(); pending > 0; pending--) {
+                    if (completion.poll(deadline.timeoutNanos(), NANOSECONDS) == null) {
+                        break;
+                    }
+                }
+            } finally {
+                // 取消没能按时完成的任务
+                deadline.cancel();
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Future<T> future = futures.get(i);
+                if (!future.isDone() || future.isCancelled()) {
+                    result.timedOut(i);
+                    continue;
+                }
+                try {
+                    result.succeeded(i, Uninterruptibles.getUninterruptibly(future));
+                } catch (ExecutionException e) {
+                    result.failed(i, e.getCause());
+                }
+            }
+            return result;
+        } finally {
+            deadline.close();
+        }
+    }
+
+    @Override
+    public <T> T invokeAnyWithTimeout(Collection<? extends Callable<T>> tasks, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException,
+            InterruptedException, ExecutionException {
+        checkNotNull(tasks);
+        checkArgument(!tasks.isEmpty(), "tasks must not be empty");
+        checkNotNull(timeoutUnit);
+        checkPositiveTimeout(timeoutDuration);
+
+        Deadline deadline = Deadline.start(timeoutUnit.toNanos(timeoutDuration));
+        try {
+            CompletionService<T> completion = new ExecutorCompletionService<T>(executor);
+            List<Future<T>> futures = submitAll(completion, tasks, deadline);
+            ExecutionException last = null;
+            try {
+                for (int pending = futures.size(); pending > 0; pending--) {
+                    Future<T> done = completion.poll(deadline.timeoutNanos(), NANOSECONDS);
+                    if (done == null) {
+                        throw new TimeoutException("no task succeeded within " + timeoutDuration + " " + timeoutUnit);
+                    }
+                    try {
+                        return done.get();
+                    } catch (ExecutionException e) {
+                        last = e;
+                    } catch (CancellationException e) {
+                        throw cancelled(e);
+                    }
+                }
+            } finally {
+                // 取消其余的任务
+                deadline.cancel();
+            }
+            wrapAndThrowExecutionExceptionOrError(last.getCause());
             throw new AssertionError();
+        } finally {
+            deadline.close();
+        }
+    }
+
+    /**
+     * 提交所有任务，任何一个被拒绝时取消已经提交的任务
+     */
+    private <T> List<Future<T>> submitAll(CompletionService<T> completion, Collection<? extends Callable<T>> tasks, Deadline deadline) {
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                Future<T> future = completion.submit(deadline.wrap(task));
+                deadline.bind(future);
+                futures.add(future);
+            }
+        } catch (RuntimeException e) {
+            deadline.cancel();
+            throw e;
         }
+        return futures;
     }
 
-    private static Exception throwCause(Exception e, boolean combineStackTraces) throws Exception {
+    /**
+     * 在执行器上以deadline为截止时间执行callable，deadline被取消时任务也会被取消
+     */
+    private <T> Future<T> submit(Callable<T> callable, Deadline deadline) {
+        Future<T> future = executor.submit(deadline.wrap(callable));
+        deadline.bind(future);
+        return future;
+    }
+
+    /**
+     * 任务只会因为外层的截止时间被取消而取消，对调用者来说等同于超时
+     */
+    private static TimeoutException cancelled(CancellationException e) {
+        TimeoutException timeout = new TimeoutException("cancelled by an enclosing deadline");
+        timeout.initCause(e);
+        return timeout;
+    }
+
+    static Exception throwCause(Exception e, boolean combineStackTraces) throws Exception {
         Throwable cause = e.getCause();
         if (cause == null) {
             throw e;
@@ -211,33 +352,13 @@ public class SimpleTimeLimiter implements TimeLimiter {
         throw e;
     }
 
-    private static Set<Method> findInterruptibleMethods(Class<?> interfaceType) {
-        Set<Method> set = Sets.newHashSet();
-        for (Method m : interfaceType.getMethods()) {
-            if (declaresInterruptedEx(m)) {
-                set.add(m);
-            }
-        }
-        return set;
-    }
-
-    private static boolean declaresInterruptedEx(Method method) {
-        for (Class<?> exType : method.getExceptionTypes()) {
-            // debate: == or isAssignableFrom?
-            if (exType == InterruptedException.class) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     // TODO: 替换为common.reflect的版本，如果到时是开源的
-    private static <T> T newProxy(Class<T> interfaceType, InvocationHandler handler) {
+    static <T> T newProxy(Class<T> interfaceType, InvocationHandler handler) {
         Object object = Proxy.newProxyInstance(interfaceType.getClassLoader(), new Class<?>[]{interfaceType}, handler);
         return interfaceType.cast(object);
     }
 
-    private void wrapAndThrowExecutionExceptionOrError(Throwable cause) throws ExecutionException {
+    static void wrapAndThrowExecutionExceptionOrError(Throwable cause) throws ExecutionException {
         if (cause instanceof Error) {
             throw new ExecutionError((Error) cause);
         } else if (cause instanceof RuntimeException) {
@@ -247,7 +368,7 @@ public class SimpleTimeLimiter implements TimeLimiter {
         }
     }
 
-    private void wrapAndThrowRuntimeExecutionExceptionOrError(Throwable cause) {
+    static void wrapAndThrowRuntimeExecutionExceptionOrError(Throwable cause) {
         if (cause instanceof Error) {
             throw new ExecutionError((Error) cause);
         } else {
@@ -255,7 +376,7 @@ public class SimpleTimeLimiter implements TimeLimiter {
         }
     }
 
-    private static void checkPositiveTimeout(long timeoutDuration) {
+    static void checkPositiveTimeout(long timeoutDuration) {
         checkArgument(timeoutDuration > 0, "timeout must be positive: %s", timeoutDuration);
     }
 }
@@ -2,6 +2,7 @@ package org.isomorphism.limit.timelimiter;
 
 import com.google.common.util.concurrent.UncheckedTimeoutException;
 
+import java.util.Collection;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -109,4 +110,32 @@ public interface TimeLimiter {
      * @throws TimeoutException             如果达到时间限制
      */
     void runUninterruptiblyWithTimeout(Runnable runnable, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException;
+
+    /**
+     * 同时执行一批Callable，所有任务共用一个截止时间。截止时间到达时还没完成的任务被取消并记为超时，
+     * 已经完成的任务的结果照常返回。调用者线程只等待一次，不会为每个任务阻塞一个线程。
+     *
+     * @param tasks           待执行的任务
+     * @param timeoutDuration 整批任务的时间限制
+     * @param timeoutUnit     timeoutDuration的时间单位
+     * @return 按提交顺序排列的每个任务的结果
+     * @throws InterruptedException 如果当前线程在等待期间中断，此时所有任务都被取消
+     */
+    <T> BatchResult<T> invokeAllWithTimeout(Collection<? extends Callable<T>> tasks, long timeoutDuration, TimeUnit timeoutUnit)
+            throws InterruptedException;
+
+    /**
+     * 同时执行一批Callable，返回最先成功的任务的结果，并取消其余的任务。
+     *
+     * @param tasks           待执行的任务，不能为空
+     * @param timeoutDuration 整批任务的时间限制
+     * @param timeoutUnit     timeoutDuration的时间单位
+     * @return 最先成功的任务的结果
+     * @throws TimeoutException     截止时间前没有任务成功
+     * @throws InterruptedException 如果当前线程在等待期间中断
+     * @throws ExecutionException   所有任务都失败了，cause是最后一个失败的任务抛出的异常；与{@link #callWithTimeout(Callable, long, TimeUnit)}一样，
+     *                              RuntimeException和Error分别包装为UncheckedExecutionException和ExecutionError
+     */
+    <T> T invokeAnyWithTimeout(Collection<? extends Callable<T>> tasks, long timeoutDuration, TimeUnit timeoutUnit) throws TimeoutException,
+            InterruptedException, ExecutionException;
 }
@@ -0,0 +1,23 @@
+package org.isomorphism.limit.timelimiter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 代理方法的超时时间，由{@link ProxyBuilder}在创建代理时读取。
+ * <p>
+ * 标在接口上时作为所有方法的默认值；标在方法上的优先。二者都优先于{@link ProxyBuilder#withTimeout(long, TimeUnit)}，
+ * 但{@link ProxyBuilder#withTimeout(String, long, TimeUnit)}为某个方法单独指定的超时时间优先于注解。
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Timeout {
+    long value();
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
@@ -0,0 +1,50 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.isomorphism.limit.timelimiter.SimpleTimeLimiter.checkPositiveTimeout;
+
+/**
+ * 给已有的Future加上超时：到期时结果以{@link TimeoutException}失败，并取消（中断）底层的任务。
+ * <p>
+ * 所有的截止时间共用一个守护线程的定时器，等待超时不占用任何线程；提前完成的Future会把定时任务从队列中移除。
+ * CompletableFuture的版本在{@link CompletableTimeoutFutures}中，只在Java 8及以上可用。
+ */
+public final class TimeoutFutures {
+
+    private TimeoutFutures() {
+    }
+
+    private static final class TimerHolder {
+        static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+        private static ScheduledThreadPoolExecutor newTimer() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("time-limiter-timer").build());
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
+
+    static ScheduledThreadPoolExecutor timer() {
+        return TimerHolder.TIMER;
+    }
+
+    /**
+     * 返回一个在timeout内跟随delegate完成的ListenableFuture，超时则失败并取消delegate。
+     * 取消返回的Future也会取消delegate。
+     */
+    public static <V> ListenableFuture<V> withTimeout(ListenableFuture<V> delegate, long timeoutDuration, TimeUnit timeoutUnit) {
+        checkNotNull(delegate);
+        checkNotNull(timeoutUnit);
+        checkPositiveTimeout(timeoutDuration);
+        return Futures.withTimeout(delegate, timeoutDuration, timeoutUnit, timer());
+    }
+}
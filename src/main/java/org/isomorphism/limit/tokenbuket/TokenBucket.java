@@ -81,5 +81,10 @@ public interface TokenBucket {
      */
     void refill(long numTokens);
 
-
+    /**
+     * 返回令牌桶状态的只读快照，不加锁，不触发补充，不修改任何状态。
+     *
+     * @return 当前状态的快照
+     */
+    TokenBucketSnapshot snapshot();
 }
@@ -0,0 +1,68 @@
+package org.isomorphism.limit.tokenbuket;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 令牌桶状态的只读快照，用于监控。获取快照不加锁，也不会触发补充或者修改令牌桶的任何状态，
+ * 所以频繁地轮询也不会拖慢消耗令牌的一方。各个值分别读取，彼此之间可能有细微的时间差。
+ *
+ * @see TokenBucket#snapshot()
+ */
+public final class TokenBucketSnapshot {
+    private static final long UNKNOWN = -1L;
+
+    private final long capacity;
+    private final long numTokens;
+    private final long availableTokens;
+    private final long nanosUntilNextRefill;
+
+    /**
+     * @param nanosUntilNextRefill 距离下一次补充的纳秒数，不知道时为负数
+     */
+    public TokenBucketSnapshot(long capacity, long numTokens, long availableTokens, long nanosUntilNextRefill) {
+        this.capacity = capacity;
+        this.numTokens = numTokens;
+        this.availableTokens = availableTokens;
+        this.nanosUntilNextRefill = nanosUntilNextRefill < 0 ? UNKNOWN : nanosUntilNextRefill;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 令牌桶中记录的令牌数，不包括到现在为止应当补充但还没有补充的令牌
+     */
+    public long getNumTokens() {
+        return numTokens;
+    }
+
+    /**
+     * 按当前时间推算的可用令牌数，包括应当补充但还没有补充的令牌。补充策略有状态、无法在不修改状态的情况下推算时，等于{@link #getNumTokens()}
+     */
+    public long getAvailableTokens() {
+        return availableTokens;
+    }
+
+    /**
+     * 是否知道下一次补充的时间
+     */
+    public boolean isNextRefillKnown() {
+        return nanosUntilNextRefill != UNKNOWN;
+    }
+
+    /**
+     * 距离下一次补充的时间，不知道时返回-1
+     */
+    public long getDurationUntilNextRefill(TimeUnit unit) {
+        return isNextRefillKnown() ? unit.convert(nanosUntilNextRefill, NANOSECONDS) : UNKNOWN;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBucketSnapshot[capacity=" + capacity + ", numTokens=" + numTokens + ", availableTokens=" + availableTokens
+                + ", nanosUntilNextRefill=" + nanosUntilNextRefill + "]";
+    }
+}
@@ -0,0 +1,163 @@
+package org.isomorphism.limit.tokenbuket.impl;
+
+import com.google.common.base.Ticker;
+import org.isomorphism.limit.tokenbuket.TokenBucket;
+import org.isomorphism.limit.tokenbuket.TokenBucketSnapshot;
+import org.isomorphism.limit.tokenbuket.strategy.RefillFunction;
+import org.isomorphism.limit.tokenbuket.strategy.RefillFunctions;
+import org.isomorphism.limit.tokenbuket.strategy.SleepStrategy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 使用无状态{@link RefillFunction}的令牌桶：令牌数和补充时间戳保存在同一个不可变对象中，补充和消耗是一次CAS，不加锁。
+ * <p>
+ * 补充的状态不在策略中，同一个RefillFunction可以给任意多个令牌桶使用，参见{@link KeyedTokenBuckets}。
+ * <p>
+ * 由{@link RefillFunctions#fromStrategy}适配的有状态函数每次调用都会取走策略中的令牌，补充的结果不能丢弃，
+ * 因此这种情况下所有修改状态的操作改为在锁内进行。
+ */
+public class AtomicTokenBucket implements TokenBucket {
+    private final long capacity;
+    private final RefillFunction refillFunction;
+    private final SleepStrategy sleepStrategy;
+    private final Ticker ticker;
+    private final AtomicReference<TokenState> state;
+
+    /**
+     * 补充函数有状态时使用，否则为null
+     */
+    private final ReentrantLock lock;
+
+    public AtomicTokenBucket(long capacity, long initialTokens, RefillFunction refillFunction, SleepStrategy sleepStrategy, Ticker ticker) {
+        checkArgument(capacity > 0);
+        checkArgument(initialTokens <= capacity);
+
+        this.capacity = capacity;
+        this.refillFunction = checkNotNull(refillFunction);
+        this.sleepStrategy = checkNotNull(sleepStrategy);
+        this.ticker = checkNotNull(ticker);
+        this.state = new AtomicReference<>(new TokenState(initialTokens, ticker.read()));
+        this.lock = RefillFunctions.isStateless(refillFunction) ? null : new ReentrantLock();
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getNumTokens() {
+        return refilled().numTokens;
+    }
+
+    @Override
+    public long getDurationUntilNextRefill(TimeUnit unit) throws UnsupportedOperationException {
+        TokenState current = state.get();
+        return unit.convert(refillFunction.nanosUntilNextRefill(current.lastRefillNanos, current.numTokens, ticker.read()), NANOSECONDS);
+    }
+
+    /**
+     * 按补充函数推算可用令牌数，但不保存推算的结果
+     */
+    @Override
+    public TokenBucketSnapshot snapshot() {
+        return state.get().snapshot(refillFunction, capacity, ticker.read());
+    }
+
+    @Override
+    public boolean tryConsume() {
+        return tryConsume(1);
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens) {
+        checkArgument(numTokens > 0, "Number of tokens to consume must be positive");
+        checkArgument(numTokens <= capacity, "Number of tokens to consume must be less than the capacity of the bucket.");
+
+        if (lock != null) {
+            lock.lock();
+            try {
+                TokenState refilled = state.get().refill(refillFunction, capacity, ticker.read());
+                TokenState next = refilled.consume(numTokens);
+                state.set(next == null ? refilled : next);
+                return next != null;
+            } finally {
+                lock.unlock();
+            }
+        }
+        while (true) {
+            TokenState current = state.get();
+            TokenState refilled = current.refill(refillFunction, capacity, ticker.read());
+            TokenState next = refilled.consume(numTokens);
+            if (next == null) {
+                // 令牌不够时也保存补充的结果，失败了也没关系，下一次会重新计算
+                if (refilled != current) {
+                    state.compareAndSet(current, refilled);
+                }
+                return false;
+            }
+            if (state.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void consume() {
+        consume(1);
+    }
+
+    @Override
+    public void consume(long numTokens) {
+        while (!tryConsume(numTokens)) {
+            sleepStrategy.sleep();
+        }
+    }
+
+    @Override
+    public void refill(long numTokens) {
+        long newTokens = Math.min(capacity, Math.max(0, numTokens));
+        if (lock != null) {
+            lock.lock();
+        }
+        try {
+            while (true) {
+                TokenState current = state.get();
+                if (state.compareAndSet(current, current.add(newTokens, capacity))) {
+                    return;
+                }
+            }
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private TokenState refilled() {
+        if (lock != null) {
+            lock.lock();
+            try {
+                TokenState refilled = state.get().refill(refillFunction, capacity, ticker.read());
+                state.set(refilled);
+                return refilled;
+            } finally {
+                lock.unlock();
+            }
+        }
+        while (true) {
+            TokenState current = state.get();
+            TokenState refilled = current.refill(refillFunction, capacity, ticker.read());
+            if (refilled == current || state.compareAndSet(current, refilled)) {
+                return refilled;
+            }
+        }
+    }
+}
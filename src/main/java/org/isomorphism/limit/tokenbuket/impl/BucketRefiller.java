@@ -0,0 +1,153 @@
+package org.isomorphism.limit.tokenbuket.impl;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 推模式的令牌补充器：由一个后台线程按固定节拍给所有登记的{@link PushRefilledTokenBucket}补充令牌。
+ * <p>
+ * 每个节拍只读一次时钟，按距离上一个节拍实际经过的时间给每个桶补充，成千上万个桶共用这一次读数。
+ * 消耗令牌的一方不再读时钟，也不进入补充策略的锁，只做一次原子递减。代价是令牌在节拍上成批到达，误差不超过一个节拍。
+ * <p>
+ * 不调用{@link #start(long, TimeUnit)}时，可以在自己的调度器中调用{@link #tick()}。
+ * <p>
+ * 补充器只持有令牌桶的弱引用，调用者不再引用的令牌桶被回收后，在下一个节拍中自动注销。
+ */
+public final class BucketRefiller {
+
+    private static final long DEFAULT_TICK_NANOS = MILLISECONDS.toNanos(1L);
+
+    private static final class SharedHolder {
+        static final BucketRefiller SHARED = newShared();
+
+        private static BucketRefiller newShared() {
+            BucketRefiller refiller = new BucketRefiller(Ticker.systemTicker());
+            refiller.start(DEFAULT_TICK_NANOS, NANOSECONDS);
+            return refiller;
+        }
+    }
+
+    private final Ticker ticker;
+    private final Set<BucketReference> buckets = Collections.newSetFromMap(new ConcurrentHashMap<BucketReference, Boolean>());
+    private final ReentrantLock tickLock = new ReentrantLock();
+    private long lastTickNanos;
+    private volatile long tickNanos;
+    private volatile long nextTickNanos;
+    private ScheduledExecutorService executor;
+
+    public BucketRefiller(Ticker ticker) {
+        this.ticker = checkNotNull(ticker);
+        this.lastTickNanos = ticker.read();
+    }
+
+    /**
+     * 返回所有令牌桶共用的补充器，节拍为1毫秒
+     */
+    public static BucketRefiller shared() {
+        return SharedHolder.SHARED;
+    }
+
+    /**
+     * 在一个守护线程上按固定节拍补充令牌
+     */
+    public synchronized BucketRefiller start(long tick, TimeUnit unit) {
+        checkArgument(tick > 0, "tick must be positive: %s", tick);
+        checkState(executor == null, "refiller already started");
+        this.tickNanos = unit.toNanos(tick);
+        this.nextTickNanos = ticker.read() + tickNanos;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("token-bucket-refiller-%d").build());
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, tickNanos, tickNanos, NANOSECONDS);
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * 停止后台线程，登记的令牌桶不再得到补充
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 立即给所有登记的令牌桶补充一次，补充量按距离上一次补充经过的时间计算
+     */
+    public void tick() {
+        tickLock.lock();
+        try {
+            long now = ticker.read();
+            long elapsedNanos = now - lastTickNanos;
+            lastTickNanos = now;
+            nextTickNanos = now + tickNanos;
+            for (Iterator<BucketReference> it = buckets.iterator(); it.hasNext(); ) {
+                PushRefilledTokenBucket bucket = it.next().get();
+                if (bucket == null) {
+                    it.remove();
+                } else if (elapsedNanos > 0) {
+                    bucket.onTick(elapsedNanos);
+                }
+            }
+        } finally {
+            tickLock.unlock();
+        }
+    }
+
+    /**
+     * 返回当前登记的令牌桶数，已经被回收但还没有经过节拍的令牌桶也计算在内
+     */
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    /**
+     * 距离下一个节拍的时间，没有启动后台线程时抛出UnsupportedOperationException
+     */
+    long getDurationUntilNextTick(TimeUnit unit) {
+        if (tickNanos == 0) {
+            throw new UnsupportedOperationException("refiller is driven manually");
+        }
+        return unit.convert(Math.max(0, nextTickNanos - ticker.read()), NANOSECONDS);
+    }
+
+    BucketReference register(PushRefilledTokenBucket bucket) {
+        BucketReference reference = new BucketReference(bucket);
+        buckets.add(reference);
+        return reference;
+    }
+
+    void unregister(BucketReference reference) {
+        buckets.remove(reference);
+    }
+
+    /**
+     * 登记用的弱引用，按引用本身而不是令牌桶比较，令牌桶被回收后仍能从集合中移除
+     */
+    static final class BucketReference extends WeakReference<PushRefilledTokenBucket> {
+        BucketReference(PushRefilledTokenBucket bucket) {
+            super(bucket);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.isomorphism.limit.tokenbuket.impl;
+
+import com.google.common.base.Ticker;
+import org.isomorphism.limit.tokenbuket.TokenBucket;
+import org.isomorphism.limit.tokenbuket.TokenBucketSnapshot;
+import org.isomorphism.limit.tokenbuket.strategy.RefillFunction;
+import org.isomorphism.limit.tokenbuket.strategy.RefillFunctions;
+import org.isomorphism.limit.tokenbuket.strategy.SleepStrategy;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 按键区分的一组令牌桶，共用容量和一个无状态的{@link RefillFunction}。
+ * <p>
+ * 每个键只保存一个令牌数和时间戳的不可变对象，用{@link ConcurrentMap#replace(Object, Object, Object)}做CAS，
+ * 适合按用户、IP等维度给海量的键限流。新的键从满桶开始；桶补满之后与新键没有区别，可以用{@link #cleanUp()}丢弃。
+ * <p>
+ * 补充函数必须是无状态的：{@link RefillFunctions#fromStrategy}适配的函数只能给一个令牌桶使用，
+ * 而且查询和清理时推算的补充结果会被丢弃。
+ */
+public final class KeyedTokenBuckets<K> {
+    private final long capacity;
+    private final RefillFunction refillFunction;
+    private final SleepStrategy sleepStrategy;
+    private final Ticker ticker;
+    private final ConcurrentMap<K, TokenState> states = new ConcurrentHashMap<>();
+
+    public KeyedTokenBuckets(long capacity, RefillFunction refillFunction, SleepStrategy sleepStrategy, Ticker ticker) {
+        checkArgument(capacity > 0);
+        this.capacity = capacity;
+        this.refillFunction = checkNotNull(refillFunction);
+        checkArgument(RefillFunctions.isStateless(refillFunction), "Keyed token buckets require a stateless refill function");
+        this.sleepStrategy = checkNotNull(sleepStrategy);
+        this.ticker = checkNotNull(ticker);
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public boolean tryConsume(K key, long numTokens) {
+        checkNotNull(key);
+        checkArgument(numTokens > 0, "Number of tokens to consume must be positive");
+        checkArgument(numTokens <= capacity, "Number of tokens to consume must be less than the capacity of the bucket.");
+
+        while (true) {
+            long now = ticker.read();
+            TokenState current = states.get(key);
+            if (current == null) {
+                if (states.putIfAbsent(key, new TokenState(capacity - numTokens, now)) == null) {
+                    return true;
+                }
+                continue;
+            }
+            TokenState refilled = current.refill(refillFunction, capacity, now);
+            TokenState next = refilled.consume(numTokens);
+            if (next == null) {
+                if (refilled != current) {
+                    states.replace(key, current, refilled);
+                }
+                return false;
+            }
+            if (states.replace(key, current, next)) {
+                return true;
+            }
+        }
+    }
+
+    public void consume(K key, long numTokens) {
+        while (!tryConsume(key, numTokens)) {
+            sleepStrategy.sleep();
+        }
+    }
+
+    public long getNumTokens(K key) {
+        checkNotNull(key);
+        TokenState current = states.get(key);
+        return current == null ? capacity : current.refill(refillFunction, capacity, ticker.read()).numTokens;
+    }
+
+    /**
+     * 返回指定键的令牌桶视图，视图本身不保存状态
+     */
+    public TokenBucket forKey(K key) {
+        return new KeyedTokenBucket(checkNotNull(key));
+    }
+
+    /**
+     * 返回当前保存了状态的键数
+     */
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * 扫描所有保存了状态的键，返回它们的快照。扫描不加锁也不修改状态，不会阻塞并发的消耗；
+     * 扫描期间新增或者被丢弃的键可能出现也可能不出现在结果中。
+     */
+    public Map<K, TokenBucketSnapshot> snapshot() {
+        long now = ticker.read();
+        Map<K, TokenBucketSnapshot> snapshots = new HashMap<>();
+        for (Map.Entry<K, TokenState> entry : states.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot(refillFunction, capacity, now));
+        }
+        return snapshots;
+    }
+
+    /**
+     * 丢弃已经补满的键，它们与新键没有区别
+     */
+    public void cleanUp() {
+        long now = ticker.read();
+        Iterator<Map.Entry<K, TokenState>> iterator = states.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, TokenState> entry = iterator.next();
+            TokenState current = entry.getValue();
+            if (current.refill(refillFunction, capacity, now).numTokens >= capacity) {
+                states.remove(entry.getKey(), current);
+            }
+        }
+    }
+
+    private final class KeyedTokenBucket implements TokenBucket {
+        private final K key;
+
+        KeyedTokenBucket(K key) {
+            this.key = key;
+        }
+
+        @Override
+        public long getCapacity() {
+            return capacity;
+        }
+
+        @Override
+        public long getNumTokens() {
+            return KeyedTokenBuckets.this.getNumTokens(key);
+        }
+
+        @Override
+        public long getDurationUntilNextRefill(TimeUnit unit) throws UnsupportedOperationException {
+            TokenState current = states.get(key);
+            if (current == null) {
+                return 0L;
+            }
+            return unit.convert(refillFunction.nanosUntilNextRefill(current.lastRefillNanos, current.numTokens, ticker.read()), NANOSECONDS);
+        }
+
+        @Override
+        public TokenBucketSnapshot snapshot() {
+            TokenState current = states.get(key);
+            if (current == null) {
+                return new TokenBucketSnapshot(capacity, capacity, capacity, 0L);
+            }
+            return current.snapshot(refillFunction, capacity, ticker.read());
+        }
+
+        @Override
+        public boolean tryConsume() {
+            return KeyedTokenBuckets.this.tryConsume(key, 1);
+        }
+
+        @Override
+        public boolean tryConsume(long numTokens) {
+            return KeyedTokenBuckets.this.tryConsume(key, numTokens);
+        }
+
+        @Override
+        public void consume() {
+            KeyedTokenBuckets.this.consume(key, 1);
+        }
+
+        @Override
+        public void consume(long numTokens) {
+            KeyedTokenBuckets.this.consume(key, numTokens);
+        }
+
+        @Override
+        public void refill(long numTokens) {
+            long newTokens = Math.min(capacity, Math.max(0, numTokens));
+            while (true) {
+                TokenState current = states.get(key);
+                if (current == null || states.replace(key, current, current.add(newTokens, capacity))) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -15,14 +15,18 @@
  */
 package org.isomorphism.limit.tokenbuket.impl;
 
+import org.isomorphism.limit.Reservation;
 import org.isomorphism.limit.tokenbuket.TokenBucket;
+import org.isomorphism.limit.tokenbuket.TokenBucketSnapshot;
 import org.isomorphism.limit.tokenbuket.strategy.RefillStrategy;
 import org.isomorphism.limit.tokenbuket.strategy.SleepStrategy;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * 令牌桶实现是一个漏斗桶，因为它具有有限的容量，任何增加的令牌将超出这个容量将“溢出”出来，并永远丢失。
@@ -31,12 +35,23 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * <p/>
  * 另外在这个实现中，退让CPU控制(yield cpu control)的方法封装在提供的{@code SleepStrategy}实例中。
  * 对于高性能应用程序，其中令牌快速重新填充，需要不让出CPU， 这个策略允许调用者为自己做出这个决定。
+ * <p/>
+ * 通过{@link Reservation}结算时补扣的令牌可能使桶欠账，欠账由之后补充的令牌偿还，期间{@link #getNumTokens()}返回0。
  */
 public class LeakyTokenBucket implements TokenBucket {
     private final long capacity;
     private final RefillStrategy refillStrategy;
     private final SleepStrategy sleepStrategy;
-    private long size;
+
+    /**
+     * 只在持有锁时修改，volatile使{@link #snapshot()}可以不加锁读取
+     */
+    private volatile long size;
+
+    /**
+     * 使用ReentrantLock而不是内置锁，持有锁时不会把虚拟线程钉在载体线程上
+     */
+    private final ReentrantLock lock = new ReentrantLock();
 
     public LeakyTokenBucket(long capacity, long initialTokens, RefillStrategy refillStrategy, SleepStrategy sleepStrategy) {
         checkArgument(capacity > 0);
@@ -64,10 +79,15 @@ public class LeakyTokenBucket implements TokenBucket {
      * @return 桶中当前的令牌数
      */
     @Override
-    public synchronized long getNumTokens() {
-        // 给予补充策略一个机会添加标记，使我们有一个准确的计数。
-        refill(refillStrategy.refill());
-        return size;
+    public long getNumTokens() {
+        lock.lock();
+        try {
+            // 给予补充策略一个机会添加标记，使我们有一个准确的计数。
+            refill(refillStrategy.refill());
+            return Math.max(0, size);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -97,19 +117,24 @@ public class LeakyTokenBucket implements TokenBucket {
      * @param numTokens 从桶中消耗的令牌数,必须是正数。
      * @return {@code true} 如果令牌被消费，否则{@code false}
      */
-    public synchronized boolean tryConsume(long numTokens) {
+    public boolean tryConsume(long numTokens) {
         checkArgument(numTokens > 0, "Number of tokens to consume must be positive");
         checkArgument(numTokens <= capacity, "Number of tokens to consume must be less than the capacity of the bucket.");
 
-        refill(refillStrategy.refill());
+        lock.lock();
+        try {
+            refill(refillStrategy.refill());
 
-        // Now try to consume some tokens
-        if (numTokens <= size) {
-            size -= numTokens;
-            return true;
-        }
+            // Now try to consume some tokens
+            if (numTokens <= size) {
+                size -= numTokens;
+                return true;
+            }
 
-        return false;
+            return false;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -134,13 +159,116 @@ public class LeakyTokenBucket implements TokenBucket {
         }
     }
 
+    /**
+     * 尝试预约指定数量的令牌，令牌不够时返回null。预约的令牌立即扣减，之后可以取消或者按实际用量结算。
+     *
+     * @param numTokens 预约的令牌数，通常是估计值，必须是正数。
+     * @return 预约，令牌不够时返回null
+     */
+    public Reservation tryReserve(long numTokens) {
+        return tryConsume(numTokens) ? new TokenReservation(numTokens) : null;
+    }
+
+    /**
+     * 预约指定数量的令牌，令牌不够时像{@link #consume(long)}一样阻塞。
+     *
+     * @param numTokens 预约的令牌数，通常是估计值，必须是正数。
+     */
+    public Reservation reserve(long numTokens) {
+        consume(numTokens);
+        return new TokenReservation(numTokens);
+    }
+
     /**
      * 用指定数量的令牌重新填充桶。 如果桶当前已满或接近容量，则可能会添加少于{@code numTokens}。
      *
      * @param numTokens 要添加到桶中的令牌数。
      */
-    public synchronized void refill(long numTokens) {
-        long newTokens = Math.min(capacity, Math.max(0, numTokens));
-        size = Math.max(0, Math.min(size + newTokens, capacity));
+    public void refill(long numTokens) {
+        lock.lock();
+        try {
+            long newTokens = Math.min(capacity, Math.max(0, numTokens));
+            // 欠账时size为负数，补充的令牌先偿还欠账
+            size = Math.min(size + newTokens, capacity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 不加锁也不调用补充策略的{@code refill()}，可用令牌数等于记录的令牌数
+     */
+    @Override
+    public TokenBucketSnapshot snapshot() {
+        long numTokens = Math.max(0, size);
+        return new TokenBucketSnapshot(capacity, numTokens, numTokens, nanosUntilNextRefill(refillStrategy));
+    }
+
+    static long nanosUntilNextRefill(RefillStrategy refillStrategy) {
+        try {
+            return refillStrategy.getDurationUntilNextRefill(TimeUnit.NANOSECONDS);
+        } catch (UnsupportedOperationException e) {
+            return -1L;
+        }
+    }
+
+    private final class TokenReservation implements Reservation {
+        private long numTokens;
+        private boolean done;
+
+        TokenReservation(long numTokens) {
+            this.numTokens = numTokens;
+        }
+
+        @Override
+        public long getPermits() {
+            lock.lock();
+            try {
+                return numTokens;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 令牌在预约时已经扣减，不需要等待
+         */
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return 0L;
+        }
+
+        @Override
+        public boolean cancel() {
+            lock.lock();
+            try {
+                if (done) {
+                    return false;
+                }
+                done = true;
+                size = Math.min(size + numTokens, capacity);
+                numTokens = 0;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 退回的令牌不超过容量；补扣不等待，令牌不够时桶会欠账
+         */
+        @Override
+        public void settle(long actualTokens) {
+            checkArgument(actualTokens >= 0, "Number of actual tokens must not be negative");
+            lock.lock();
+            try {
+                checkState(!done, "reservation already cancelled or settled");
+                done = true;
+                size = Math.min(size + numTokens - actualTokens, capacity);
+                numTokens = actualTokens;
+            } finally {
+                lock.unlock();
+            }
+        }
     }
 }
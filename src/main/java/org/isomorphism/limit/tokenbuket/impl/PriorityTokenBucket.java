@@ -0,0 +1,277 @@
+package org.isomorphism.limit.tokenbuket.impl;
+
+import org.isomorphism.limit.tokenbuket.TokenBucket;
+import org.isomorphism.limit.tokenbuket.TokenBucketSnapshot;
+import org.isomorphism.limit.tokenbuket.strategy.RefillStrategy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 区分优先级的令牌桶：多个优先级共用一份容量，但低优先级只能用高优先级的预留份额以上的令牌。
+ * <p>
+ * 优先级从0开始，0最高。reserveFractions[p]是为优先级p及更高的请求预留的容量比例，
+ * 优先级q能用的令牌是当前令牌数减去所有比q高的优先级的预留之和。例如容量100、预留{0.2}时，
+ * 优先级1（批量任务）最多把桶用到还剩20个，这20个只有优先级0（交互请求）能用。
+ * <p>
+ * 补充、预留检查和扣减在同一次加锁内完成。阻塞等待的请求按优先级服务：有更高优先级的请求在等待时，
+ * 低优先级的请求既不能{@link #tryConsume(int, long)}成功，也不会在等待中被满足。
+ * 每个优先级有自己的Condition，令牌增加后只唤醒正在等待的最高优先级。
+ * <p>
+ * {@link TokenBucket}接口中不带优先级的方法按最低优先级处理。
+ */
+public class PriorityTokenBucket implements TokenBucket {
+    /**
+     * 补充策略不知道下一次补充的时间时，等待者隔这么久检查一次
+     */
+    private static final long DEFAULT_WAIT_NANOS = MILLISECONDS.toNanos(1L);
+
+    private final long capacity;
+    private final RefillStrategy refillStrategy;
+
+    /**
+     * floors[q]：优先级q必须留在桶里的令牌数
+     */
+    private final long[] floors;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition[] conditions;
+    private final int[] waiting;
+
+    /**
+     * 只在持有锁时修改，volatile使{@link #snapshot()}可以不加锁读取
+     */
+    private volatile long size;
+
+    /**
+     * @param capacity         容量
+     * @param initialTokens    初始令牌数
+     * @param refillStrategy   补充策略
+     * @param reserveFractions 为优先级0, 1, ...预留的容量比例，按四舍五入换算为令牌数，优先级的个数比它多1，总和必须小于1
+     */
+    public PriorityTokenBucket(long capacity, long initialTokens, RefillStrategy refillStrategy, double... reserveFractions) {
+        checkArgument(capacity > 0);
+        checkArgument(initialTokens <= capacity);
+        checkNotNull(reserveFractions);
+
+        this.capacity = capacity;
+        this.refillStrategy = checkNotNull(refillStrategy);
+        this.size = initialTokens;
+
+        int levels = reserveFractions.length + 1;
+        this.floors = new long[levels];
+        for (int p = 0; p < reserveFractions.length; p++) {
+            checkArgument(reserveFractions[p] >= 0.0, "reserve must not be negative: %s", reserveFractions[p]);
+            floors[p + 1] = floors[p] + Math.round(reserveFractions[p] * capacity);
+        }
+        checkArgument(floors[levels - 1] < capacity, "reserves must leave room for the lowest priority");
+        this.conditions = new Condition[levels];
+        for (int p = 0; p < levels; p++) {
+            conditions[p] = lock.newCondition();
+        }
+        this.waiting = new int[levels];
+    }
+
+    public int getPriorityLevels() {
+        return floors.length;
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getNumTokens() {
+        lock.lock();
+        try {
+            addTokens(refillStrategy.refill());
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 返回指定优先级当前能用的令牌数
+     */
+    public long getNumAvailableTokens(int priority) {
+        checkElementIndex(priority, floors.length);
+        lock.lock();
+        try {
+            addTokens(refillStrategy.refill());
+            return Math.max(size - floors[priority], 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getDurationUntilNextRefill(TimeUnit unit) throws UnsupportedOperationException {
+        return refillStrategy.getDurationUntilNextRefill(unit);
+    }
+
+    /**
+     * 不加锁也不调用补充策略的{@code refill()}，可用令牌数是最低优先级能用的令牌数
+     */
+    @Override
+    public TokenBucketSnapshot snapshot() {
+        long numTokens = size;
+        return new TokenBucketSnapshot(capacity, numTokens, Math.max(0, numTokens - floors[lowestPriority()]),
+                LeakyTokenBucket.nanosUntilNextRefill(refillStrategy));
+    }
+
+    @Override
+    public boolean tryConsume() {
+        return tryConsume(lowestPriority(), 1);
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens) {
+        return tryConsume(lowestPriority(), numTokens);
+    }
+
+    @Override
+    public void consume() {
+        consume(lowestPriority(), 1);
+    }
+
+    @Override
+    public void consume(long numTokens) {
+        consume(lowestPriority(), numTokens);
+    }
+
+    /**
+     * 以指定的优先级尝试消耗令牌，不会等待
+     */
+    public boolean tryConsume(int priority, long numTokens) {
+        checkConsume(priority, numTokens);
+        lock.lock();
+        try {
+            addTokens(refillStrategy.refill());
+            return takeIfAllowed(priority, numTokens);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 以指定的优先级消耗令牌，令牌不够或者有更高优先级的请求在等待时阻塞。
+     * 等待不响应中断，中断状态在返回前恢复。
+     */
+    public void consume(int priority, long numTokens) {
+        checkConsume(priority, numTokens);
+        boolean interrupted = false;
+        lock.lock();
+        try {
+            waiting[priority]++;
+            try {
+                while (true) {
+                    addTokens(refillStrategy.refill());
+                    if (takeIfAllowed(priority, numTokens)) {
+                        return;
+                    }
+                    try {
+                        conditions[priority].awaitNanos(nanosUntilNextRefill());
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                waiting[priority]--;
+                // 桶里可能还有令牌，或者等待的最高优先级变了
+                signalHighestWaiter();
+            }
+        } finally {
+            lock.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void refill(long numTokens) {
+        lock.lock();
+        try {
+            addTokens(numTokens);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 返回指定优先级正在阻塞等待的请求数
+     */
+    public int getWaitingCount(int priority) {
+        checkElementIndex(priority, floors.length);
+        lock.lock();
+        try {
+            return waiting[priority];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 必须持有锁
+     */
+    private void addTokens(long numTokens) {
+        long newTokens = Math.min(capacity, Math.max(0, numTokens));
+        if (newTokens == 0) {
+            return;
+        }
+        size = Math.max(0, Math.min(size + newTokens, capacity));
+        signalHighestWaiter();
+    }
+
+    /**
+     * 必须持有锁。更高优先级有请求在等待时不允许消耗。
+     */
+    private boolean takeIfAllowed(int priority, long numTokens) {
+        for (int p = 0; p < priority; p++) {
+            if (waiting[p] > 0) {
+                return false;
+            }
+        }
+        if (size - numTokens < floors[priority]) {
+            return false;
+        }
+        size -= numTokens;
+        return true;
+    }
+
+    private void signalHighestWaiter() {
+        for (int p = 0; p < waiting.length; p++) {
+            if (waiting[p] > 0) {
+                conditions[p].signal();
+                return;
+            }
+        }
+    }
+
+    private long nanosUntilNextRefill() {
+        try {
+            return Math.max(refillStrategy.getDurationUntilNextRefill(NANOSECONDS), 1L);
+        } catch (UnsupportedOperationException e) {
+            return DEFAULT_WAIT_NANOS;
+        }
+    }
+
+    private int lowestPriority() {
+        return floors.length - 1;
+    }
+
+    private void checkConsume(int priority, long numTokens) {
+        checkElementIndex(priority, floors.length);
+        checkArgument(numTokens > 0, "Number of tokens to consume must be positive");
+        checkArgument(numTokens <= capacity - floors[priority], "Number of tokens to consume must not exceed the share of priority %s", priority);
+    }
+}
@@ -0,0 +1,150 @@
+package org.isomorphism.limit.tokenbuket.impl;
+
+import com.google.common.math.LongMath;
+import org.isomorphism.limit.tokenbuket.TokenBucket;
+import org.isomorphism.limit.tokenbuket.TokenBucketSnapshot;
+import org.isomorphism.limit.tokenbuket.strategy.SleepStrategy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 由{@link BucketRefiller}推送补充的令牌桶：消耗令牌只是一次"大于等于n才减n"的CAS，不读时钟，也不加锁。
+ * <p>
+ * 补充速率为每period补充numTokensPerPeriod个令牌，按补充器实际经过的时间平滑换算，不足一个令牌的部分留到下一个节拍。
+ * 与{@link LeakyTokenBucket}配合{@link org.isomorphism.limit.tokenbuket.strategy.FixedIntervalRefillStrategy}相比，
+ * 令牌按节拍而不是按period成批到达，任意时刻补充的令牌数与理论值相差不超过一个节拍的量。
+ * <p>
+ * 补充器只弱引用令牌桶，令牌桶被回收后自动注销；也可以调用{@link #close()}立即注销。
+ */
+public class PushRefilledTokenBucket implements TokenBucket {
+    private final long capacity;
+    private final long numTokensPerPeriod;
+    private final long periodNanos;
+    private final SleepStrategy sleepStrategy;
+    private final BucketRefiller refiller;
+    private final BucketRefiller.BucketReference registration;
+    private final AtomicLong size;
+
+    /**
+     * 不足一个令牌的补充量，单位为 令牌 * 纳秒 / period，只在补充器的节拍中访问
+     */
+    private long remainder;
+
+    public PushRefilledTokenBucket(long capacity, long initialTokens, long numTokensPerPeriod, long period, TimeUnit unit,
+                                   SleepStrategy sleepStrategy, BucketRefiller refiller) {
+        checkArgument(capacity > 0);
+        checkArgument(initialTokens <= capacity);
+        checkArgument(numTokensPerPeriod > 0, "Must refill a positive number of tokens");
+        checkArgument(period > 0, "period must be positive: %s", period);
+
+        this.capacity = capacity;
+        this.numTokensPerPeriod = numTokensPerPeriod;
+        this.periodNanos = unit.toNanos(period);
+        this.sleepStrategy = checkNotNull(sleepStrategy);
+        this.refiller = checkNotNull(refiller);
+        this.size = new AtomicLong(initialTokens);
+        this.registration = refiller.register(this);
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getNumTokens() {
+        return size.get();
+    }
+
+    /**
+     * 返回距离补充器下一个节拍的时间
+     */
+    @Override
+    public long getDurationUntilNextRefill(TimeUnit unit) throws UnsupportedOperationException {
+        return refiller.getDurationUntilNextTick(unit);
+    }
+
+    @Override
+    public TokenBucketSnapshot snapshot() {
+        long numTokens = size.get();
+        long nanosUntilNextRefill;
+        try {
+            nanosUntilNextRefill = refiller.getDurationUntilNextTick(NANOSECONDS);
+        } catch (UnsupportedOperationException e) {
+            nanosUntilNextRefill = -1L;
+        }
+        return new TokenBucketSnapshot(capacity, numTokens, numTokens, nanosUntilNextRefill);
+    }
+
+    @Override
+    public boolean tryConsume() {
+        return tryConsume(1);
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens) {
+        checkArgument(numTokens > 0, "Number of tokens to consume must be positive");
+        checkArgument(numTokens <= capacity, "Number of tokens to consume must be less than the capacity of the bucket.");
+
+        while (true) {
+            long current = size.get();
+            if (current < numTokens) {
+                return false;
+            }
+            if (size.compareAndSet(current, current - numTokens)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void consume() {
+        consume(1);
+    }
+
+    @Override
+    public void consume(long numTokens) {
+        while (!tryConsume(numTokens)) {
+            sleepStrategy.sleep();
+        }
+    }
+
+    @Override
+    public void refill(long numTokens) {
+        long newTokens = Math.min(capacity, Math.max(0, numTokens));
+        if (newTokens == 0) {
+            return;
+        }
+        while (true) {
+            long current = size.get();
+            long next = Math.min(current + newTokens, capacity);
+            if (current == next || size.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 从补充器中注销，之后不再补充令牌
+     */
+    public void close() {
+        refiller.unregister(registration);
+    }
+
+    /**
+     * 由补充器在节拍中调用
+     */
+    void onTick(long elapsedNanos) {
+        long total = LongMath.saturatedAdd(remainder, LongMath.saturatedMultiply(elapsedNanos, numTokensPerPeriod));
+        long newTokens = total / periodNanos;
+        remainder = newTokens >= capacity ? 0 : total % periodNanos;
+        if (newTokens > 0) {
+            refill(newTokens);
+        }
+    }
+}
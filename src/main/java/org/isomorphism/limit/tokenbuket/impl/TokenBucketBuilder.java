@@ -4,6 +4,7 @@ import com.google.common.base.Ticker;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.isomorphism.limit.tokenbuket.TokenBucket;
 import org.isomorphism.limit.tokenbuket.strategy.FixedIntervalRefillStrategy;
+import org.isomorphism.limit.tokenbuket.strategy.RefillFunction;
 import org.isomorphism.limit.tokenbuket.strategy.RefillStrategy;
 import org.isomorphism.limit.tokenbuket.strategy.SleepStrategy;
 
@@ -11,12 +12,19 @@ import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 public class TokenBucketBuilder {
     private Long capacity = null;
     private long initialTokens = 0;
     private RefillStrategy refillStrategy = null;
+    private RefillFunction refillFunction = null;
     private SleepStrategy sleepStrategy = YIELDING_SLEEP_STRATEGY;
+    private double[] priorityReserves = null;
+    private BucketRefiller refiller = null;
+    private long pushTokensPerPeriod;
+    private long pushPeriod;
+    private TimeUnit pushUnit;
     private final Ticker ticker = Ticker.systemTicker();
 
     static final SleepStrategy YIELDING_SLEEP_STRATEGY = new SleepStrategy() {
@@ -72,6 +80,45 @@ public class TokenBucketBuilder {
         return this;
     }
 
+    /**
+     * 使用无状态的补充函数，构建的令牌桶把令牌数和补充时间戳放在一起原子地更新，代替补充策略。
+     */
+    public TokenBucketBuilder withRefillFunction(RefillFunction refillFunction) {
+        this.refillFunction = checkNotNull(refillFunction);
+        return this;
+    }
+
+    /**
+     * 构建一组按键区分、共用同一个补充函数的令牌桶，新的键从满桶开始。
+     */
+    public <K> KeyedTokenBuckets<K> buildKeyed() {
+        checkNotNull(capacity, "Must specify a capacity");
+        checkNotNull(refillFunction, "Must specify a refill function");
+
+        return new KeyedTokenBuckets<>(capacity, refillFunction, sleepStrategy, ticker);
+    }
+
+    /**
+     * 由共用的{@link BucketRefiller#shared()}在后台补充令牌，每period补充refillTokens个，代替补充策略。
+     * 消耗令牌时不读时钟也不加锁，误差不超过补充器的一个节拍（1毫秒）。需要提前注销时使用{@link #buildPushRefilled()}构建。
+     */
+    public TokenBucketBuilder withBackgroundRefill(long refillTokens, long period, TimeUnit unit) {
+        return withBackgroundRefill(refillTokens, period, unit, BucketRefiller.shared());
+    }
+
+    /**
+     * 由指定的补充器在后台补充令牌，每period补充refillTokens个，代替补充策略。
+     */
+    public TokenBucketBuilder withBackgroundRefill(long refillTokens, long period, TimeUnit unit, BucketRefiller refiller) {
+        checkArgument(refillTokens > 0, "Must refill a positive number of tokens");
+        checkArgument(period > 0, "Must specify a positive period");
+        this.pushTokensPerPeriod = refillTokens;
+        this.pushPeriod = period;
+        this.pushUnit = checkNotNull(unit);
+        this.refiller = checkNotNull(refiller);
+        return this;
+    }
+
     /**
      * 使用一种让出CPU的策略
      */
@@ -94,11 +141,47 @@ public class TokenBucketBuilder {
         return this;
     }
 
+    /**
+     * 区分优先级，参数依次是为优先级0, 1, ...预留的容量比例，优先级的个数比参数多1。使用{@link #buildPriority()}构建。
+     */
+    public TokenBucketBuilder withPriorityReserves(double... reserveFractions) {
+        this.priorityReserves = checkNotNull(reserveFractions).clone();
+        return this;
+    }
+
+    /**
+     * 构建区分优先级的令牌桶，没有指定预留时只有一个优先级。阻塞等待使用Condition，不使用睡眠策略。
+     */
+    public PriorityTokenBucket buildPriority() {
+        checkNotNull(capacity, "Must specify a capacity");
+        checkNotNull(refillStrategy, "Must specify a refill strategy");
+
+        return new PriorityTokenBucket(capacity, initialTokens, refillStrategy, priorityReserves == null ? new double[0] : priorityReserves);
+    }
+
+    /**
+     * 构建由后台补充器补充的令牌桶，必须先调用{@link #withBackgroundRefill}。
+     */
+    public PushRefilledTokenBucket buildPushRefilled() {
+        checkNotNull(capacity, "Must specify a capacity");
+        checkNotNull(refiller, "Must specify a background refill");
+        checkState(refillStrategy == null && refillFunction == null, "Background refill replaces the refill strategy");
+
+        return new PushRefilledTokenBucket(capacity, initialTokens, pushTokensPerPeriod, pushPeriod, pushUnit, sleepStrategy, refiller);
+    }
+
     /**
      * 构建令牌桶
      */
     public TokenBucket build() {
         checkNotNull(capacity, "Must specify a capacity");
+        if (refiller != null) {
+            return buildPushRefilled();
+        }
+        if (refillFunction != null) {
+            checkState(refillStrategy == null, "A refill function replaces the refill strategy");
+            return new AtomicTokenBucket(capacity, initialTokens, refillFunction, sleepStrategy, ticker);
+        }
         checkNotNull(refillStrategy, "Must specify a refill strategy");
 
         return new LeakyTokenBucket(capacity, initialTokens, refillStrategy, sleepStrategy);
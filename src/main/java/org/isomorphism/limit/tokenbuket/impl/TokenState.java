@@ -0,0 +1,58 @@
+package org.isomorphism.limit.tokenbuket.impl;
+
+import org.isomorphism.limit.tokenbuket.TokenBucketSnapshot;
+import org.isomorphism.limit.tokenbuket.strategy.RefillFunction;
+import org.isomorphism.limit.tokenbuket.strategy.RefillFunctions;
+
+/**
+ * 令牌数和上一次补充的时间戳，不可变，整体用CAS替换。比较时按引用比较。
+ */
+final class TokenState {
+    final long numTokens;
+    final long lastRefillNanos;
+
+    TokenState(long numTokens, long lastRefillNanos) {
+        this.numTokens = numTokens;
+        this.lastRefillNanos = lastRefillNanos;
+    }
+
+    /**
+     * 返回补充后的状态，没有变化时返回自身
+     */
+    TokenState refill(RefillFunction function, long capacity, long nowNanos) {
+        RefillFunction.Refill refill = function.refill(lastRefillNanos, numTokens, nowNanos);
+        if (refill.isNone()) {
+            return this;
+        }
+        long tokens = Math.max(0, refill.getNumTokens());
+        return new TokenState(tokens >= capacity - numTokens ? capacity : numTokens + tokens, refill.getRefillNanos());
+    }
+
+    /**
+     * 只读的快照。有状态的补充函数不能在不保存结果的情况下调用，此时不推算可用令牌数。
+     */
+    TokenBucketSnapshot snapshot(RefillFunction function, long capacity, long nowNanos) {
+        TokenState projected = RefillFunctions.isStateless(function) ? refill(function, capacity, nowNanos) : this;
+        long nanosUntilNextRefill;
+        try {
+            nanosUntilNextRefill = function.nanosUntilNextRefill(projected.lastRefillNanos, projected.numTokens, nowNanos);
+        } catch (UnsupportedOperationException e) {
+            nanosUntilNextRefill = -1L;
+        }
+        return new TokenBucketSnapshot(capacity, numTokens, projected.numTokens, nanosUntilNextRefill);
+    }
+
+    /**
+     * 消耗令牌后的状态，令牌不够时返回null
+     */
+    TokenState consume(long tokens) {
+        return numTokens >= tokens ? new TokenState(numTokens - tokens, lastRefillNanos) : null;
+    }
+
+    /**
+     * 手动补充令牌后的状态，不超过容量
+     */
+    TokenState add(long tokens, long capacity) {
+        return new TokenState(tokens >= capacity - numTokens ? capacity : numTokens + tokens, lastRefillNanos);
+    }
+}
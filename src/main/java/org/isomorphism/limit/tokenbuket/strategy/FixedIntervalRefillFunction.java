@@ -0,0 +1,35 @@
+package org.isomorphism.limit.tokenbuket.strategy;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * 与{@link FixedIntervalRefillStrategy}相同的补充规则：每period成批补充numTokensPerPeriod个令牌，但不保存状态。
+ */
+public final class FixedIntervalRefillFunction implements RefillFunction {
+    private final long numTokensPerPeriod;
+    private final long periodNanos;
+
+    public FixedIntervalRefillFunction(long numTokensPerPeriod, long period, TimeUnit unit) {
+        checkArgument(numTokensPerPeriod > 0, "Must refill a positive number of tokens");
+        checkArgument(period > 0, "period must be positive: %s", period);
+        this.numTokensPerPeriod = numTokensPerPeriod;
+        this.periodNanos = unit.toNanos(period);
+    }
+
+    @Override
+    public Refill refill(long lastRefillNanos, long numTokens, long nowNanos) {
+        long numPeriods = (nowNanos - lastRefillNanos) / periodNanos;
+        if (numPeriods <= 0) {
+            return Refill.none();
+        }
+        long tokens = numPeriods > Long.MAX_VALUE / numTokensPerPeriod ? Long.MAX_VALUE : numPeriods * numTokensPerPeriod;
+        return Refill.of(tokens, lastRefillNanos + numPeriods * periodNanos);
+    }
+
+    @Override
+    public long nanosUntilNextRefill(long lastRefillNanos, long numTokens, long nowNanos) {
+        return Math.max(0, lastRefillNanos + periodNanos - nowNanos);
+    }
+}
@@ -18,6 +18,7 @@ package org.isomorphism.limit.tokenbuket.strategy;
 import com.google.common.base.Ticker;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 令牌桶补充策略，每T个时间单位将为令牌桶提供N个令牌。
@@ -28,7 +29,8 @@ public class FixedIntervalRefillStrategy implements RefillStrategy {
     private final long numTokensPerPeriod;
     private final long periodDurationInNanos;
     private long lastRefillTime;
-    private long nextRefillTime;
+    private volatile long nextRefillTime;
+    private final ReentrantLock lock = new ReentrantLock();
 
     /**
      * 创建fixedIntervalRefillStrategy.
@@ -47,25 +49,33 @@ public class FixedIntervalRefillStrategy implements RefillStrategy {
     }
 
     @Override
-    public synchronized long refill() {
-        long now = ticker.read();
-        if (now < nextRefillTime) {
-            return 0;
-        }
+    public long refill() {
+        lock.lock();
+        try {
+            long now = ticker.read();
+            if (now < nextRefillTime) {
+                return 0;
+            }
 
 
-        // 需要用一些令牌来重新填充桶， 我们需要计算出我们错过了多少个令牌值。
-        long numPeriods = Math.max(0, (now - lastRefillTime) / periodDurationInNanos);
+            // 需要用一些令牌来重新填充桶， 我们需要计算出我们错过了多少个令牌值。
+            long numPeriods = Math.max(0, (now - lastRefillTime) / periodDurationInNanos);
 
-        // 将最后一次充值时间提前一段时间
-        lastRefillTime += numPeriods * periodDurationInNanos;
+            // 将最后一次充值时间提前一段时间
+            lastRefillTime += numPeriods * periodDurationInNanos;
 
-        // 我们将在上一次重新填补后再次补充一次。
-        nextRefillTime = lastRefillTime + periodDurationInNanos;
+            // 我们将在上一次重新填补后再次补充一次。
+            nextRefillTime = lastRefillTime + periodDurationInNanos;
 
-        return numPeriods * numTokensPerPeriod;
+            return numPeriods * numTokensPerPeriod;
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * 不加锁，可以用于监控
+     */
     @Override
     public long getDurationUntilNextRefill(TimeUnit unit) {
         long now = ticker.read();
@@ -0,0 +1,70 @@
+package org.isomorphism.limit.tokenbuket.strategy;
+
+/**
+ * 无状态的补充策略：给定上一次补充的时间戳、桶中的令牌数和当前时间，计算要补充的令牌数和新的时间戳。
+ * <p>
+ * 与{@link RefillStrategy}不同，补充的状态保存在令牌桶中，令牌桶可以把令牌数和时间戳放在一起原子地更新，
+ * 同一个实例也可以被任意多个令牌桶共用。实现必须是线程安全的纯函数。
+ *
+ * @see RefillFunctions
+ */
+public interface RefillFunction {
+    /**
+     * 计算补充结果
+     *
+     * @param lastRefillNanos 上一次补充的时间戳，令牌桶创建时为创建的时刻
+     * @param numTokens       桶中当前的令牌数
+     * @param nowNanos        当前时间
+     * @return 要补充的令牌数和新的时间戳，没有变化时返回{@link Refill#none()}
+     */
+    Refill refill(long lastRefillNanos, long numTokens, long nowNanos);
+
+    /**
+     * 返回距离下一次补充的纳秒数，不支持时抛出UnsupportedOperationException
+     */
+    long nanosUntilNextRefill(long lastRefillNanos, long numTokens, long nowNanos) throws UnsupportedOperationException;
+
+    /**
+     * 一次补充的结果
+     */
+    final class Refill {
+        private static final Refill NONE = new Refill(0L, 0L);
+
+        private final long numTokens;
+        private final long refillNanos;
+
+        private Refill(long numTokens, long refillNanos) {
+            this.numTokens = numTokens;
+            this.refillNanos = refillNanos;
+        }
+
+        /**
+         * 补充numTokens个令牌，时间戳更新为refillNanos
+         */
+        public static Refill of(long numTokens, long refillNanos) {
+            return new Refill(numTokens, refillNanos);
+        }
+
+        /**
+         * 不补充，时间戳不变
+         */
+        public static Refill none() {
+            return NONE;
+        }
+
+        public boolean isNone() {
+            return this == NONE;
+        }
+
+        public long getNumTokens() {
+            return numTokens;
+        }
+
+        /**
+         * 新的时间戳，{@link #isNone()}时没有意义
+         */
+        public long getRefillNanos() {
+            return refillNanos;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.isomorphism.limit.tokenbuket.strategy;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * {@link RefillFunction}与{@link RefillStrategy}之间的适配
+ */
+public final class RefillFunctions {
+
+    private RefillFunctions() {
+    }
+
+    /**
+     * 把已有的RefillStrategy当作RefillFunction使用。补充的状态仍然保存在strategy中，
+     * 传入的时间戳被忽略，新的时间戳总是当前时间，因此一个strategy实例仍然只能给一个令牌桶使用。
+     */
+    public static RefillFunction fromStrategy(RefillStrategy strategy) {
+        return new StrategyRefillFunction(checkNotNull(strategy));
+    }
+
+    /**
+     * 调用refill不会改变任何状态时返回true。由{@link #fromStrategy(RefillStrategy)}适配的函数返回false，
+     * 只读的调用方（例如监控）不能调用它的refill。
+     */
+    public static boolean isStateless(RefillFunction function) {
+        return !(function instanceof StrategyRefillFunction);
+    }
+
+    /**
+     * 把RefillFunction包装成有状态的RefillStrategy，供{@link org.isomorphism.limit.tokenbuket.impl.LeakyTokenBucket}使用。
+     * 返回的strategy自己保存时间戳，按令牌数为0计算。
+     */
+    public static RefillStrategy toStrategy(final RefillFunction function, final Ticker ticker) {
+        checkNotNull(function);
+        checkNotNull(ticker);
+        return new RefillStrategy() {
+            private final ReentrantLock lock = new ReentrantLock();
+            private long lastRefillNanos = ticker.read();
+
+            @Override
+            public long refill() {
+                lock.lock();
+                try {
+                    RefillFunction.Refill refill = function.refill(lastRefillNanos, 0L, ticker.read());
+                    if (refill.isNone()) {
+                        return 0L;
+                    }
+                    lastRefillNanos = refill.getRefillNanos();
+                    return refill.getNumTokens();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public long getDurationUntilNextRefill(TimeUnit unit) throws UnsupportedOperationException {
+                lock.lock();
+                try {
+                    return unit.convert(function.nanosUntilNextRefill(lastRefillNanos, 0L, ticker.read()), NANOSECONDS);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+    }
+
+    private static final class StrategyRefillFunction implements RefillFunction {
+        private final RefillStrategy strategy;
+
+        StrategyRefillFunction(RefillStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        @Override
+        public Refill refill(long lastRefillNanos, long numTokens, long nowNanos) {
+            long tokens = strategy.refill();
+            return tokens > 0 ? Refill.of(tokens, nowNanos) : Refill.none();
+        }
+
+        @Override
+        public long nanosUntilNextRefill(long lastRefillNanos, long numTokens, long nowNanos) {
+            return strategy.getDurationUntilNextRefill(NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.isomorphism.limit.tokenbuket.strategy;
+
+import com.google.common.math.LongMath;
+
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * 平滑的补充规则：每period补充numTokensPerPeriod个令牌，但按经过的时间逐个补充，而不是到period末尾才成批补充。
+ * <p>
+ * 时间戳只前进补充的整数个令牌所对应的时间（向上取整到纳秒），不足一个令牌的时间留到下一次，长期来看不会超过设定的速率。
+ */
+public final class SmoothRefillFunction implements RefillFunction {
+    private final long numTokensPerPeriod;
+    private final long periodNanos;
+
+    public SmoothRefillFunction(long numTokensPerPeriod, long period, TimeUnit unit) {
+        checkArgument(numTokensPerPeriod > 0, "Must refill a positive number of tokens");
+        checkArgument(period > 0, "period must be positive: %s", period);
+        this.numTokensPerPeriod = numTokensPerPeriod;
+        this.periodNanos = unit.toNanos(period);
+    }
+
+    @Override
+    public Refill refill(long lastRefillNanos, long numTokens, long nowNanos) {
+        long elapsedNanos = nowNanos - lastRefillNanos;
+        if (elapsedNanos <= 0) {
+            return Refill.none();
+        }
+        long product = LongMath.saturatedMultiply(elapsedNanos, numTokensPerPeriod);
+        if (product == Long.MAX_VALUE) {
+            // 闲置了极长的时间，足以填满任何令牌桶，时间戳直接追上当前时间
+            return Refill.of(Long.MAX_VALUE, nowNanos);
+        }
+        long tokens = product / periodNanos;
+        if (tokens == 0) {
+            return Refill.none();
+        }
+        // tokens * periodNanos <= product，不会溢出
+        long usedNanos = LongMath.divide(tokens * periodNanos, numTokensPerPeriod, RoundingMode.CEILING);
+        return Refill.of(tokens, lastRefillNanos + usedNanos);
+    }
+
+    @Override
+    public long nanosUntilNextRefill(long lastRefillNanos, long numTokens, long nowNanos) {
+        long nextNanos = lastRefillNanos + LongMath.divide(periodNanos, numTokensPerPeriod, RoundingMode.CEILING);
+        return Math.max(0, nextNanos - nowNanos);
+    }
+}
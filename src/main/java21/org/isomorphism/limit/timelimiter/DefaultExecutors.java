@@ -0,0 +1,16 @@
+package org.isomorphism.limit.timelimiter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SimpleTimeLimiter默认使用的执行器，Java 21版本：每个任务一个虚拟线程，百万级并发的限时调用也不会耗尽平台线程。
+ */
+final class DefaultExecutors {
+    private DefaultExecutors() {
+    }
+
+    static ExecutorService newTimeLimiterExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
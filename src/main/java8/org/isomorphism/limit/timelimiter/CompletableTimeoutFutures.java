@@ -0,0 +1,69 @@
+package org.isomorphism.limit.timelimiter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.isomorphism.limit.timelimiter.SimpleTimeLimiter.checkPositiveTimeout;
+
+/**
+ * {@link TimeoutFutures}的CompletableFuture版本，与它共用同一个定时器线程。
+ * <p>
+ * 这个类在src/main/java8下，按Java 8编译，基础版本仍然可以在Java 7上使用。
+ */
+public final class CompletableTimeoutFutures {
+
+    private CompletableTimeoutFutures() {
+    }
+
+    /**
+     * 返回一个在timeout内跟随delegate完成的CompletableFuture，超时则以TimeoutException失败并取消delegate。
+     * 取消返回的Future也会取消delegate。
+     */
+    public static <V> CompletableFuture<V> withTimeout(final CompletableFuture<V> delegate, final long timeoutDuration,
+                                                       final TimeUnit timeoutUnit) {
+        checkNotNull(delegate);
+        checkNotNull(timeoutUnit);
+        checkPositiveTimeout(timeoutDuration);
+
+        final CompletableFuture<V> result = new CompletableFuture<V>();
+        // 超时时先取消delegate，再由它的完成回调以TimeoutException结束result，等待result的线程醒来时delegate已经取消
+        final AtomicReference<TimeoutException> timedOut = new AtomicReference<TimeoutException>();
+        final ScheduledFuture<?> timeout = TimeoutFutures.timer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                timedOut.set(new TimeoutException("future did not complete within " + timeoutDuration + " " + timeoutUnit));
+                delegate.cancel(true);
+            }
+        }, timeoutDuration, timeoutUnit);
+
+        delegate.whenComplete(new BiConsumer<V, Throwable>() {
+            @Override
+            public void accept(V value, Throwable failure) {
+                timeout.cancel(false);
+                TimeoutException timeoutException = timedOut.get();
+                if (failure == null) {
+                    result.complete(value);
+                } else if (timeoutException != null && delegate.isCancelled()) {
+                    result.completeExceptionally(timeoutException);
+                } else {
+                    result.completeExceptionally(failure);
+                }
+            }
+        });
+        result.whenComplete(new BiConsumer<V, Throwable>() {
+            @Override
+            public void accept(V value, Throwable failure) {
+                if (result.isCancelled()) {
+                    timeout.cancel(false);
+                    delegate.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+}
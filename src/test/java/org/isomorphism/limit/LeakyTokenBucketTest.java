@@ -16,12 +16,9 @@
 package org.isomorphism.limit;
 
 import org.isomorphism.limit.tokenbuket.impl.LeakyTokenBucket;
-import org.isomorphism.limit.tokenbuket.strategy.RefillStrategy;
 import org.isomorphism.limit.tokenbuket.strategy.SleepStrategy;
 import org.junit.Test;
 
-import java.util.concurrent.TimeUnit;
-
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
 
@@ -192,26 +189,46 @@ public class LeakyTokenBucketTest {
         assertFalse(bucket.tryConsume(1));
     }
 
-    private static final class MockRefillStrategy implements RefillStrategy {
-        private long numTokensToAdd = 0;
+    @Test
+    public void testCancelReservationReturnsTokens() {
+        refillStrategy.addTokens(CAPACITY);
+        Reservation reservation = bucket.tryReserve(8);
+        assertNotNull(reservation);
+        assertNull(bucket.tryReserve(3));
 
-        public long refill() {
-            long numTokens = numTokensToAdd;
-            numTokensToAdd = 0;
-            return numTokens;
-        }
+        assertTrue(reservation.cancel());
+        assertFalse(reservation.cancel());
+        assertEquals(0, reservation.getPermits());
+        assertEquals(CAPACITY, bucket.getNumTokens());
+    }
 
-        @Override
-        public long getDurationUntilNextRefill(TimeUnit unit) throws UnsupportedOperationException {
-            throw new UnsupportedOperationException();
-        }
+    @Test
+    public void testSettleReservationRefundsDifference() {
+        refillStrategy.addTokens(CAPACITY);
+        Reservation reservation = bucket.tryReserve(8);
+        reservation.settle(3);
+        assertEquals(3, reservation.getPermits());
+        assertEquals(7, bucket.getNumTokens());
+    }
 
-        public void addToken() {
-            numTokensToAdd++;
-        }
+    @Test
+    public void testSettleReservationChargesDebt() {
+        refillStrategy.addTokens(CAPACITY);
+        Reservation reservation = bucket.tryReserve(8);
+        reservation.settle(14);
+        assertEquals(0, bucket.getNumTokens());
 
-        public void addTokens(long numTokens) {
-            numTokensToAdd += numTokens;
-        }
+        // 欠账4个令牌，补充5个之后只剩1个
+        refillStrategy.addTokens(5);
+        assertFalse(bucket.tryConsume(2));
+        assertTrue(bucket.tryConsume(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSettleTwice() {
+        refillStrategy.addTokens(CAPACITY);
+        Reservation reservation = bucket.tryReserve(1);
+        reservation.settle(1);
+        reservation.settle(1);
     }
 }
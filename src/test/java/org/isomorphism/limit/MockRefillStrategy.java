@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012-2014 Brandon Beck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.isomorphism.limit;
+
+import org.isomorphism.limit.tokenbuket.strategy.RefillStrategy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试用的补充策略：只补充手动添加的令牌。令牌桶可能在其他线程上补充，所以方法都是同步的。
+ */
+final class MockRefillStrategy implements RefillStrategy {
+    private long numTokensToAdd = 0;
+
+    @Override
+    public synchronized long refill() {
+        long numTokens = numTokensToAdd;
+        numTokensToAdd = 0;
+        return numTokens;
+    }
+
+    @Override
+    public long getDurationUntilNextRefill(TimeUnit unit) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    public synchronized void addToken() {
+        numTokensToAdd++;
+    }
+
+    public synchronized void addTokens(long numTokens) {
+        numTokensToAdd += numTokens;
+    }
+}
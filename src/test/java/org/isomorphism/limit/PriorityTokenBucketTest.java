@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012-2014 Brandon Beck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.isomorphism.limit;
+
+import org.isomorphism.limit.tokenbuket.impl.PriorityTokenBucket;
+import org.isomorphism.limit.tokenbuket.impl.TokenBucketBuilder;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PriorityTokenBucketTest {
+    private static final long CAPACITY = 10;
+
+    private final MockRefillStrategy refillStrategy = new MockRefillStrategy();
+    private final PriorityTokenBucket bucket = new PriorityTokenBucket(CAPACITY, CAPACITY, refillStrategy, 0.2);
+
+    @Test
+    public void testLowPriorityCannotTakeReserve() {
+        assertEquals(2, bucket.getPriorityLevels());
+        assertEquals(8, bucket.getNumAvailableTokens(1));
+        assertTrue(bucket.tryConsume(1, 8));
+        assertFalse(bucket.tryConsume(1, 1));
+        assertEquals(2, bucket.getNumTokens());
+
+        assertTrue(bucket.tryConsume(0, 2));
+        assertFalse(bucket.tryConsume(0, 1));
+    }
+
+    @Test
+    public void testUnqualifiedCallsUseLowestPriority() {
+        assertTrue(bucket.tryConsume(8));
+        assertFalse(bucket.tryConsume());
+        assertEquals(2, bucket.getNumAvailableTokens(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConsumeMoreThanShare() {
+        bucket.tryConsume(1, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReservesMustLeaveRoom() {
+        new PriorityTokenBucket(CAPACITY, 0, refillStrategy, 0.5, 0.5);
+    }
+
+    @Test
+    public void testWaitersServedInPriorityOrder() throws Exception {
+        assertTrue(bucket.tryConsume(0, CAPACITY));
+
+        final List<Integer> served = new CopyOnWriteArrayList<>();
+        Thread low = consumer(1, 5, served);
+        awaitWaiting(1);
+        Thread high = consumer(0, 5, served);
+        awaitWaiting(0);
+
+        // 低优先级在等待时已经够用的令牌，也要先让给高优先级
+        bucket.refill(7);
+        high.join(TimeUnit.SECONDS.toMillis(5));
+        assertEquals(1, served.size());
+        assertEquals(0, (int) served.get(0));
+        assertEquals(1, bucket.getWaitingCount(1));
+
+        // 低优先级消耗后必须还剩2个预留
+        bucket.refill(4);
+        assertEquals(1, bucket.getWaitingCount(1));
+        bucket.refill(1);
+        low.join(TimeUnit.SECONDS.toMillis(5));
+        assertEquals(2, served.size());
+        assertEquals(1, (int) served.get(1));
+        assertEquals(2, bucket.getNumTokens());
+    }
+
+    @Test
+    public void testHigherWaiterBlocksLowerTryConsume() throws Exception {
+        assertTrue(bucket.tryConsume(0, CAPACITY));
+        bucket.refill(4);
+
+        Thread high = consumer(0, 5, new CopyOnWriteArrayList<Integer>());
+        awaitWaiting(0);
+        assertFalse(bucket.tryConsume(1, 1));
+
+        bucket.refill(1);
+        high.join(TimeUnit.SECONDS.toMillis(5));
+        assertEquals(0, bucket.getWaitingCount(0));
+    }
+
+    @Test
+    public void testBuilder() {
+        PriorityTokenBucket built = TokenBucketBuilder.builder()
+                .withCapacity(100)
+                .withInitialTokens(100)
+                .withRefillStrategy(refillStrategy)
+                .withPriorityReserves(0.1, 0.2)
+                .buildPriority();
+        assertEquals(3, built.getPriorityLevels());
+        assertEquals(100, built.getNumAvailableTokens(0));
+        assertEquals(90, built.getNumAvailableTokens(1));
+        assertEquals(70, built.getNumAvailableTokens(2));
+    }
+
+    private Thread consumer(final int priority, final long numTokens, final List<Integer> served) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                bucket.consume(priority, numTokens);
+                served.add(priority);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void awaitWaiting(int priority) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bucket.getWaitingCount(priority) == 0) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
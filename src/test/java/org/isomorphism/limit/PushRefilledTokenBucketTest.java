@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012-2014 Brandon Beck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.isomorphism.limit;
+
+import org.isomorphism.limit.tokenbuket.TokenBucket;
+import org.isomorphism.limit.tokenbuket.impl.BucketRefiller;
+import org.isomorphism.limit.tokenbuket.impl.PushRefilledTokenBucket;
+import org.isomorphism.limit.tokenbuket.impl.TokenBucketBuilder;
+import org.isomorphism.limit.tokenbuket.strategy.SleepStrategy;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class PushRefilledTokenBucketTest {
+    private static final long CAPACITY = 10;
+
+    private final FakeTicker ticker = new FakeTicker();
+    private final BucketRefiller refiller = new BucketRefiller(ticker);
+    private final PushRefilledTokenBucket bucket =
+            new PushRefilledTokenBucket(CAPACITY, 0, 10, 1, TimeUnit.SECONDS, mock(SleepStrategy.class), refiller);
+
+    @Test
+    public void testConsumeDoesNotRefill() {
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertFalse(bucket.tryConsume());
+
+        refiller.tick();
+        assertEquals(CAPACITY, bucket.getNumTokens());
+        assertTrue(bucket.tryConsume(CAPACITY));
+        assertFalse(bucket.tryConsume());
+    }
+
+    @Test
+    public void testFractionalTokensCarryOver() {
+        // 每个节拍30毫秒，补充0.3个令牌
+        for (int i = 0; i < 10; i++) {
+            ticker.advance(30, TimeUnit.MILLISECONDS);
+            refiller.tick();
+            assertEquals((i + 1) * 3 / 10, bucket.getNumTokens());
+        }
+    }
+
+    @Test
+    public void testRefillCappedAtCapacity() {
+        ticker.advance(1, TimeUnit.HOURS);
+        refiller.tick();
+        assertEquals(CAPACITY, bucket.getNumTokens());
+    }
+
+    @Test
+    public void testManyBucketsShareOneTick() {
+        PushRefilledTokenBucket[] buckets = new PushRefilledTokenBucket[1000];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new PushRefilledTokenBucket(CAPACITY, 0, i % 10 + 1, 1, TimeUnit.SECONDS, mock(SleepStrategy.class), refiller);
+        }
+        assertEquals(1001, refiller.getBucketCount());
+
+        ticker.advance(1, TimeUnit.SECONDS);
+        refiller.tick();
+        for (int i = 0; i < buckets.length; i++) {
+            assertEquals(i % 10 + 1, buckets[i].getNumTokens());
+            buckets[i].close();
+        }
+        assertEquals(1, refiller.getBucketCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testDurationUntilNextRefillWhenManual() {
+        bucket.getDurationUntilNextRefill(TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testBuilderWithBackgroundRefill() {
+        TokenBucket built = TokenBucketBuilder.builder()
+                .withCapacity(CAPACITY)
+                .withBackgroundRefill(5, 1, TimeUnit.SECONDS, refiller)
+                .build();
+        assertTrue(built instanceof PushRefilledTokenBucket);
+
+        ticker.advance(1, TimeUnit.SECONDS);
+        refiller.tick();
+        assertEquals(5, built.getNumTokens());
+    }
+
+    @Test
+    public void testSharedRefillerRunsInBackground() throws InterruptedException {
+        PushRefilledTokenBucket shared = TokenBucketBuilder.builder()
+                .withCapacity(1000)
+                .withBackgroundRefill(1000, 1, TimeUnit.SECONDS)
+                .buildPushRefilled();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!shared.tryConsume(10)) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(1);
+            }
+            assertTrue(shared.getDurationUntilNextRefill(TimeUnit.MILLISECONDS) <= 1);
+        } finally {
+            shared.close();
+        }
+    }
+
+    @Test
+    public void testDroppedBucketIsUnregistered() throws InterruptedException {
+        registerUnreachableBucket();
+        assertEquals(2, refiller.getBucketCount());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (refiller.getBucketCount() > 1) {
+            assertTrue(System.nanoTime() < deadline);
+            System.gc();
+            Thread.sleep(1);
+            refiller.tick();
+        }
+        // 仍被引用的令牌桶照常补充
+        ticker.advance(1, TimeUnit.SECONDS);
+        refiller.tick();
+        assertEquals(CAPACITY, bucket.getNumTokens());
+    }
+
+    private void registerUnreachableBucket() {
+        TokenBucketBuilder.builder()
+                .withCapacity(CAPACITY)
+                .withBackgroundRefill(1, 1, TimeUnit.SECONDS, refiller)
+                .buildPushRefilled();
+    }
+}
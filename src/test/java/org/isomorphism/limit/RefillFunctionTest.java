@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012-2014 Brandon Beck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.isomorphism.limit;
+
+import org.isomorphism.limit.tokenbuket.TokenBucket;
+import org.isomorphism.limit.tokenbuket.impl.AtomicTokenBucket;
+import org.isomorphism.limit.tokenbuket.impl.KeyedTokenBuckets;
+import org.isomorphism.limit.tokenbuket.impl.TokenBucketBuilder;
+import org.isomorphism.limit.tokenbuket.strategy.FixedIntervalRefillFunction;
+import org.isomorphism.limit.tokenbuket.strategy.FixedIntervalRefillStrategy;
+import org.isomorphism.limit.tokenbuket.strategy.RefillFunction;
+import org.isomorphism.limit.tokenbuket.strategy.RefillFunctions;
+import org.isomorphism.limit.tokenbuket.strategy.RefillStrategy;
+import org.isomorphism.limit.tokenbuket.strategy.SleepStrategy;
+import org.isomorphism.limit.tokenbuket.strategy.SmoothRefillFunction;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class RefillFunctionTest {
+    private static final long CAPACITY = 10;
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void testFixedIntervalIsPure() {
+        RefillFunction function = new FixedIntervalRefillFunction(5, 1, TimeUnit.SECONDS);
+        assertTrue(function.refill(0, 0, TimeUnit.MILLISECONDS.toNanos(999)).isNone());
+
+        RefillFunction.Refill refill = function.refill(0, 0, TimeUnit.MILLISECONDS.toNanos(2500));
+        assertEquals(10, refill.getNumTokens());
+        assertEquals(TimeUnit.SECONDS.toNanos(2), refill.getRefillNanos());
+        // 同样的输入得到同样的结果
+        assertEquals(10, function.refill(0, 0, TimeUnit.MILLISECONDS.toNanos(2500)).getNumTokens());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), function.nanosUntilNextRefill(TimeUnit.SECONDS.toNanos(2), 0, TimeUnit.MILLISECONDS.toNanos(2500)));
+    }
+
+    @Test
+    public void testSmoothKeepsFractionalTime() {
+        // 每3纳秒一个令牌
+        RefillFunction function = new SmoothRefillFunction(1, 3, TimeUnit.NANOSECONDS);
+        RefillFunction.Refill refill = function.refill(0, 0, 7);
+        assertEquals(2, refill.getNumTokens());
+        assertEquals(6, refill.getRefillNanos());
+
+        // 10个令牌每秒，1/3个令牌的时间不足以补充
+        function = new SmoothRefillFunction(10, 1, TimeUnit.SECONDS);
+        assertTrue(function.refill(0, 0, TimeUnit.MILLISECONDS.toNanos(99)).isNone());
+        refill = function.refill(0, 0, TimeUnit.MILLISECONDS.toNanos(250));
+        assertEquals(2, refill.getNumTokens());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), refill.getRefillNanos());
+        assertEquals(Long.MAX_VALUE, function.refill(0, 0, Long.MAX_VALUE).getNumTokens());
+    }
+
+    @Test
+    public void testAtomicTokenBucket() {
+        AtomicTokenBucket bucket = new AtomicTokenBucket(CAPACITY, 0, new SmoothRefillFunction(10, 1, TimeUnit.SECONDS),
+                mock(SleepStrategy.class), ticker);
+        assertFalse(bucket.tryConsume());
+        ticker.advance(350, TimeUnit.MILLISECONDS);
+        assertEquals(3, bucket.getNumTokens());
+        assertTrue(bucket.tryConsume(3));
+        assertEquals(50, bucket.getDurationUntilNextRefill(TimeUnit.MILLISECONDS));
+
+        ticker.advance(1, TimeUnit.HOURS);
+        assertEquals(CAPACITY, bucket.getNumTokens());
+    }
+
+    @Test
+    public void testKeyedBucketsShareOneFunction() {
+        KeyedTokenBuckets<String> buckets = TokenBucketBuilder.builder()
+                .withCapacity(CAPACITY)
+                .withRefillFunction(new FixedIntervalRefillFunction(CAPACITY, 1, TimeUnit.SECONDS))
+                .withSleepStrategy(mock(SleepStrategy.class))
+                .buildKeyed();
+        assertTrue(buckets.tryConsume("a", CAPACITY));
+        assertFalse(buckets.tryConsume("a", 1));
+        assertTrue(buckets.tryConsume("b", 1));
+        assertEquals(9, buckets.forKey("b").getNumTokens());
+        assertEquals(CAPACITY, buckets.getNumTokens("c"));
+        assertEquals(2, buckets.size());
+
+        buckets.cleanUp();
+        assertEquals(2, buckets.size());
+    }
+
+    @Test
+    public void testKeyedCleanUpDropsFullBuckets() {
+        KeyedTokenBuckets<String> buckets = new KeyedTokenBuckets<>(CAPACITY, new FixedIntervalRefillFunction(CAPACITY, 1, TimeUnit.SECONDS),
+                mock(SleepStrategy.class), ticker);
+        buckets.tryConsume("a", 5);
+        buckets.tryConsume("b", CAPACITY);
+        ticker.advance(1, TimeUnit.SECONDS);
+        buckets.cleanUp();
+        assertEquals(0, buckets.size());
+        assertTrue(buckets.tryConsume("a", CAPACITY));
+    }
+
+    @Test
+    public void testAdaptExistingStrategy() {
+        RefillFunction function = RefillFunctions.fromStrategy(new FixedIntervalRefillStrategy(ticker, 5, 1, TimeUnit.SECONDS));
+        TokenBucket bucket = new AtomicTokenBucket(CAPACITY, 0, function, mock(SleepStrategy.class), ticker);
+        // FixedIntervalRefillStrategy第一次调用就会补充
+        assertEquals(5, bucket.getNumTokens());
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertEquals(CAPACITY, bucket.getNumTokens());
+    }
+
+    @Test
+    public void testAdaptedStrategyLosesNoTokensUnderContention() throws InterruptedException {
+        // 每次调用最多交出3个令牌，一共交出pool个
+        final long pool = 200000;
+        final AtomicLong remaining = new AtomicLong(pool);
+        RefillStrategy strategy = new RefillStrategy() {
+            @Override
+            public long refill() {
+                while (true) {
+                    long current = remaining.get();
+                    long tokens = Math.min(current, 3);
+                    if (remaining.compareAndSet(current, current - tokens)) {
+                        return tokens;
+                    }
+                }
+            }
+
+            @Override
+            public long getDurationUntilNextRefill(TimeUnit unit) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        final TokenBucket bucket = new AtomicTokenBucket(pool, 0, RefillFunctions.fromStrategy(strategy), mock(SleepStrategy.class), ticker);
+        final AtomicLong consumed = new AtomicLong();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (true) {
+                        if (bucket.tryConsume()) {
+                            consumed.incrementAndGet();
+                        } else if (remaining.get() == 0) {
+                            return;
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // CAS竞争时补充的结果不能丢弃，策略交出的令牌都被消耗掉
+        assertEquals(pool, consumed.get());
+        assertEquals(0, bucket.getNumTokens());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKeyedBucketsRejectAdaptedStrategy() {
+        new KeyedTokenBuckets<String>(CAPACITY, RefillFunctions.fromStrategy(new MockRefillStrategy()), mock(SleepStrategy.class), ticker);
+    }
+
+    @Test
+    public void testFunctionAsStrategy() {
+        RefillStrategy strategy = RefillFunctions.toStrategy(new SmoothRefillFunction(10, 1, TimeUnit.SECONDS), ticker);
+        assertEquals(0, strategy.refill());
+        ticker.advance(250, TimeUnit.MILLISECONDS);
+        assertEquals(2, strategy.refill());
+        ticker.advance(50, TimeUnit.MILLISECONDS);
+        assertEquals(1, strategy.refill());
+        assertEquals(100, strategy.getDurationUntilNextRefill(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012-2014 Brandon Beck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.isomorphism.limit;
+
+import org.isomorphism.limit.tokenbuket.TokenBucketSnapshot;
+import org.isomorphism.limit.tokenbuket.impl.AtomicTokenBucket;
+import org.isomorphism.limit.tokenbuket.impl.KeyedTokenBuckets;
+import org.isomorphism.limit.tokenbuket.impl.LeakyTokenBucket;
+import org.isomorphism.limit.tokenbuket.strategy.FixedIntervalRefillFunction;
+import org.isomorphism.limit.tokenbuket.strategy.RefillFunctions;
+import org.isomorphism.limit.tokenbuket.strategy.RefillStrategy;
+import org.isomorphism.limit.tokenbuket.strategy.SleepStrategy;
+import org.isomorphism.limit.tokenbuket.strategy.SmoothRefillFunction;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class TokenBucketSnapshotTest {
+    private static final long CAPACITY = 10;
+
+    private final FakeTicker ticker = new FakeTicker();
+    private final SleepStrategy sleepStrategy = mock(SleepStrategy.class);
+
+    @Test
+    public void testLeakySnapshotDoesNotRefill() {
+        CountingRefillStrategy strategy = new CountingRefillStrategy();
+        LeakyTokenBucket bucket = new LeakyTokenBucket(CAPACITY, 4, strategy, sleepStrategy);
+        TokenBucketSnapshot snapshot = bucket.snapshot();
+        assertEquals(CAPACITY, snapshot.getCapacity());
+        assertEquals(4, snapshot.getNumTokens());
+        assertEquals(4, snapshot.getAvailableTokens());
+        assertFalse(snapshot.isNextRefillKnown());
+        assertEquals(-1, snapshot.getDurationUntilNextRefill(TimeUnit.MILLISECONDS));
+        assertEquals(0, strategy.refills);
+    }
+
+    @Test
+    public void testLeakySnapshotDoesNotWaitForLock() throws Exception {
+        final CountDownLatch inRefill = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final LeakyTokenBucket bucket = new LeakyTokenBucket(CAPACITY, 4, new CountingRefillStrategy() {
+            @Override
+            public long refill() {
+                inRefill.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 0;
+            }
+        }, sleepStrategy);
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                bucket.tryConsume();
+            }
+        });
+        consumer.start();
+        try {
+            // 消耗的一方在持有锁时卡在补充策略中，快照仍然可以读取
+            assertTrue(inRefill.await(5, TimeUnit.SECONDS));
+            assertEquals(4, bucket.snapshot().getNumTokens());
+        } finally {
+            release.countDown();
+            consumer.join();
+        }
+        assertEquals(3, bucket.snapshot().getNumTokens());
+    }
+
+    @Test
+    public void testAtomicSnapshotProjectsWithoutWriting() {
+        AtomicTokenBucket bucket = new AtomicTokenBucket(CAPACITY, 0, new SmoothRefillFunction(10, 1, TimeUnit.SECONDS), sleepStrategy, ticker);
+        ticker.advance(350, TimeUnit.MILLISECONDS);
+        TokenBucketSnapshot snapshot = bucket.snapshot();
+        assertEquals(0, snapshot.getNumTokens());
+        assertEquals(3, snapshot.getAvailableTokens());
+        assertEquals(50, snapshot.getDurationUntilNextRefill(TimeUnit.MILLISECONDS));
+
+        // 快照没有保存推算的结果
+        assertEquals(0, bucket.snapshot().getNumTokens());
+        assertEquals(3, bucket.getNumTokens());
+        assertEquals(3, bucket.snapshot().getNumTokens());
+    }
+
+    @Test
+    public void testAdaptedStrategyIsNotCalledBySnapshot() {
+        CountingRefillStrategy strategy = new CountingRefillStrategy();
+        AtomicTokenBucket bucket = new AtomicTokenBucket(CAPACITY, 2, RefillFunctions.fromStrategy(strategy), sleepStrategy, ticker);
+        TokenBucketSnapshot snapshot = bucket.snapshot();
+        assertEquals(2, snapshot.getAvailableTokens());
+        assertEquals(0, strategy.refills);
+    }
+
+    @Test
+    public void testKeyedBulkScan() {
+        KeyedTokenBuckets<String> buckets = new KeyedTokenBuckets<>(CAPACITY, new FixedIntervalRefillFunction(CAPACITY, 1, TimeUnit.SECONDS),
+                sleepStrategy, ticker);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(buckets.tryConsume("key" + i, i % 10 + 1));
+        }
+        Map<String, TokenBucketSnapshot> snapshots = buckets.snapshot();
+        assertEquals(100, snapshots.size());
+        assertEquals(CAPACITY - 4, snapshots.get("key3").getAvailableTokens());
+        assertEquals(CAPACITY, buckets.forKey("missing").snapshot().getAvailableTokens());
+
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertEquals(CAPACITY, buckets.snapshot().get("key3").getAvailableTokens());
+        assertEquals(CAPACITY - 4, buckets.snapshot().get("key3").getNumTokens());
+    }
+
+    private static class CountingRefillStrategy implements RefillStrategy {
+        int refills;
+
+        @Override
+        public long refill() {
+            refills++;
+            return 0;
+        }
+
+        @Override
+        public long getDurationUntilNextRefill(TimeUnit unit) throws UnsupportedOperationException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
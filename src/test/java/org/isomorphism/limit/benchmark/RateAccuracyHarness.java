@@ -0,0 +1,275 @@
+package org.isomorphism.limit.benchmark;
+
+import com.google.common.base.Ticker;
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.isomorphism.limit.ratelimiter.impl.FixedPointRateLimiter;
+import org.isomorphism.limit.ratelimiter.impl.MeasuringStopwatch;
+import org.isomorphism.limit.ratelimiter.impl.SleepingStopwatch;
+import org.isomorphism.limit.ratelimiter.impl.SmoothBursty;
+import org.isomorphism.limit.ratelimiter.impl.SmoothWarmingUp;
+import org.isomorphism.limit.tokenbuket.TokenBucket;
+import org.isomorphism.limit.tokenbuket.impl.TokenBucketBuilder;
+import org.isomorphism.limit.tokenbuket.strategy.FixedIntervalRefillStrategy;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * 在并发负载下测量各实现的实际速率与公平性，补充JMH只能给出的吞吐数据。
+ * <p>
+ * N个生产者线程不停地调用acquire，采样线程每隔一个采样周期统计一次实际速率，中途按计划调用setRate。输出：
+ * <ul>
+ * <li>时间序列：每个采样周期的目标速率、实际速率和误差</li>
+ * <li>每个速率阶段的平均误差（跳过切换后的第一个周期）</li>
+ * <li>每个线程的许可数与等待时间分位数，以及Jain公平性指数（1表示完全公平）</li>
+ * <li>SleepingStopwatch睡眠时多睡的时长分布</li>
+ * </ul>
+ * 运行：mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.isomorphism.limit.benchmark.RateAccuracyHarness
+ * -Dexec.args="threads rate1,rate2,... phaseSeconds"
+ */
+public class RateAccuracyHarness {
+
+    private final int threads;
+    private final double[] rates;
+    private final long phaseNanos;
+    private final long sampleNanos;
+    private final PrintStream out;
+
+    public RateAccuracyHarness(int threads, double[] rates, long phase, long sample, TimeUnit unit, PrintStream out) {
+        this.threads = threads;
+        this.rates = rates.clone();
+        this.phaseNanos = unit.toNanos(phase);
+        this.sampleNanos = unit.toNanos(sample);
+        this.out = out;
+    }
+
+    /**
+     * 被测对象
+     */
+    public abstract static class Subject {
+        final String name;
+
+        protected Subject(String name) {
+            this.name = name;
+        }
+
+        protected abstract void acquire();
+
+        /**
+         * 不支持调整速率时返回false，此时整个测量都使用第一个速率
+         */
+        protected abstract boolean setRate(double permitsPerSecond);
+
+        /**
+         * 使用了{@link MeasuringStopwatch}时返回它，否则返回null
+         */
+        protected MeasuringStopwatch stopwatch() {
+            return null;
+        }
+    }
+
+    public static Subject rateLimiter(String name, final RateLimiter rateLimiter, final MeasuringStopwatch stopwatch) {
+        return new Subject(name) {
+            @Override
+            protected void acquire() {
+                rateLimiter.acquire();
+            }
+
+            @Override
+            protected boolean setRate(double permitsPerSecond) {
+                rateLimiter.setRate(permitsPerSecond);
+                return true;
+            }
+
+            @Override
+            protected MeasuringStopwatch stopwatch() {
+                return stopwatch;
+            }
+        };
+    }
+
+    public static Subject tokenBucket(String name, final TokenBucket tokenBucket) {
+        return new Subject(name) {
+            @Override
+            protected void acquire() {
+                tokenBucket.consume();
+            }
+
+            @Override
+            protected boolean setRate(double permitsPerSecond) {
+                return false;
+            }
+        };
+    }
+
+    public void run(Subject subject) throws InterruptedException {
+        final Subject s = subject;
+        s.setRate(rates[0]);
+        final AtomicLong acquired = new AtomicLong();
+        final long[] perThread = new long[threads];
+        final long[][] waits = new long[threads][];
+        final CountDownLatch start = new CountDownLatch(1);
+        final long end = System.nanoTime() + phaseNanos * rates.length + MILLISECONDS.toNanos(100);
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long[] w = new long[1024];
+                    int n = 0;
+                    awaitUninterruptibly(start);
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        s.acquire();
+                        long waited = System.nanoTime() - now;
+                        if (n == w.length) {
+                            w = Arrays.copyOf(w, n * 2);
+                        }
+                        w[n++] = waited;
+                        acquired.incrementAndGet();
+                    }
+                    perThread[id] = n;
+                    waits[id] = Arrays.copyOf(w, n);
+                }
+            }, "producer-" + i);
+            producer.setDaemon(true);
+            producer.start();
+            producers.add(producer);
+        }
+
+        out.printf("== %s, %d threads%n", s.name, threads);
+        out.println("elapsedMs,targetRate,achievedRate,errorPercent");
+        boolean adjustable = true;
+        double[] phaseError = new double[rates.length];
+        int[] phaseSamples = new int[rates.length];
+        start.countDown();
+        long origin = System.nanoTime();
+        long last = 0;
+        int phase = 0;
+        for (long t = sampleNanos; t <= phaseNanos * rates.length; t += sampleNanos) {
+            int samplePhase = (int) ((t - 1) / phaseNanos);
+            if (samplePhase != phase && adjustable) {
+                phase = samplePhase;
+                adjustable = s.setRate(rates[phase]);
+            }
+            sleepUntil(origin + t);
+            long count = acquired.get();
+            double achieved = (count - last) * 1.0 * SECONDS.toNanos(1) / sampleNanos;
+            last = count;
+            int effective = adjustable ? phase : 0;
+            double target = rates[effective];
+            double error = 100 * (achieved - target) / target;
+            out.printf("%d,%.1f,%.1f,%.2f%n", NANOSECONDS.toMillis(t), target, achieved, error);
+            // 跳过第一个周期和切换速率后的第一个周期
+            if (t > sampleNanos && (t - sampleNanos) / phaseNanos == samplePhase) {
+                phaseError[effective] += Math.abs(error);
+                phaseSamples[effective]++;
+            }
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        for (int i = 0; i < rates.length; i++) {
+            if (phaseSamples[i] > 0) {
+                out.printf("phase %d: target=%.1f, mean |error|=%.2f%%%n", i, rates[i], phaseError[i] / phaseSamples[i]);
+            }
+        }
+        printFairness(perThread, waits);
+        MeasuringStopwatch stopwatch = s.stopwatch();
+        if (stopwatch != null) {
+            long[] oversleep = stopwatch.drainOversleepNanos();
+            Arrays.sort(oversleep);
+            out.printf("oversleep (us): count=%d p50=%.1f p90=%.1f p99=%.1f max=%.1f%n", oversleep.length,
+                    percentile(oversleep, 0.5) / 1e3, percentile(oversleep, 0.9) / 1e3, percentile(oversleep, 0.99) / 1e3,
+                    percentile(oversleep, 1.0) / 1e3);
+        }
+        out.println();
+    }
+
+    private void printFairness(long[] perThread, long[][] waits) {
+        double sum = 0;
+        double sumOfSquares = 0;
+        out.println("thread,permits,waitP50Us,waitP99Us,waitMaxUs");
+        for (int i = 0; i < threads; i++) {
+            sum += perThread[i];
+            sumOfSquares += (double) perThread[i] * perThread[i];
+            long[] w = waits[i];
+            Arrays.sort(w);
+            out.printf("%d,%d,%.1f,%.1f,%.1f%n", i, perThread[i], percentile(w, 0.5) / 1e3, percentile(w, 0.99) / 1e3,
+                    percentile(w, 1.0) / 1e3);
+        }
+        out.printf("jain fairness index=%.4f%n", sumOfSquares == 0 ? 1.0 : sum * sum / (threads * sumOfSquares));
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 按与SmoothBursty相同的1秒突发容量近似一个速率为rate的令牌桶，补充周期不短于1毫秒
+     */
+    static TokenBucket leakyTokenBucket(double rate, boolean busyWait) {
+        long tokensPerPeriod = Math.max(1L, (long) (rate / 1000));
+        long periodNanos = (long) (tokensPerPeriod * SECONDS.toNanos(1) / rate);
+        TokenBucketBuilder builder = TokenBucketBuilder.builder()
+                .withCapacity((long) Math.max(1, rate))
+                .withRefillStrategy(new FixedIntervalRefillStrategy(Ticker.systemTicker(), tokensPerPeriod, periodNanos, NANOSECONDS));
+        return (busyWait ? builder.withBusyWaitSleepStrategy() : builder.withYieldingSleepStrategy()).build();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        String[] rateArgs = (args.length > 1 ? args[1] : "2000,20000,5000").split(",");
+        long phaseSeconds = args.length > 2 ? Long.parseLong(args[2]) : 3;
+        double[] rates = new double[rateArgs.length];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = Double.parseDouble(rateArgs[i]);
+        }
+        RateAccuracyHarness harness = new RateAccuracyHarness(threads, rates, phaseSeconds * 1000, 250, MILLISECONDS, System.out);
+
+        MeasuringStopwatch bursty = new MeasuringStopwatch(SleepingStopwatch.createFromSystemTimer());
+        harness.run(rateLimiter("SmoothBursty", new SmoothBursty(bursty, 1.0), bursty));
+
+        MeasuringStopwatch precise = new MeasuringStopwatch(SleepingStopwatch.createPrecise());
+        harness.run(rateLimiter("SmoothBursty(precise)", new SmoothBursty(precise, 1.0), precise));
+
+        MeasuringStopwatch warmingUp = new MeasuringStopwatch(SleepingStopwatch.createFromSystemTimer());
+        harness.run(rateLimiter("SmoothWarmingUp", new SmoothWarmingUp(warmingUp, 1, SECONDS, 3.0), warmingUp));
+
+        MeasuringStopwatch fixedPoint = new MeasuringStopwatch(SleepingStopwatch.createFromSystemTimer());
+        harness.run(rateLimiter("FixedPointRateLimiter", new FixedPointRateLimiter(fixedPoint, 1.0), fixedPoint));
+
+        harness.run(tokenBucket("LeakyTokenBucket(yielding)", leakyTokenBucket(rates[0], false)));
+        harness.run(tokenBucket("LeakyTokenBucket(busy-wait)", leakyTokenBucket(rates[0], true)));
+    }
+}
@@ -0,0 +1,79 @@
+package org.isomorphism.limit.benchmark;
+
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.isomorphism.limit.ratelimiter.RateLimiters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一负载下对比各RateLimiter实现的tryAcquire开销。
+ * <p>
+ * permitsPerSecond很大时几乎所有请求都能拿到许可，测的是放行路径；很小时几乎全部被拒绝，测的是拒绝路径。
+ * 滑动窗口的窗口长度取1秒，maxPermits等于permitsPerSecond，与SmoothBursty的1秒突发容量对应。
+ * <p>
+ * 运行：mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.isomorphism.limit.benchmark.RateLimiterBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark {
+
+    @Param({"SmoothBursty", "SlidingWindowCounter", "SlidingWindowLog"})
+    public String limiter;
+
+    @Param({"1000", "10000000"})
+    public int permitsPerSecond;
+
+    private RateLimiter rateLimiter;
+
+    @Setup
+    public void setUp() {
+        if ("SmoothBursty".equals(limiter)) {
+            rateLimiter = RateLimiters.create(permitsPerSecond);
+        } else if ("SlidingWindowCounter".equals(limiter)) {
+            rateLimiter = RateLimiters.createSlidingWindow(permitsPerSecond, 1, TimeUnit.SECONDS, 10);
+        } else if ("SlidingWindowLog".equals(limiter)) {
+            rateLimiter = RateLimiters.createExactSlidingWindow(permitsPerSecond, 1, TimeUnit.SECONDS);
+        } else {
+            throw new IllegalArgumentException(limiter);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tryAcquireSingleThread() {
+        return rateLimiter.tryAcquire();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tryAcquireContended() {
+        return rateLimiter.tryAcquire();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RateLimiterBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,67 @@
+package org.isomorphism.limit.benchmark;
+
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.isomorphism.limit.ratelimiter.RateLimiters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单线程按固定速率调用acquire，对比普通睡眠与精确等待的发放间隔。
+ * 理想情况下每次调用耗时为 1 / permitsPerSecond，超出的部分就是多睡的时间。
+ * <p>
+ * 运行：mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.isomorphism.limit.benchmark.SleepBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SleepBenchmark {
+
+    @Param({"system", "precise"})
+    public String stopwatch;
+
+    @Param({"1000", "20000"})
+    public int permitsPerSecond;
+
+    private RateLimiter rateLimiter;
+
+    @Setup
+    public void setUp() {
+        if ("system".equals(stopwatch)) {
+            rateLimiter = RateLimiters.create(permitsPerSecond);
+        } else if ("precise".equals(stopwatch)) {
+            rateLimiter = RateLimiters.createPrecise(permitsPerSecond);
+        } else {
+            throw new IllegalArgumentException(stopwatch);
+        }
+    }
+
+    @Benchmark
+    public double acquire() {
+        return rateLimiter.acquire();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SleepBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
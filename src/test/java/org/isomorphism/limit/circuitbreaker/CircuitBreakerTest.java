@@ -0,0 +1,134 @@
+package org.isomorphism.limit.circuitbreaker;
+
+import org.isomorphism.limit.FakeTicker;
+import org.isomorphism.limit.timelimiter.SimpleTimeLimiter;
+import org.isomorphism.limit.timelimiter.TimeLimiter;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void testOpensOnFailureRate() {
+        CircuitBreaker breaker = CircuitBreaker.newBuilder()
+                .withSlidingWindow(10, 4)
+                .withFailureRateThreshold(50.0)
+                .withTicker(ticker)
+                .build();
+        breaker.tryAcquire().onSuccess();
+        breaker.tryAcquire().onFailure();
+        breaker.tryAcquire().onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(-1.0, breaker.getFailureRate(), 0.0);
+
+        breaker.tryAcquire().onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+    }
+
+    @Test
+    public void testOpensOnConsecutiveFailures() {
+        CircuitBreaker breaker = CircuitBreaker.newBuilder()
+                .withSlidingWindow(100, 100)
+                .withConsecutiveFailureThreshold(3)
+                .withTicker(ticker)
+                .build();
+        breaker.tryAcquire().onFailure();
+        breaker.tryAcquire().onFailure();
+        breaker.tryAcquire().onSuccess();
+        breaker.tryAcquire().onFailure();
+        breaker.tryAcquire().onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.tryAcquire().onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenProbing() {
+        CircuitBreaker breaker = CircuitBreaker.newBuilder()
+                .withConsecutiveFailureThreshold(1)
+                .withOpenDuration(1, SECONDS)
+                .withHalfOpenProbes(2)
+                .withTicker(ticker)
+                .build();
+        breaker.tryAcquire().onFailure();
+        assertNull(breaker.tryAcquire());
+
+        ticker.advance(1, SECONDS);
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // 被忽略的探测归还名额
+        second.onIgnore();
+        CircuitBreaker.Permit third = breaker.tryAcquire();
+        assertNotNull(third);
+        first.onSuccess();
+        third.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        ticker.advance(1, SECONDS);
+        breaker.tryAcquire().onSuccess();
+        breaker.tryAcquire().onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testStaleOutcomesAreIgnored() {
+        CircuitBreaker breaker = CircuitBreaker.newBuilder()
+                .withConsecutiveFailureThreshold(1)
+                .withTicker(ticker)
+                .build();
+        CircuitBreaker.Permit slow = breaker.tryAcquire();
+        breaker.tryAcquire().onFailure();
+        ticker.advance(10, SECONDS);
+        breaker.tryAcquire();
+        slow.onSuccess();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testTimeLimiterRejectsWhenOpen() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CircuitBreaker breaker = CircuitBreaker.newBuilder().withConsecutiveFailureThreshold(1).withTicker(ticker).build();
+            TimeLimiter limiter = new CircuitBreakerTimeLimiter(SimpleTimeLimiter.create(executor), breaker);
+            try {
+                limiter.callWithTimeout(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        throw new Exception("boom");
+                    }
+                }, 1, SECONDS);
+                fail();
+            } catch (ExecutionException expected) {
+            }
+            try {
+                limiter.callWithTimeout(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        throw new AssertionError("should not run");
+                    }
+                }, 1, SECONDS);
+                fail();
+            } catch (CircuitBreakerOpenException expected) {
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.isomorphism.limit.concurrency;
+
+import com.google.common.base.Ticker;
+import org.isomorphism.limit.FakeTicker;
+import org.isomorphism.limit.timelimiter.SimpleTimeLimiter;
+import org.isomorphism.limit.timelimiter.TimeLimiter;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConcurrencyLimiterTest {
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void testRejectsAboveLimit() {
+        SimpleConcurrencyLimiter limiter = new SimpleConcurrencyLimiter(new AimdLimit(2, 1, 10, 0.5), ticker);
+        ConcurrencyLimiter.Listener first = limiter.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(limiter.tryAcquire());
+        assertNull(limiter.tryAcquire());
+
+        first.onIgnore();
+        assertEquals(1, limiter.getInFlight());
+        assertNotNull(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testReleaseIsIdempotent() {
+        SimpleConcurrencyLimiter limiter = new SimpleConcurrencyLimiter(new AimdLimit(2, 1, 10, 0.5), ticker);
+        ConcurrencyLimiter.Listener listener = limiter.tryAcquire();
+        listener.onSuccess();
+        listener.onSuccess();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testAimdIncreasesWhenUtilizedAndBacksOffOnDrop() {
+        AimdLimit limit = new AimdLimit(10, 1, 20, 0.5);
+        limit.onSample(1000, 2, false);
+        assertEquals(10, limit.getLimit());
+
+        limit.onSample(1000, 5, false);
+        assertEquals(11, limit.getLimit());
+
+        limit.onSample(1000, 11, true);
+        assertEquals(5, limit.getLimit());
+    }
+
+    @Test
+    public void testAimdRespectsBounds() {
+        AimdLimit limit = new AimdLimit(2, 2, 3, 0.5);
+        limit.onSample(1000, 2, true);
+        assertEquals(2, limit.getLimit());
+        limit.onSample(1000, 2, false);
+        limit.onSample(1000, 3, false);
+        assertEquals(3, limit.getLimit());
+    }
+
+    @Test
+    public void testVegasGrowsWithoutQueueingAndShrinksWithQueueing() {
+        VegasLimit limit = new VegasLimit(100, 1, 1000, 1000);
+        limit.onSample(10000, 100, false);
+        limit.onSample(10000, 100, false);
+        int grown = limit.getLimit();
+        assertTrue(grown > 100);
+
+        // RTT翻倍，排队长度约为上限的一半
+        limit.onSample(20000, grown, false);
+        assertTrue(limit.getLimit() < grown);
+    }
+
+    @Test
+    public void testGradientShrinksWhenRttRises() {
+        GradientLimit limit = new GradientLimit(100, 1, 1000, 1.0, 1.0, 100);
+        limit.onSample(10000, 100, false);
+        int grown = limit.getLimit();
+        assertEquals(110, grown);
+
+        limit.onSample(40000, grown, false);
+        assertTrue(limit.getLimit() < grown);
+    }
+
+    @Test
+    public void testTimeoutsLowerLimitOfTimeLimiter() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            ConcurrencyLimiter limiter = new SimpleConcurrencyLimiter(new AimdLimit(8, 1, 8, 0.5), Ticker.systemTicker());
+            TimeLimiter timeLimiter = ConcurrencyLimiters.limit(SimpleTimeLimiter.create(executor), limiter);
+            try {
+                timeLimiter.callWithTimeout(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        Thread.sleep(1000);
+                        return null;
+                    }
+                }, 10, TimeUnit.MILLISECONDS);
+                fail();
+            } catch (TimeoutException expected) {
+            }
+            assertEquals(4, limiter.getLimit());
+            assertEquals(0, limiter.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = ConcurrencyLimitExceededException.class)
+    public void testTimeLimiterRejectsWhenSaturated() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            ConcurrencyLimiter limiter = new SimpleConcurrencyLimiter(new AimdLimit(1, 1, 1, 0.5), ticker);
+            limiter.tryAcquire();
+            TimeLimiter timeLimiter = ConcurrencyLimiters.limit(SimpleTimeLimiter.create(executor), limiter);
+            timeLimiter.runWithTimeout(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.isomorphism.limit.ratelimiter.control;
+
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RateControllerTest {
+    private final MockRateLimiter rateLimiter = new MockRateLimiter();
+    private final MockSignal latency = new MockSignal();
+
+    private final RateController controller = RateController.builder(rateLimiter, 100.0)
+            .withBounds(10.0, 150.0)
+            .withHysteresis(0.1)
+            .withIncreaseFactor(1.2)
+            .withMaxDecreaseFactor(0.5)
+            .withSignal(latency, 200.0)
+            .build();
+
+    @Test
+    public void testInitialRateIsApplied() {
+        assertEquals(100.0, rateLimiter.rate, 0.0);
+        assertEquals(1, rateLimiter.updates);
+    }
+
+    @Test
+    public void testIncreasesWhenBelowTarget() {
+        latency.value = 100.0;
+        assertEquals(120.0, controller.tick(), 1e-9);
+        assertEquals(120.0, rateLimiter.rate, 1e-9);
+    }
+
+    @Test
+    public void testDecreasesProportionallyWhenAboveTarget() {
+        latency.value = 250.0;
+        assertEquals(80.0, controller.tick(), 1e-9);
+    }
+
+    @Test
+    public void testDecreaseIsBounded() {
+        latency.value = 2000.0;
+        assertEquals(50.0, controller.tick(), 1e-9);
+        assertEquals(25.0, controller.tick(), 1e-9);
+        assertEquals(12.5, controller.tick(), 1e-9);
+        assertEquals(10.0, controller.tick(), 1e-9);
+    }
+
+    @Test
+    public void testHoldsWithinHysteresisBand() {
+        latency.value = 210.0;
+        controller.tick();
+        latency.value = 190.0;
+        controller.tick();
+        assertEquals(100.0, controller.getRate(), 0.0);
+        assertEquals(1, rateLimiter.updates);
+    }
+
+    @Test
+    public void testIncreaseIsBounded() {
+        latency.value = 0.0;
+        controller.tick();
+        controller.tick();
+        controller.tick();
+        controller.tick();
+        assertEquals(150.0, controller.getRate(), 0.0);
+        // 到达上界之后不再调用setRate
+        assertEquals(4, rateLimiter.updates);
+    }
+
+    @Test
+    public void testWorstSignalWins() {
+        MockSignal errors = new MockSignal();
+        RateController controller = RateController.builder(rateLimiter, 100.0)
+                .withSignal(latency, 200.0)
+                .withSignal(errors, 0.01)
+                .build();
+        latency.value = 10.0;
+        errors.value = 0.02;
+        assertEquals(50.0, controller.tick(), 1e-9);
+    }
+
+    @Test
+    public void testErrorRateSignal() {
+        ErrorRateSignal signal = new ErrorRateSignal();
+        assertEquals(0.0, signal.read(), 0.0);
+        signal.recordFailure();
+        signal.recordSuccess();
+        signal.recordSuccess();
+        signal.recordSuccess();
+        assertEquals(0.25, signal.read(), 0.0);
+        assertEquals(0.0, signal.read(), 0.0);
+    }
+
+    @Test
+    public void testScheduledTickFailuresAreRecorded() throws InterruptedException {
+        final IllegalStateException failure = new IllegalStateException("signal unavailable");
+        RateController failing = RateController.builder(rateLimiter, 100.0)
+                .withSignal(new FeedbackSignal() {
+                    @Override
+                    public double read() {
+                        throw failure;
+                    }
+                }, 200.0)
+                .build();
+        assertEquals(0L, failing.getFailureCount());
+        assertNull(failing.getLastFailure());
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            failing.start(executor, 1, TimeUnit.MILLISECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (failing.getFailureCount() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            failing.stop();
+        } finally {
+            executor.shutdownNow();
+        }
+        // 第二次失败说明异常没有终止调度
+        assertTrue(failing.getFailureCount() >= 2);
+        assertSame(failure, failing.getLastFailure());
+        assertEquals(100.0, failing.getRate(), 0.0);
+    }
+
+    private static final class MockSignal implements FeedbackSignal {
+        double value;
+
+        @Override
+        public double read() {
+            return value;
+        }
+    }
+
+    private static final class MockRateLimiter implements RateLimiter {
+        double rate;
+        int updates;
+
+        @Override
+        public void setRate(double permitsPerSecond) {
+            rate = permitsPerSecond;
+            updates++;
+        }
+
+        @Override
+        public double acquire() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public double acquire(int permits) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean tryAcquire(long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean tryAcquire(int permits) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean tryAcquire() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FairShareRateLimiterTest {
+
+    @Test
+    public void testAggregateRate() {
+        FakeStopwatch stopwatch = new FakeStopwatch();
+        FairShareRateLimiter limiter = create(stopwatch, 10.0, 0.0);
+        limiter.acquire("a");
+        limiter.acquire("b");
+        limiter.acquire("a", 2);
+        limiter.acquire("c");
+        // 许可先等待再扣减：第1个立即发放，之后每个许可间隔100毫秒
+        assertEquals(MILLISECONDS.toNanos(400), stopwatch.nanos);
+        assertEquals(0, limiter.getTenantCount());
+    }
+
+    @Test
+    public void testTryAcquire() {
+        FakeStopwatch stopwatch = new FakeStopwatch();
+        FairShareRateLimiter limiter = create(stopwatch, 10.0, 1.0);
+        stopwatch.advance(1, SECONDS);
+        assertTrue(limiter.tryAcquire("a", 10, 0, SECONDS));
+        assertTrue(limiter.tryAcquire("b"));
+        assertFalse(limiter.tryAcquire("b"));
+        assertFalse(limiter.tryAcquire("b", 1, 50, MILLISECONDS));
+        assertTrue(limiter.tryAcquire("b", 1, 100, MILLISECONDS));
+        assertEquals(MILLISECONDS.toNanos(1100), stopwatch.nanos);
+    }
+
+    @Test
+    public void testRateIsSetByConstructor() {
+        FairShareRateLimiter limiter = new FairShareRateLimiter(new FakeStopwatch(), 10.0, 0.0);
+        assertEquals(10.0, limiter.getRate(), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorRejectsZeroRate() {
+        new FairShareRateLimiter(new FakeStopwatch(), 0.0, 0.0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTenantViewCannotSetRate() {
+        create(new FakeStopwatch(), 10.0, 0.0).forTenant("a").setRate(1.0);
+    }
+
+    @Test
+    public void testLightTenantNotDelayedByNoisyNeighbour() throws Exception {
+        final FairShareRateLimiter limiter = create(SleepingStopwatch.createFromSystemTimer(), 100.0, 0.0);
+        final AtomicBoolean stop = new AtomicBoolean();
+        Thread[] noisy = startLoops(limiter.forTenant("noisy"), 8, stop, new AtomicInteger());
+        try {
+            Thread.sleep(100);
+            RateLimiter light = limiter.forTenant("light");
+            double totalWait = 0.0;
+            for (int i = 0; i < 10; i++) {
+                totalWait += light.acquire();
+                Thread.sleep(20);
+            }
+            // 不公平时要排在8个重租户请求之后，平均等待约80毫秒；公平时最多等一个间隔
+            assertTrue("average wait " + totalWait / 10, totalWait / 10 < 0.04);
+        } finally {
+            stop.set(true);
+            join(noisy);
+        }
+    }
+
+    @Test
+    public void testWeightedShares() throws Exception {
+        FairShareRateLimiter limiter = create(SleepingStopwatch.createFromSystemTimer(), 200.0, 0.0);
+        limiter.setWeight("heavy", 3.0);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger heavyCount = new AtomicInteger();
+        AtomicInteger lightCount = new AtomicInteger();
+        // 线程数与权重相反，分到的许可仍然由权重决定
+        Thread[] heavy = startLoops(limiter.forTenant("heavy"), 2, stop, heavyCount);
+        Thread[] light = startLoops(limiter.forTenant("light"), 6, stop, lightCount);
+        Thread.sleep(1000);
+        stop.set(true);
+        join(heavy);
+        join(light);
+
+        double ratio = 1.0 * heavyCount.get() / lightCount.get();
+        assertTrue("ratio " + ratio, ratio > 2.0 && ratio < 4.5);
+        int total = heavyCount.get() + lightCount.get();
+        assertTrue("total " + total, total > 150 && total < 260);
+        assertEquals(0, limiter.getActiveTenantCount());
+        assertEquals(0, limiter.getTenantCount());
+    }
+
+    private static FairShareRateLimiter create(SleepingStopwatch stopwatch, double permitsPerSecond, double maxBurstSeconds) {
+        return new FairShareRateLimiter(stopwatch, permitsPerSecond, maxBurstSeconds);
+    }
+
+    private static Thread[] startLoops(final RateLimiter limiter, int threads, final AtomicBoolean stop, final AtomicInteger count) {
+        final CountDownLatch started = new CountDownLatch(threads);
+        Thread[] result = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            result[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    while (!stop.get()) {
+                        limiter.acquire();
+                        count.incrementAndGet();
+                    }
+                }
+            });
+            result[i].setDaemon(true);
+            result[i].start();
+        }
+        return result;
+    }
+
+    private static void join(Thread[] threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试用的计时器：时间只在sleep或者手动推进时前进。
+ */
+class FakeStopwatch extends SleepingStopwatch {
+    long nanos = 0L;
+    long sleptNanos = 0L;
+
+    @Override
+    protected long readMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    protected void sleepMicrosUninterruptibly(long micros) {
+        sleepNanosUninterruptibly(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    @Override
+    protected long readNanos() {
+        return nanos;
+    }
+
+    @Override
+    protected void sleepNanosUninterruptibly(long nanos) {
+        if (nanos > 0) {
+            this.nanos += nanos;
+            sleptNanos += nanos;
+        }
+    }
+
+    void advance(long duration, TimeUnit unit) {
+        nanos += unit.toNanos(duration);
+    }
+
+    long instantMicros() {
+        return readMicros();
+    }
+
+    long sleptMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(sleptNanos);
+    }
+}
@@ -0,0 +1,104 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FixedPointRateLimiterTest {
+
+    private final FakeStopwatch stopwatch = new FakeStopwatch();
+
+    @Test
+    public void testExactAtFiveMillionPerSecond() {
+        FixedPointRateLimiter limiter = create(5000000.0, 0.0);
+        for (int i = 0; i < 5000000; i++) {
+            limiter.acquire();
+        }
+        // 第5000001个许可恰好在1秒时发放
+        limiter.acquire();
+        assertEquals(SECONDS.toNanos(1), stopwatch.nanos);
+    }
+
+    @Test
+    public void testSubNanosecondFractionAccumulates() {
+        // 间隔为333.33...纳秒，用微秒整数表示会有0.1%的误差
+        FixedPointRateLimiter limiter = create(3000000.0, 0.0);
+        for (int i = 0; i <= 3000000; i++) {
+            limiter.acquire();
+        }
+        assertEquals(SECONDS.toNanos(1), stopwatch.nanos);
+    }
+
+    @Test
+    public void testOneBillionPerSecond() {
+        FixedPointRateLimiter limiter = create(1e9, 0.0);
+        limiter.acquire(1000);
+        limiter.acquire();
+        assertEquals(1000, stopwatch.nanos);
+    }
+
+    @Test
+    public void testVerySlowRate() {
+        FixedPointRateLimiter limiter = create(0.001, 0.0);
+        limiter.acquire();
+        limiter.acquire();
+        assertEquals(SECONDS.toNanos(1000), stopwatch.nanos);
+        assertEquals(0.001, limiter.getRate(), 1e-12);
+    }
+
+    @Test
+    public void testBurstAfterIdle() {
+        FixedPointRateLimiter limiter = create(1000000.0, 1.0);
+        stopwatch.advance(10, SECONDS);
+        // 最多积攒1秒即100万个许可，与SmoothBursty一样，额度用完的那一刻还能再预支一个
+        assertTrue(limiter.tryAcquire(1000000));
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire(1, 1000, NANOSECONDS));
+    }
+
+    @Test
+    public void testTryAcquireTimeout() {
+        FixedPointRateLimiter limiter = create(1000.0, 0.0);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire(999999, NANOSECONDS));
+        assertTrue(limiter.tryAcquire(1, MILLISECONDS));
+        assertEquals(MILLISECONDS.toNanos(1), stopwatch.nanos);
+    }
+
+    @Test
+    public void testSetRateAppliesToNextRequest() {
+        FixedPointRateLimiter limiter = create(1000.0, 0.0);
+        limiter.acquire();
+        limiter.setRate(2000000.0);
+        // 上一个请求仍按旧速率偿还
+        limiter.acquire();
+        assertEquals(MILLISECONDS.toNanos(1), stopwatch.nanos);
+        limiter.acquire();
+        assertEquals(MILLISECONDS.toNanos(1) + 500, stopwatch.nanos);
+    }
+
+    @Test
+    public void testRejectsInfiniteRate() {
+        FixedPointRateLimiter limiter = create(1000.0, 0.0);
+        try {
+            limiter.setRate(Double.POSITIVE_INFINITY);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        // 速率保持不变
+        assertEquals(1000.0, limiter.getRate(), 1e-9);
+    }
+
+    private FixedPointRateLimiter create(double permitsPerSecond, double maxBurstSeconds) {
+        FixedPointRateLimiter limiter = new FixedPointRateLimiter(stopwatch, maxBurstSeconds);
+        limiter.setRate(permitsPerSecond);
+        return limiter;
+    }
+}
@@ -0,0 +1,63 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * 包装一个真实的计时器，记录每次睡眠实际多睡了多久（实际睡眠时长 - 请求的时长，单位纳秒）。
+ */
+public class MeasuringStopwatch extends SleepingStopwatch {
+    private final SleepingStopwatch delegate;
+    private long[] oversleepNanos = new long[1024];
+    private int size;
+
+    public MeasuringStopwatch(SleepingStopwatch delegate) {
+        this.delegate = checkNotNull(delegate);
+    }
+
+    @Override
+    protected long readMicros() {
+        return delegate.readMicros();
+    }
+
+    @Override
+    protected long readNanos() {
+        return delegate.readNanos();
+    }
+
+    @Override
+    protected void sleepMicrosUninterruptibly(long micros) {
+        if (micros > 0) {
+            long start = System.nanoTime();
+            delegate.sleepMicrosUninterruptibly(micros);
+            record(System.nanoTime() - start - MICROSECONDS.toNanos(micros));
+        }
+    }
+
+    @Override
+    protected void sleepNanosUninterruptibly(long nanos) {
+        if (nanos > 0) {
+            long start = System.nanoTime();
+            delegate.sleepNanosUninterruptibly(nanos);
+            record(System.nanoTime() - start - nanos);
+        }
+    }
+
+    /**
+     * 返回并清空目前记录的多睡时长
+     */
+    public synchronized long[] drainOversleepNanos() {
+        long[] result = Arrays.copyOf(oversleepNanos, size);
+        size = 0;
+        return result;
+    }
+
+    private synchronized void record(long nanos) {
+        if (size == oversleepNanos.length) {
+            oversleepNanos = Arrays.copyOf(oversleepNanos, size * 2);
+        }
+        oversleepNanos[size++] = nanos;
+    }
+}
@@ -0,0 +1,41 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertTrue;
+
+public class PreciseSleepingStopwatchTest {
+
+    @Test
+    public void testNeverSleepsLessThanRequested() {
+        PreciseSleepingStopwatch stopwatch = new PreciseSleepingStopwatch();
+        long[] requests = {1, 10, 50, 200, 1000, 3000};
+        for (long micros : requests) {
+            long start = stopwatch.readNanos();
+            stopwatch.sleepMicrosUninterruptibly(micros);
+            assertTrue(stopwatch.readNanos() - start >= MICROSECONDS.toNanos(micros));
+        }
+    }
+
+    @Test
+    public void testLatencyEstimateStaysBounded() {
+        PreciseSleepingStopwatch stopwatch = new PreciseSleepingStopwatch();
+        for (int i = 0; i < 50; i++) {
+            stopwatch.sleepMicrosUninterruptibly(500);
+        }
+        long estimate = stopwatch.getLatencyEstimateNanos();
+        assertTrue(estimate >= 0 && estimate <= MICROSECONDS.toNanos(2000));
+    }
+
+    @Test
+    public void testInterruptIsPreserved() {
+        PreciseSleepingStopwatch stopwatch = new PreciseSleepingStopwatch();
+        Thread.currentThread().interrupt();
+        long start = stopwatch.readNanos();
+        stopwatch.sleepMicrosUninterruptibly(MILLISECONDS.toMicros(5));
+        assertTrue(stopwatch.readNanos() - start >= MILLISECONDS.toNanos(5));
+        assertTrue(Thread.interrupted());
+    }
+}
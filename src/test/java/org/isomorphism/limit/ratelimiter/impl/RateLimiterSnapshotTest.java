@@ -0,0 +1,111 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.isomorphism.limit.ratelimiter.RateLimiterSnapshot;
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+
+public class RateLimiterSnapshotTest {
+
+    private final FakeStopwatch stopwatch = new FakeStopwatch();
+
+    @Test
+    public void testBurstySnapshot() {
+        SmoothBursty limiter = new SmoothBursty(stopwatch, 1.0);
+        limiter.setRate(10.0);
+        stopwatch.advance(500, MILLISECONDS);
+
+        RateLimiterSnapshot snapshot = limiter.snapshot();
+        assertEquals(10.0, snapshot.getRate(), 1e-9);
+        assertEquals(5.0, snapshot.getStoredPermits(), 1e-9);
+        assertEquals(10.0, snapshot.getMaxStoredPermits(), 1e-9);
+        assertEquals(0, snapshot.getWaitTime(MILLISECONDS));
+
+        limiter.reserve(8);
+        snapshot = limiter.snapshot();
+        assertEquals(0.0, snapshot.getStoredPermits(), 1e-9);
+        assertEquals(300, snapshot.getWaitTime(MILLISECONDS));
+    }
+
+    @Test
+    public void testWarmingUpSnapshotStartsCold() {
+        SmoothWarmingUp limiter = new SmoothWarmingUp(stopwatch, 1, SECONDS, 3.0);
+        limiter.setRate(10.0);
+        RateLimiterSnapshot snapshot = limiter.snapshot();
+        assertEquals(snapshot.getMaxStoredPermits(), snapshot.getStoredPermits(), 1e-9);
+    }
+
+    @Test
+    public void testFixedPointSnapshot() {
+        FixedPointRateLimiter limiter = new FixedPointRateLimiter(stopwatch, 1.0);
+        limiter.setRate(10.0);
+        stopwatch.advance(500, MILLISECONDS);
+
+        RateLimiterSnapshot snapshot = limiter.snapshot();
+        assertEquals(10.0, snapshot.getRate(), 1e-9);
+        assertEquals(5.0, snapshot.getStoredPermits(), 1e-9);
+        assertEquals(10.0, snapshot.getMaxStoredPermits(), 1e-9);
+        assertEquals(0, snapshot.getWaitTime(MILLISECONDS));
+
+        limiter.acquire(8);
+        snapshot = limiter.snapshot();
+        assertEquals(0.0, snapshot.getStoredPermits(), 1e-9);
+        assertEquals(300, snapshot.getWaitTime(MILLISECONDS));
+    }
+
+    @Test
+    public void testSlidingWindowLogSnapshot() {
+        SlidingWindowLog limiter = new SlidingWindowLog(stopwatch, 10, 1, SECONDS);
+        limiter.acquire(4);
+        stopwatch.advance(200, MILLISECONDS);
+        limiter.acquire(6);
+
+        RateLimiterSnapshot snapshot = limiter.snapshot();
+        assertEquals(10.0, snapshot.getRate(), 1e-9);
+        assertEquals(0.0, snapshot.getStoredPermits(), 1e-9);
+        assertEquals(10.0, snapshot.getMaxStoredPermits(), 1e-9);
+        assertEquals(800, snapshot.getWaitTime(MILLISECONDS));
+
+        // 最早的4个许可滑出窗口
+        stopwatch.advance(800, MILLISECONDS);
+        snapshot = limiter.snapshot();
+        assertEquals(4.0, snapshot.getStoredPermits(), 1e-9);
+        assertEquals(0, snapshot.getWaitTime(MILLISECONDS));
+    }
+
+    @Test
+    public void testSlidingWindowCounterSnapshot() {
+        SlidingWindowCounter limiter = new SlidingWindowCounter(stopwatch, 10, 1, SECONDS, 10);
+        limiter.acquire(10);
+        RateLimiterSnapshot snapshot = limiter.snapshot();
+        assertEquals(10.0, snapshot.getRate(), 1e-9);
+        assertEquals(0.0, snapshot.getStoredPermits(), 1e-9);
+        assertEquals(100, snapshot.getWaitTime(MILLISECONDS));
+
+        // 发放许可的子窗口刚刚滑出，按剩余比例加权
+        stopwatch.advance(1050, MILLISECONDS);
+        snapshot = limiter.snapshot();
+        assertEquals(5.0, snapshot.getStoredPermits(), 1e-9);
+        assertEquals(0, snapshot.getWaitTime(MILLISECONDS));
+    }
+
+    @Test
+    public void testFairShareSnapshot() {
+        FairShareRateLimiter limiter = new FairShareRateLimiter(stopwatch, 10.0, 1.0);
+        stopwatch.advance(500, MILLISECONDS);
+
+        RateLimiterSnapshot snapshot = limiter.snapshot();
+        assertEquals(10.0, snapshot.getRate(), 1e-9);
+        assertEquals(5.0, snapshot.getStoredPermits(), 1e-9);
+        assertEquals(10.0, snapshot.getMaxStoredPermits(), 1e-9);
+        assertEquals(0, snapshot.getWaitTime(MILLISECONDS));
+
+        limiter.acquire("a", 5);
+        limiter.acquire("b", 3);
+        snapshot = limiter.snapshot();
+        assertEquals(0.0, snapshot.getStoredPermits(), 1e-9);
+        assertEquals(300, snapshot.getWaitTime(MILLISECONDS));
+    }
+}
@@ -0,0 +1,83 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.isomorphism.limit.Reservation;
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReservationTest {
+
+    private final FakeStopwatch stopwatch = new FakeStopwatch();
+
+    @Test
+    public void testCancelPullsNextFreeTicketBack() {
+        SmoothBursty limiter = create(10.0, 0.0);
+        assertEquals(0, limiter.reserve(1).getDelay(MILLISECONDS));
+        Reservation reservation = limiter.reserve(5);
+        assertEquals(100, reservation.getDelay(MILLISECONDS));
+
+        assertTrue(reservation.cancel());
+        assertFalse(reservation.cancel());
+        assertEquals(0, reservation.getPermits());
+        assertEquals(100, limiter.reserve(1).getDelay(MILLISECONDS));
+    }
+
+    @Test
+    public void testSettleRefundsUnusedPermits() {
+        SmoothBursty limiter = create(10.0, 0.0);
+        Reservation reservation = limiter.reserve(10);
+        stopwatch.advance(200, MILLISECONDS);
+        reservation.settle(4);
+        assertEquals(4, reservation.getPermits());
+        // 预约10个推迟到1000毫秒，实际只用4个，推迟到400毫秒
+        assertEquals(200, limiter.reserve(1).getDelay(MILLISECONDS));
+    }
+
+    @Test
+    public void testSettleChargesExtraPermits() {
+        SmoothBursty limiter = create(10.0, 0.0);
+        Reservation reservation = limiter.reserve(1);
+        reservation.settle(5);
+        assertEquals(500, limiter.reserve(1).getDelay(MILLISECONDS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSettleAfterCancel() {
+        Reservation reservation = create(10.0, 0.0).reserve(1);
+        reservation.cancel();
+        reservation.settle(1);
+    }
+
+    @Test
+    public void testRefundWhenIdleIsStoredByBursty() {
+        SmoothBursty limiter = create(10.0, 1.0);
+        stopwatch.advance(1, SECONDS);
+        Reservation reservation = limiter.reserve(10);
+        assertEquals(0, reservation.getDelay(MILLISECONDS));
+        reservation.cancel();
+
+        // 退回的10个许可重新存起来，用完之后还能再预支一个
+        assertTrue(limiter.tryAcquire(10));
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testAcquireReservationWaits() {
+        SmoothBursty limiter = create(10.0, 0.0);
+        limiter.acquireReservation(3);
+        Reservation reservation = limiter.acquireReservation(1);
+        assertEquals(MILLISECONDS.toNanos(300), stopwatch.nanos);
+        assertEquals(0, reservation.getDelay(MILLISECONDS));
+    }
+
+    private SmoothBursty create(double permitsPerSecond, double maxBurstSeconds) {
+        SmoothBursty limiter = new SmoothBursty(stopwatch, maxBurstSeconds);
+        limiter.setRate(permitsPerSecond);
+        return limiter;
+    }
+}
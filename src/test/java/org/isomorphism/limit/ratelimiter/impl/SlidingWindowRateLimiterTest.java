@@ -0,0 +1,143 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlidingWindowRateLimiterTest {
+    private static final long WINDOW_MICROS = SECONDS.toMicros(10);
+
+    private final FakeStopwatch stopwatch = new FakeStopwatch();
+
+    @Test
+    public void testLogAllowsBurstUpToLimit() {
+        SlidingWindowLog limiter = new SlidingWindowLog(stopwatch, 5, 10, SECONDS);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testLogReleasesPermitWhenItLeavesWindow() {
+        SlidingWindowLog limiter = new SlidingWindowLog(stopwatch, 2, 10, SECONDS);
+        assertTrue(limiter.tryAcquire());
+        stopwatch.advance(4, SECONDS);
+        assertTrue(limiter.tryAcquire());
+        stopwatch.advance(5, SECONDS);
+        assertFalse(limiter.tryAcquire());
+
+        // 第一个许可在t=10s滑出窗口
+        stopwatch.advance(1, SECONDS);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testLogAcquireWaitsForOldestPermit() {
+        SlidingWindowLog limiter = new SlidingWindowLog(stopwatch, 3, 10, SECONDS);
+        limiter.acquire(3);
+        stopwatch.advance(2, SECONDS);
+        assertEquals(8.0, limiter.acquire(), 1e-9);
+    }
+
+    @Test
+    public void testLogNeverExceedsLimitInAnyWindow() {
+        SlidingWindowLog limiter = new SlidingWindowLog(stopwatch, 7, 10, SECONDS);
+        List<Long> granted = new ArrayList<Long>();
+        for (int i = 0; i < 1000; i++) {
+            stopwatch.advance((i * 7919) % 3000, MILLISECONDS);
+            if (limiter.tryAcquire()) {
+                granted.add(stopwatch.instantMicros());
+            }
+        }
+        assertWindowLimit(granted, 7);
+    }
+
+    @Test
+    public void testLogGrowAndShrink() {
+        SlidingWindowLog limiter = new SlidingWindowLog(stopwatch, 2, 10, SECONDS);
+        assertTrue(limiter.tryAcquire(2));
+        limiter.setMaxPermits(4);
+        assertTrue(limiter.tryAcquire(2));
+        assertFalse(limiter.tryAcquire());
+
+        limiter.setMaxPermits(3);
+        stopwatch.advance(10, SECONDS);
+        assertTrue(limiter.tryAcquire(3));
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testSetRateConvertsToWindowLimit() {
+        SlidingWindowLog limiter = new SlidingWindowLog(stopwatch, 1, 10, SECONDS);
+        limiter.setRate(2.5);
+        assertEquals(25, limiter.getMaxPermits());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLogRejectsMorePermitsThanLimit() {
+        new SlidingWindowLog(stopwatch, 2, 10, SECONDS).tryAcquire(3);
+    }
+
+    @Test
+    public void testCounterAllowsBurstUpToLimit() {
+        SlidingWindowCounter limiter = new SlidingWindowCounter(stopwatch, 5, 10, SECONDS, 10);
+        assertTrue(limiter.tryAcquire(5));
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testCounterInterpolatesOldestSubWindow() {
+        SlidingWindowCounter limiter = new SlidingWindowCounter(stopwatch, 10, 10, SECONDS, 10);
+        assertTrue(limiter.tryAcquire(10));
+
+        // 整个窗口过去后，最老的子窗口仍然按100%计入
+        stopwatch.advance(10, SECONDS);
+        assertFalse(limiter.tryAcquire());
+
+        // 再过半个子窗口，最老的子窗口只计入一半
+        stopwatch.advance(500, MILLISECONDS);
+        assertTrue(limiter.tryAcquire(5));
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testCounterAcquireWaitsForDecay() {
+        SlidingWindowCounter limiter = new SlidingWindowCounter(stopwatch, 4, 10, SECONDS, 10);
+        limiter.acquire(4);
+        limiter.acquire();
+        assertEquals(WINDOW_MICROS + SECONDS.toMicros(1) / 4, stopwatch.instantMicros());
+    }
+
+    @Test
+    public void testCounterNeverExceedsLimitInAnyWindow() {
+        SlidingWindowCounter limiter = new SlidingWindowCounter(stopwatch, 20, 10, SECONDS, 20);
+        List<Long> granted = new ArrayList<Long>();
+        for (int i = 0; i < 2000; i++) {
+            stopwatch.advance((i * 7919) % 200, MILLISECONDS);
+            if (limiter.tryAcquire()) {
+                granted.add(stopwatch.instantMicros());
+            }
+        }
+        // 近似算法，允许最老子窗口内分布不均带来的误差
+        assertWindowLimit(granted, 20 + 1);
+    }
+
+    private static void assertWindowLimit(List<Long> granted, int limit) {
+        int start = 0;
+        for (int end = 0; end < granted.size(); end++) {
+            while (granted.get(end) - granted.get(start) >= WINDOW_MICROS) {
+                start++;
+            }
+            assertTrue("window starting at " + granted.get(start) + " holds " + (end - start + 1), end - start + 1 <= limit);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.isomorphism.limit.ratelimiter.impl;
+
+import org.isomorphism.limit.ratelimiter.WarmupCurve;
+import org.isomorphism.limit.ratelimiter.WarmupCurves;
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SmoothWarmingUpTest {
+    private static final long WARMUP_MICROS = SECONDS.toMicros(10);
+
+    private final FakeStopwatch stopwatch = new FakeStopwatch();
+
+    @Test
+    public void testLookupTableMatchesLinearRamp() {
+        SmoothWarmingUp exact = create(WarmupCurves.linear(), 3.0);
+        SmoothWarmingUp tabulated = create(new WarmupCurve() {
+            @Override
+            public double shape(double x) {
+                return x;
+            }
+        }, 3.0);
+        assertEquals(exact.maxPermits, tabulated.maxPermits, 1e-6);
+        for (int permits = 1; permits < exact.maxPermits; permits += 7) {
+            assertEquals(exact.storedPermitsToWaitTime(exact.maxPermits, permits),
+                    tabulated.storedPermitsToWaitTime(tabulated.maxPermits, permits), 2);
+        }
+    }
+
+    @Test
+    public void testWarmupPeriodIsPreservedForEveryCurve() {
+        WarmupCurve[] curves = {WarmupCurves.linear(), WarmupCurves.exponential(3.0), WarmupCurves.logarithmic(10.0)};
+        for (WarmupCurve curve : curves) {
+            SmoothWarmingUp limiter = create(curve, 5.0);
+            // 用完全部存储许可：预热期warmupPeriod，加上阈值以下按稳定速率消耗的warmupPeriod / 2
+            long micros = limiter.storedPermitsToWaitTime(limiter.maxPermits, limiter.maxPermits);
+            assertEquals(curve.toString(), 1.5 * WARMUP_MICROS, micros, WARMUP_MICROS * 1e-6);
+        }
+    }
+
+    @Test
+    public void testColdIntervalAtMaxPermits() {
+        SmoothWarmingUp exponential = create(WarmupCurves.exponential(3.0), 4.0);
+        SmoothWarmingUp logarithmic = create(WarmupCurves.logarithmic(10.0), 4.0);
+        double stableIntervalMicros = exponential.stableIntervalMicros;
+
+        // 完全冷却时的发放间隔等于冷却间隔
+        assertEquals(4.0 * stableIntervalMicros, 100 * exponential.storedPermitsToWaitTime(exponential.maxPermits, 0.01), 0.01 * stableIntervalMicros);
+        assertEquals(4.0 * stableIntervalMicros, 100 * logarithmic.storedPermitsToWaitTime(logarithmic.maxPermits, 0.01), 0.01 * stableIntervalMicros);
+    }
+
+    @Test
+    public void testCurveShapesDifferInTheMiddle() {
+        SmoothWarmingUp linear = create(WarmupCurves.linear(), 3.0);
+        SmoothWarmingUp exponential = create(WarmupCurves.exponential(3.0), 3.0);
+        SmoothWarmingUp logarithmic = create(WarmupCurves.logarithmic(10.0), 3.0);
+
+        // 指数曲线在中间段已经接近稳定间隔，对数曲线仍然接近冷却间隔
+        double linearMiddle = middleInterval(linear);
+        assertTrue(middleInterval(exponential) < linearMiddle);
+        assertTrue(middleInterval(logarithmic) > linearMiddle);
+    }
+
+    @Test
+    public void testColdStartIsSlowerThanStableRate() {
+        SmoothWarmingUp limiter = create(WarmupCurves.exponential(2.0), 3.0);
+        limiter.acquire();
+        long first = stopwatch.sleptMicros();
+        limiter.acquire();
+        assertTrue(stopwatch.sleptMicros() - first > limiter.stableIntervalMicros);
+    }
+
+    private double middleInterval(SmoothWarmingUp limiter) {
+        double threshold = 0.5 * WARMUP_MICROS / limiter.stableIntervalMicros;
+        double middle = (threshold + limiter.maxPermits) / 2;
+        return limiter.storedPermitsToWaitTime(middle + 0.5, 1) / limiter.stableIntervalMicros;
+    }
+
+    private SmoothWarmingUp create(WarmupCurve curve, double coldFactor) {
+        SmoothWarmingUp limiter = new SmoothWarmingUp(stopwatch, 10, SECONDS, coldFactor, curve);
+        limiter.setRate(10.0);
+        return limiter;
+    }
+}
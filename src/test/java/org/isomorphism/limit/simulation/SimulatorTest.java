@@ -0,0 +1,152 @@
+package org.isomorphism.limit.simulation;
+
+import org.isomorphism.limit.ratelimiter.RateLimiter;
+import org.isomorphism.limit.ratelimiter.impl.SlidingWindowLog;
+import org.isomorphism.limit.ratelimiter.impl.SmoothBursty;
+import org.isomorphism.limit.tokenbuket.TokenBucket;
+import org.isomorphism.limit.tokenbuket.impl.LeakyTokenBucket;
+import org.isomorphism.limit.tokenbuket.strategy.FixedIntervalRefillStrategy;
+import org.isomorphism.limit.tokenbuket.strategy.SleepStrategy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SimulatorTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTraceRoundTrip() throws IOException {
+        File file = folder.newFile();
+        long[] timestamps = {0L, 0L, 1L, 1000L, SECONDS.toNanos(1), Long.MAX_VALUE / 2};
+        int[] permits = {1, 2, 300, 1, Integer.MAX_VALUE, 7};
+        TraceWriter writer = new TraceWriter(file);
+        for (int i = 0; i < timestamps.length; i++) {
+            writer.append(timestamps[i], permits[i]);
+        }
+        writer.close();
+
+        TraceReader reader = new TraceReader(file);
+        try {
+            assertEquals(timestamps.length, reader.size());
+            for (int i = 0; i < timestamps.length; i++) {
+                assertTrue(reader.next());
+                assertEquals(timestamps[i], reader.timestampNanos());
+                assertEquals(permits[i], reader.permits());
+            }
+            assertFalse(reader.next());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testDenialsWithoutQueueing() throws IOException {
+        // 2000/s的请求打到1000/s的限速器上，一半被拒绝
+        File file = uniformTrace(20000, 500);
+        VirtualClock clock = new VirtualClock();
+        RateLimiter limiter = new SmoothBursty(clock.stopwatch(), 1.0);
+        limiter.setRate(1000.0);
+
+        SimulationReport report = replay(clock, SimulationTargets.rateLimiter(limiter, 0, MILLISECONDS), file);
+        assertEquals(20000, report.getAdmitted() + report.getDenied());
+        assertEquals(0.5, report.getDenialRate(), 0.01);
+        assertEquals(0, report.getMaxDelay(MICROSECONDS));
+        assertEquals(1000, report.getPeakPermitsPerWindow(), 2);
+    }
+
+    @Test
+    public void testQueueingDelayIsRecorded() throws IOException {
+        // 10个请求同时到达，1000/s的限速器依次排队1ms
+        File file = folder.newFile();
+        TraceWriter writer = new TraceWriter(file);
+        for (int i = 0; i < 10; i++) {
+            writer.append(SECONDS.toNanos(2), 1);
+        }
+        writer.close();
+
+        VirtualClock clock = new VirtualClock();
+        RateLimiter limiter = new SmoothBursty(clock.stopwatch(), 0.0);
+        limiter.setRate(1000.0);
+
+        SimulationReport report = replay(clock, SimulationTargets.rateLimiter(limiter, 5, MILLISECONDS), file);
+        assertEquals(6, report.getAdmitted());
+        assertEquals(4, report.getDenied());
+        assertEquals(5000, report.getMaxDelay(MICROSECONDS));
+        assertEquals(2000, report.getDelayPercentile(0.5, MICROSECONDS), 2000 / 16);
+    }
+
+    @Test
+    public void testSlidingWindowQueueing() throws IOException {
+        // 滑动窗口睡眠后会重新读时钟，虚拟时钟必须在睡眠时前进，否则会一直等下去
+        File file = folder.newFile();
+        TraceWriter writer = new TraceWriter(file);
+        for (int i = 0; i < 3; i++) {
+            writer.append(0L, 1);
+        }
+        writer.append(MILLISECONDS.toNanos(500), 1);
+        writer.close();
+
+        VirtualClock clock = new VirtualClock();
+        RateLimiter limiter = new SlidingWindowLog(clock.stopwatch(), 1, 1, SECONDS);
+
+        SimulationReport report = replay(clock, SimulationTargets.rateLimiter(limiter, 2, SECONDS), file);
+        // 依次在0s、1s、2s放行，第4个请求需要排到3s，超过了最大等待
+        assertEquals(3, report.getAdmitted());
+        assertEquals(1, report.getDenied());
+        assertEquals(SECONDS.toMicros(2), report.getMaxDelay(MICROSECONDS));
+        assertEquals(MILLISECONDS.toNanos(500), clock.read());
+    }
+
+    @Test
+    public void testTokenBucket() throws IOException {
+        File file = uniformTrace(10000, 100);
+        VirtualClock clock = new VirtualClock();
+        TokenBucket bucket = new LeakyTokenBucket(100, 100, new FixedIntervalRefillStrategy(clock.ticker(), 100, 1, SECONDS),
+                new SleepStrategy() {
+                    @Override
+                    public void sleep() {
+                        throw new AssertionError("simulation must not block");
+                    }
+                });
+
+        SimulationReport report = replay(clock, SimulationTargets.tokenBucket(bucket), file);
+        // 10000/s的请求，每秒只补充100个令牌
+        assertEquals(999, report.getDuration(MILLISECONDS));
+        assertTrue(report.getAdmitted() <= 200);
+        assertEquals(100, report.getPeakPermitsPerWindow());
+    }
+
+    private SimulationReport replay(VirtualClock clock, SimulationTarget target, File file) throws IOException {
+        TraceReader trace = new TraceReader(file);
+        try {
+            return new Simulator(clock, target).replay(trace);
+        } finally {
+            trace.close();
+        }
+    }
+
+    private File uniformTrace(int count, long intervalMicros) throws IOException {
+        File file = folder.newFile();
+        TraceWriter writer = new TraceWriter(file);
+        try {
+            for (int i = 0; i < count; i++) {
+                writer.append(MICROSECONDS.toNanos(i * intervalMicros), 1);
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
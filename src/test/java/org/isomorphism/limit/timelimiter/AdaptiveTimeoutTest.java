@@ -0,0 +1,87 @@
+package org.isomorphism.limit.timelimiter;
+
+import org.isomorphism.limit.FakeTicker;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveTimeoutTest {
+
+    interface Calculator {
+        int add(int a, int b);
+    }
+
+    private final FakeTicker ticker = new FakeTicker();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testFollowsLatencyShift() throws Exception {
+        AdaptiveTimeout adaptive = AdaptiveTimeout.create(0.99, 5, 1000, MILLISECONDS)
+                .withMultiplier(2.0)
+                .withRotation(1, SECONDS)
+                .withTicker(ticker);
+        Method add = Calculator.class.getMethod("add", int.class, int.class);
+        AdaptiveTimeout.Tracker tracker = adaptive.track(add);
+
+        // 样本不足时使用上限
+        assertEquals(MILLISECONDS.toNanos(1000), tracker.timeoutNanos(ticker.read()));
+
+        for (int i = 0; i < 100; i++) {
+            tracker.record(MILLISECONDS.toNanos(10));
+        }
+        ticker.advance(1, SECONDS);
+        long timeout = tracker.timeoutNanos(ticker.read());
+        assertTrue(timeout >= MILLISECONDS.toNanos(20) && timeout <= MILLISECONDS.toNanos(22));
+        assertEquals(NANOSECONDS.toMillis(timeout), adaptive.getTimeout(add, MILLISECONDS));
+
+        // 耗时上升后两个轮换周期内跟上，并受上限约束
+        for (int round = 0; round < 2; round++) {
+            ticker.advance(1, SECONDS);
+            for (int i = 0; i < 100; i++) {
+                tracker.record(MILLISECONDS.toNanos(800));
+            }
+        }
+        assertEquals(MILLISECONDS.toNanos(1000), tracker.timeoutNanos(ticker.read()));
+
+        // 耗时很短时受下限约束
+        for (int round = 0; round < 2; round++) {
+            ticker.advance(1, SECONDS);
+            for (int i = 0; i < 100; i++) {
+                tracker.record(1000);
+            }
+        }
+        assertEquals(MILLISECONDS.toNanos(5), tracker.timeoutNanos(ticker.read()));
+    }
+
+    @Test
+    public void testProxyRecordsPerMethod() throws Exception {
+        AdaptiveTimeout adaptive = AdaptiveTimeout.create(0.99, 100, 2000, MILLISECONDS);
+        Calculator proxy = ProxyBuilder.newBuilder(SimpleTimeLimiter.create(executor), (Calculator) new Calculator() {
+            @Override
+            public int add(int a, int b) {
+                return a + b;
+            }
+        }, Calculator.class).withAdaptiveTimeout(adaptive).build();
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i + 1, proxy.add(i, 1));
+        }
+        Method add = Calculator.class.getMethod("add", int.class, int.class);
+        assertEquals(50, adaptive.getHistograms().get(add).count());
+        long timeout = adaptive.getTimeout(add, MILLISECONDS);
+        assertTrue(timeout >= 100 && timeout <= 2000);
+    }
+}
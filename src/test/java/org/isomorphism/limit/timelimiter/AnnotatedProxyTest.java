@@ -0,0 +1,115 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AnnotatedProxyTest {
+
+    @Timeout(value = 5, unit = SECONDS)
+    interface Client {
+        @Timeout(30)
+        String slow() throws InterruptedException;
+
+        @RateLimit(permitsPerSecond = 100.0, maxBurstSeconds = 0.0, permits = 5)
+        int expensive();
+
+        @Timeout(50)
+        @RateLimit(permitsPerSecond = 1.0, maxBurstSeconds = 0.0)
+        int scarce();
+
+        @RateLimit(permitsPerSecond = 1000.0, warmupPeriod = 100, warmupUnit = MILLISECONDS)
+        int warming();
+    }
+
+    private static final class ClientImpl implements Client {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String slow() throws InterruptedException {
+            Thread.sleep(SECONDS.toMillis(10));
+            return "slow";
+        }
+
+        @Override
+        public int expensive() {
+            return calls.incrementAndGet();
+        }
+
+        @Override
+        public int scarce() {
+            return calls.incrementAndGet();
+        }
+
+        @Override
+        public int warming() {
+            return calls.incrementAndGet();
+        }
+    }
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testMethodTimeoutOverridesInterfaceTimeout() throws Exception {
+        Client proxy = ProxyBuilder.newBuilder(SimpleTimeLimiter.create(executor), (Client) new ClientImpl(), Client.class).build();
+        long start = System.nanoTime();
+        try {
+            proxy.slow();
+            fail();
+        } catch (UncheckedTimeoutException expected) {
+        }
+        assertTrue(System.nanoTime() - start < SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void testPermitCost() {
+        Client proxy = ProxyBuilder.newBuilder(SimpleTimeLimiter.create(executor), (Client) new ClientImpl(), Client.class).build();
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            proxy.expensive();
+        }
+        // 每次调用5个许可，按100/s至少要等3个50毫秒
+        assertTrue(System.nanoTime() - start >= MILLISECONDS.toNanos(140));
+    }
+
+    @Test
+    public void testNoPermitWithinTimeout() {
+        ClientImpl target = new ClientImpl();
+        Client proxy = ProxyBuilder.newBuilder(SimpleTimeLimiter.create(executor), (Client) target, Client.class).build();
+        assertEquals(1, proxy.scarce());
+        try {
+            proxy.scarce();
+            fail();
+        } catch (UncheckedTimeoutException expected) {
+        }
+        // 没拿到许可的调用不会执行
+        assertEquals(1, target.calls.get());
+    }
+
+    @Test
+    public void testExplicitTimeoutOverridesAnnotation() {
+        ClientImpl target = new ClientImpl();
+        Client proxy = ProxyBuilder.newBuilder(SimpleTimeLimiter.create(executor), (Client) target, Client.class)
+                .withTimeout("scarce", 5, SECONDS)
+                .build();
+        proxy.scarce();
+        proxy.scarce();
+        assertEquals(2, target.calls.get());
+        assertTrue(proxy.warming() > 0);
+    }
+}
@@ -0,0 +1,64 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncTimeLimiterTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AsyncTimeLimiter limiter = AsyncTimeLimiter.create(executor);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCompletesBeforeTimeout() throws Exception {
+        ListenableFuture<String> future = limiter.callAsyncWithTimeout(new Callable<String>() {
+            @Override
+            public String call() {
+                return "ok";
+            }
+        }, 1, SECONDS);
+        assertEquals("ok", future.get());
+    }
+
+    @Test
+    public void testTimeoutInterruptsTask() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        ListenableFuture<Object> future = limiter.callAsyncWithTimeout(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                try {
+                    Thread.sleep(SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return null;
+            }
+        }, 50, MILLISECONDS);
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof TimeoutException);
+        }
+        assertTrue(interrupted.await(5, SECONDS));
+    }
+}
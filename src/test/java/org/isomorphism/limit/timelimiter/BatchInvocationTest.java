@@ -0,0 +1,142 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchInvocationTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final TimeLimiter limiter = SimpleTimeLimiter.create(executor);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testInvokeAllReturnsPartialResults() throws Exception {
+        List<Callable<String>> tasks = Arrays.asList(constant("a"), slow(), failing(), constant("b"));
+        long start = System.nanoTime();
+        BatchResult<String> result = limiter.invokeAllWithTimeout(tasks, 100, MILLISECONDS);
+        assertTrue(System.nanoTime() - start < SECONDS.toNanos(5));
+
+        assertEquals(4, result.size());
+        assertEquals("a", result.get(0));
+        assertTrue(result.isTimedOut(1));
+        assertTrue(result.getFailure(2) instanceof IllegalStateException);
+        assertEquals(Arrays.asList("a", "b"), result.getSucceededValues());
+        assertEquals(1, result.getTimedOutCount());
+        try {
+            result.get(1);
+            fail();
+        } catch (TimeoutException expected) {
+        }
+        try {
+            result.get(2);
+            fail();
+        } catch (ExecutionException expected) {
+        }
+        // 超时的任务被取消
+        assertTrue(interrupted.await(5, SECONDS));
+    }
+
+    @Test
+    public void testInvokeAny() throws Exception {
+        // 慢任务开始执行后快任务才返回，否则慢任务在开始前就被取消，不会被中断
+        assertEquals("fast", limiter.invokeAnyWithTimeout(Arrays.asList(slow(), afterSlowStarted("fast")), 5, SECONDS));
+        assertTrue(interrupted.await(5, SECONDS));
+
+        try {
+            limiter.invokeAnyWithTimeout(Arrays.asList(failing(), failing()), 5, SECONDS);
+            fail();
+        } catch (UncheckedExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+        try {
+            limiter.invokeAnyWithTimeout(Arrays.asList(slow(), slow()), 50, MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+        }
+    }
+
+    @Test
+    public void testSameThreadSharesDeadline() throws Exception {
+        final AtomicInteger ran = new AtomicInteger();
+        Callable<String> counted = new Callable<String>() {
+            @Override
+            public String call() {
+                ran.incrementAndGet();
+                return "c";
+            }
+        };
+        BatchResult<String> result = SameThreadTimeLimiter.create().invokeAllWithTimeout(Arrays.asList(counted, slow(), counted), 100, MILLISECONDS);
+        assertEquals("c", result.get(0));
+        assertTrue(result.isTimedOut(1));
+        assertTrue(result.isTimedOut(2));
+        assertEquals(1, ran.get());
+        assertTrue(!Thread.currentThread().isInterrupted());
+    }
+
+    private static Callable<String> constant(final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return value;
+            }
+        };
+    }
+
+    private Callable<String> afterSlowStarted(final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.await();
+                return value;
+            }
+        };
+    }
+
+    private Callable<String> slow() {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                try {
+                    Thread.sleep(SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "slow";
+            }
+        };
+    }
+
+    private static Callable<String> failing() {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                throw new IllegalStateException("boom");
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkheadTest {
+
+    private final Bulkhead bulkhead = Bulkhead.threadPool("test", 1, 0);
+
+    @After
+    public void tearDown() {
+        bulkhead.shutdown();
+    }
+
+    @Test
+    public void testLeakedCallHoldsPermitUntilItEnds() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        TimeLimiter limiter = bulkhead.timeLimiter();
+        try {
+            limiter.callWithTimeout(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    // 不响应中断
+                    Uninterruptibles.awaitUninterruptibly(release);
+                    return null;
+                }
+            }, 20, MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+        }
+        assertEquals(1, bulkhead.getLeakedCount());
+        assertEquals(1, bulkhead.getActiveCount());
+        assertEquals(1.0, bulkhead.getSaturation(), 0.0);
+
+        try {
+            limiter.callWithTimeout(constant("x"), 1, SECONDS);
+            fail();
+        } catch (BulkheadFullException expected) {
+            assertEquals("test", expected.getBulkheadName());
+        }
+        assertEquals(1, bulkhead.getRejectedCount());
+
+        release.countDown();
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (bulkhead.getSaturation() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, bulkhead.getLeakedCount());
+        assertEquals("x", limiter.callWithTimeout(constant("x"), 1, SECONDS));
+    }
+
+    @Test
+    public void testPerMethodBulkhead() throws Exception {
+        Bulkhead methodBulkhead = Bulkhead.semaphore("method", 1);
+        try {
+            DemoInterface proxy = ProxyBuilder.newBuilder(SimpleTimeLimiter.create(), (DemoInterface) new DemoClass(), DemoInterface.class)
+                    .withTimeout(1, SECONDS)
+                    .withTimeLimiter("execute", methodBulkhead.timeLimiter())
+                    .build();
+            assertEquals(0, proxy.execute());
+            assertEquals(0, methodBulkhead.getRejectedCount());
+            assertTrue(methodBulkhead.toString().contains("method"));
+        } finally {
+            methodBulkhead.shutdown();
+        }
+    }
+
+    private static Callable<String> constant(final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,122 @@
+package org.isomorphism.limit.timelimiter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeadlineTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final TimeLimiter limiter = SimpleTimeLimiter.create(executor);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testInnerCallInheritsRemainingBudget() throws Exception {
+        assertNull(Deadline.current());
+        long remaining = limiter.callWithTimeout(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                return limiter.callWithTimeout(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return Deadline.current().remaining(MILLISECONDS);
+                    }
+                }, 10, SECONDS);
+            }
+        }, 500, MILLISECONDS);
+        assertTrue(remaining <= 500);
+        assertNull(Deadline.current());
+    }
+
+    @Test
+    public void testSpentBudgetFailsImmediately() throws Exception {
+        final AtomicReference<Throwable> inner = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(1);
+        try {
+            limiter.callUninterruptiblyWithTimeout(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    // 不响应中断，一直等到外层的截止时间过去
+                    while (!Deadline.current().isExpired()) {
+                        Thread.yield();
+                    }
+                    try {
+                        SameThreadTimeLimiter.create().callWithTimeout(new Callable<Object>() {
+                            @Override
+                            public Object call() {
+                                throw new AssertionError("should not run");
+                            }
+                        }, 10, SECONDS);
+                    } catch (Throwable t) {
+                        inner.set(t);
+                    }
+                    done.countDown();
+                    return null;
+                }
+            }, 50, MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+        }
+        assertTrue(done.await(5, SECONDS));
+        assertTrue(inner.get() instanceof TimeoutException);
+    }
+
+    @Test
+    public void testCancellationCascades() throws Exception {
+        final CountDownLatch innerStarted = new CountDownLatch(1);
+        final CountDownLatch innerInterrupted = new CountDownLatch(1);
+        final Thread caller = Thread.currentThread();
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    innerStarted.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                caller.interrupt();
+            }
+        });
+        try {
+            limiter.callWithTimeout(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    // 外层线程不响应中断，只能靠级联取消
+                    return limiter.callUninterruptiblyWithTimeout(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            innerStarted.countDown();
+                            try {
+                                Thread.sleep(SECONDS.toMillis(10));
+                            } catch (InterruptedException e) {
+                                innerInterrupted.countDown();
+                            }
+                            return null;
+                        }
+                    }, 10, SECONDS);
+                }
+            }, 10, SECONDS);
+            fail();
+        } catch (InterruptedException expected) {
+        }
+        assertTrue(innerInterrupted.await(5, SECONDS));
+        assertEquals(false, Thread.currentThread().isInterrupted());
+    }
+}
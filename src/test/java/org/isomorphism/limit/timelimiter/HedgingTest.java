@@ -0,0 +1,123 @@
+package org.isomorphism.limit.timelimiter;
+
+import org.isomorphism.limit.FakeTicker;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HedgingTest {
+
+    interface Reader {
+        String get(String key);
+    }
+
+    /**
+     * 序号小于slowCalls的调用耗时slowMillis，之后的调用立即返回
+     */
+    private static final class SlowReader implements Reader {
+        final AtomicInteger invocations = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final int slowCalls;
+        final long slowMillis;
+
+        SlowReader(int slowCalls, long slowMillis) {
+            this.slowCalls = slowCalls;
+            this.slowMillis = slowMillis;
+        }
+
+        @Override
+        public String get(String key) {
+            if (invocations.getAndIncrement() < slowCalls) {
+                try {
+                    Thread.sleep(slowMillis);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    return "interrupted";
+                }
+            }
+            return key;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testHedgeWinsAndCancelsPrimary() throws Exception {
+        SlowReader target = new SlowReader(1, SECONDS.toMillis(10));
+        Reader proxy = ProxyBuilder.newBuilder(SimpleTimeLimiter.create(executor), (Reader) target, Reader.class)
+                .withTimeout(5, SECONDS)
+                .withHedging("get", HedgePolicy.atPercentile(0.95).withBudgetPercent(100.0).withMinDelay(20, MILLISECONDS).withExecutor(executor))
+                .build();
+        long start = System.nanoTime();
+        assertEquals("a", proxy.get("a"));
+        assertTrue(System.nanoTime() - start < SECONDS.toNanos(5));
+        assertEquals(2, target.invocations.get());
+        assertTrue(target.interrupted.await(5, SECONDS));
+    }
+
+    @Test
+    public void testBudgetLimitsHedging() throws Exception {
+        SlowReader target = new SlowReader(2, 100);
+        Reader proxy = ProxyBuilder.newBuilder(SimpleTimeLimiter.create(executor), (Reader) target, Reader.class)
+                .withTimeout(5, SECONDS)
+                .withHedging("get", HedgePolicy.atPercentile(0.95).withBudgetPercent(50.0).withMinDelay(20, MILLISECONDS).withExecutor(executor))
+                .build();
+        // 第一次调用只积攒了半个令牌，不对冲
+        assertEquals("a", proxy.get("a"));
+        assertEquals(1, target.invocations.get());
+        // 第二次调用凑满一个令牌，对冲调用立即返回
+        assertEquals("b", proxy.get("b"));
+        assertEquals(3, target.invocations.get());
+    }
+
+    @Test
+    public void testHistogramPercentileAndRotation() {
+        FakeTicker ticker = new FakeTicker();
+        LatencyHistogram histogram = new LatencyHistogram(1, SECONDS, ticker);
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(MILLISECONDS.toNanos(i));
+        }
+        assertEquals(100, histogram.count());
+        long p50 = histogram.percentile(0.5);
+        assertTrue(p50 >= MILLISECONDS.toNanos(50) && p50 <= MILLISECONDS.toNanos(50) * 17 / 16);
+        assertTrue(histogram.percentile(1.0) >= MILLISECONDS.toNanos(100));
+
+        // 轮换一次后旧样本仍然参与计算，轮换两次后过期
+        ticker.advance(1, SECONDS);
+        histogram.record(1);
+        assertEquals(101, histogram.count());
+        ticker.advance(1, SECONDS);
+        assertEquals(1, histogram.count());
+        ticker.advance(1, SECONDS);
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(0.5));
+    }
+
+    @Test
+    public void testHistogramDropsSamplesAfterIdleGap() {
+        FakeTicker ticker = new FakeTicker();
+        LatencyHistogram histogram = new LatencyHistogram(1, SECONDS, ticker);
+        histogram.record(MILLISECONDS.toNanos(100));
+        assertEquals(1, histogram.count());
+
+        // 几个rotation内没有任何记录，下一次轮换时旧样本不能留到上一个窗口里
+        ticker.advance(5, SECONDS);
+        histogram.record(MILLISECONDS.toNanos(1));
+        assertEquals(1, histogram.count());
+        assertTrue(histogram.percentile(1.0) < MILLISECONDS.toNanos(2));
+    }
+}
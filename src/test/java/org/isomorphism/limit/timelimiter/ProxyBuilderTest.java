@@ -0,0 +1,153 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProxyBuilderTest {
+
+    interface Service {
+        int add(int a, int b);
+
+        void touch();
+
+        String slow() throws InterruptedException;
+
+        void fail() throws IOException;
+    }
+
+    private static final class ServiceImpl implements Service {
+        int touched;
+
+        @Override
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        @Override
+        public void touch() {
+            touched++;
+        }
+
+        @Override
+        public String slow() throws InterruptedException {
+            Thread.sleep(SECONDS.toMillis(10));
+            return "done";
+        }
+
+        @Override
+        public void fail() throws IOException {
+            throw new IOException("boom");
+        }
+
+        @Override
+        public String toString() {
+            return "ServiceImpl";
+        }
+    }
+
+    private final RecordingTimeLimiter timeLimiter = new RecordingTimeLimiter();
+
+    @Test
+    public void testDispatch() throws Exception {
+        ServiceImpl target = new ServiceImpl();
+        Service proxy = ProxyBuilder.newBuilder(timeLimiter, target, Service.class).withTimeout(1, SECONDS).build();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(5, proxy.add(2, 3));
+        }
+        proxy.touch();
+        assertEquals(1, target.touched);
+        assertEquals("ServiceImpl", proxy.toString());
+        assertEquals(SECONDS.toNanos(1), timeLimiter.lastTimeoutNanos);
+    }
+
+    @Test
+    public void testPerMethodTimeoutAndInterruptibleFlag() throws Exception {
+        Service proxy = ProxyBuilder.newBuilder(timeLimiter, (Service) new ServiceImpl(), Service.class)
+                .withTimeout(1, SECONDS)
+                .withTimeout("slow", 20, MILLISECONDS)
+                .build();
+        proxy.add(1, 1);
+        assertFalse(timeLimiter.lastInterruptible);
+        try {
+            proxy.slow();
+            fail();
+        } catch (UncheckedTimeoutException expected) {
+        }
+        assertTrue(timeLimiter.lastInterruptible);
+        assertEquals(MILLISECONDS.toNanos(20), timeLimiter.lastTimeoutNanos);
+    }
+
+    @Test
+    public void testExceptionsAreUnwrapped() {
+        Service proxy = ProxyBuilder.newBuilder(timeLimiter, (Service) new ServiceImpl(), Service.class).withTimeout(1, SECONDS).build();
+        try {
+            proxy.fail();
+            fail();
+        } catch (IOException expected) {
+            assertEquals("boom", expected.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownMethod() {
+        ProxyBuilder.newBuilder(timeLimiter, (Service) new ServiceImpl(), Service.class).withTimeout("missing", 1, SECONDS);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingDefaultTimeout() {
+        ProxyBuilder.newBuilder(timeLimiter, (Service) new ServiceImpl(), Service.class).withTimeout("add", 1, SECONDS).build();
+    }
+
+    /**
+     * 记录每次调用的参数，再交给真正的TimeLimiter执行
+     */
+    private static final class RecordingTimeLimiter extends GuardedTimeLimiter {
+        volatile long lastTimeoutNanos;
+        volatile boolean lastInterruptible;
+
+        RecordingTimeLimiter() {
+            super(SimpleTimeLimiter.create(Executors.newCachedThreadPool()));
+        }
+
+        @Override
+        protected CallGuard acquire() {
+            return new CallGuard() {
+                @Override
+                public void onSuccess() {
+                }
+
+                @Override
+                public void onTimeout() {
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                }
+
+                @Override
+                public void onIgnore() {
+                }
+            };
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public <T> T callWithTimeout(Callable<T> callable, long timeoutDuration, TimeUnit timeoutUnit, boolean interruptible) throws Exception {
+            lastTimeoutNanos = timeoutUnit.toNanos(timeoutDuration);
+            lastInterruptible = interruptible;
+            return super.callWithTimeout(callable, timeoutDuration, timeoutUnit, interruptible);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.isomorphism.limit.timelimiter;
+
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SameThreadTimeLimiterTest {
+
+    private final TimeLimiter limiter = SameThreadTimeLimiter.create();
+
+    @Test
+    public void testRunsOnCallerThread() throws Exception {
+        final Thread caller = Thread.currentThread();
+        Thread ran = limiter.callWithTimeout(new Callable<Thread>() {
+            @Override
+            public Thread call() {
+                return Thread.currentThread();
+            }
+        }, 1, SECONDS);
+        assertSame(caller, ran);
+    }
+
+    @Test
+    public void testTimeoutInterruptsAndClearsInterrupt() throws Exception {
+        long start = System.nanoTime();
+        try {
+            limiter.callWithTimeout(sleeper(10, SECONDS), 50, MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+            assertTrue(expected.getCause() instanceof InterruptedException);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 50 && elapsedMillis < 5000);
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testFastCallsAreNotInterrupted() throws Exception {
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(Integer.valueOf(i), limiter.callWithTimeout(constant(i), 1, SECONDS));
+        }
+        // 之前的登记不会在之后触发
+        Thread.sleep(50);
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testExceptionsAreWrapped() throws Exception {
+        try {
+            limiter.callWithTimeout(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    throw new IOException("boom");
+                }
+            }, 1, SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+        try {
+            limiter.runWithTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException();
+                }
+            }, 1, SECONDS);
+            fail();
+        } catch (UncheckedExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testNestedCalls() throws Exception {
+        final TimeLimiter inner = limiter;
+        try {
+            limiter.callWithTimeout(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    assertEquals(Integer.valueOf(1), inner.callWithTimeout(constant(1), 1, SECONDS));
+                    return inner.callWithTimeout(sleeper(10, SECONDS), 50, MILLISECONDS);
+                }
+            }, 5, SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            // 内层超时，外层把它当作普通异常
+            assertTrue(expected.getCause() instanceof TimeoutException);
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testUninterruptibleCallIsNotInterrupted() throws Exception {
+        long start = System.nanoTime();
+        try {
+            limiter.callUninterruptiblyWithTimeout(sleeper(200, MILLISECONDS), 50, MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+            // 调用正常执行完，只是超过了截止时间
+            assertNull(expected.getCause());
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+        assertFalse(Thread.currentThread().isInterrupted());
+
+        try {
+            limiter.runUninterruptiblyWithTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        throw new AssertionError("uninterruptible call was interrupted");
+                    }
+                }
+            }, 50, MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+            assertNull(expected.getCause());
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testProxy() {
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        DemoInterface proxy = limiter.newProxy(new DemoInterface() {
+            @Override
+            public int execute() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                return 0;
+            }
+        }, DemoInterface.class, 50, MILLISECONDS);
+        try {
+            proxy.execute();
+            fail();
+        } catch (UncheckedTimeoutException expected) {
+        }
+        // 没有声明InterruptedException的方法不会被中断
+        assertFalse(interrupted.get());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    private static Callable<Integer> constant(final int value) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return value;
+            }
+        };
+    }
+
+    private static Callable<Object> sleeper(final long duration, final TimeUnit unit) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                unit.sleep(duration);
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package org.isomorphism.limit.timelimiter;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultExecutorsTest {
+
+    @Test
+    public void testSimpleTimeLimiterUsesVirtualThreads() throws Exception {
+        TimeLimiter limiter = SimpleTimeLimiter.create();
+        Boolean virtual = limiter.callWithTimeout(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return Thread.currentThread().isVirtual();
+            }
+        }, 5, SECONDS);
+        assertTrue(virtual);
+    }
+}
@@ -0,0 +1,41 @@
+package org.isomorphism.limit.timelimiter;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompletableTimeoutFuturesTest {
+
+    @Test
+    public void testCompletableFutureTimeout() throws Exception {
+        CompletableFuture<String> never = new CompletableFuture<String>();
+        CompletableFuture<String> limited = CompletableTimeoutFutures.withTimeout(never, 50, MILLISECONDS);
+        try {
+            limited.get(5, SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof TimeoutException);
+        }
+        assertTrue(never.isCancelled());
+    }
+
+    @Test
+    public void testCompletableFuturePassesThrough() throws Exception {
+        CompletableFuture<String> source = new CompletableFuture<String>();
+        CompletableFuture<String> limited = CompletableTimeoutFutures.withTimeout(source, 1, SECONDS);
+        source.complete("ok");
+        assertEquals("ok", limited.get());
+
+        CompletableFuture<String> cancelled = new CompletableFuture<String>();
+        CompletableTimeoutFutures.withTimeout(cancelled, 1, SECONDS).cancel(true);
+        assertTrue(cancelled.isCancelled());
+    }
+}